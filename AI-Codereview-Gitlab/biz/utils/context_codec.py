@@ -0,0 +1,192 @@
+"""
+ContextExtractor 二进制输出（--output-format cbor / cbor-gzip）的按需解码
+
+流格式见 java-tools/src/main/java/com/codereview/ResultCodec.java：魔数 CXR1 之后是若干帧，
+每帧 = 类型(1 字节) + 标志(1 字节，bit0 = gzip) + 负载长度(4 字节大端) + 负载。
+decode() 只扫描帧头；结果与字符串表在第一次访问时解码，文件内容（fullContent / source）在读取该字段时才解压、解码。
+"""
+import gzip
+import struct
+from collections.abc import Mapping
+from typing import Any, Dict, List, Optional, Tuple
+
+MAGIC = b'CXR1'
+_TAG_STRING_REF = 25
+_TAG_BLOB_REF = 49374
+_DIGEST_SIZE = 32
+
+
+def decode(data: bytes) -> Mapping:
+    """解码二进制输出，返回只读、按需解码的结果（用法与 json.loads 的结果相同）"""
+    return LazyMap(_Document(data), None)
+
+
+def is_encoded(data: bytes) -> bool:
+    return data[:len(MAGIC)] == MAGIC
+
+
+class _BlobRef:
+    __slots__ = ('digest',)
+
+    def __init__(self, digest: bytes):
+        self.digest = digest
+
+
+class LazyMap(Mapping):
+    """CBOR map：文件内容在读取时才从对应帧解码；顶层结果在第一次访问时解码"""
+
+    __slots__ = ('_doc', '_raw')
+
+    def __init__(self, doc: '_Document', raw: Optional[Dict[str, Any]]):
+        self._doc = doc
+        self._raw = raw
+
+    def _items(self) -> Dict[str, Any]:
+        if self._raw is None:
+            self._raw = self._doc.result()
+        return self._raw
+
+    def __getitem__(self, key):
+        raw = self._items()
+        value = raw[key]
+        if isinstance(value, _BlobRef):
+            value = self._doc.blob(value.digest)
+            raw[key] = value
+        return value
+
+    def __iter__(self):
+        return iter(self._items())
+
+    def __len__(self):
+        return len(self._items())
+
+    def __repr__(self):
+        return f"LazyMap({list(self._items().keys())})"
+
+
+class _Document:
+
+    def __init__(self, data: bytes):
+        if not is_encoded(data):
+            raise ValueError("不是 ContextExtractor 二进制输出")
+        self._data = memoryview(data)
+        self._strings_frame: Optional[Tuple[int, int, int]] = None
+        self._result_frame: Optional[Tuple[int, int, int]] = None
+        self._blob_frames: Dict[bytes, Tuple[int, int, int]] = {}
+        self._strings: Optional[List[str]] = None
+        self._blobs: Dict[bytes, str] = {}
+
+        pos = len(MAGIC)
+        while pos < len(data):
+            if pos + 6 > len(data):
+                raise ValueError("帧头不完整")
+            kind, flags, length = struct.unpack_from('>BBI', data, pos)
+            start, end = pos + 6, pos + 6 + length
+            if end > len(data):
+                raise ValueError("帧不完整")
+            if kind == ord('S'):
+                self._strings_frame = (start, end, flags)
+            elif kind == ord('B'):
+                self._blob_frames[bytes(data[start:start + _DIGEST_SIZE])] = (start + _DIGEST_SIZE, end, flags)
+            elif kind == ord('R'):
+                self._result_frame = (start, end, flags)
+            # 未知类型的帧跳过，便于以后扩展
+            pos = end
+        if self._result_frame is None:
+            raise ValueError("缺少结果帧")
+
+    def _payload(self, frame: Tuple[int, int, int]) -> bytes:
+        start, end, flags = frame
+        raw = bytes(self._data[start:end])
+        return gzip.decompress(raw) if flags & 1 else raw
+
+    def strings(self) -> List[str]:
+        if self._strings is None:
+            self._strings = [] if self._strings_frame is None else _Decoder(self._payload(self._strings_frame), self).decode()
+        return self._strings
+
+    def blob(self, digest: bytes) -> str:
+        content = self._blobs.get(digest)
+        if content is None:
+            frame = self._blob_frames.get(digest)
+            if frame is None:
+                raise ValueError(f"缺少文件内容帧: {digest.hex()}")
+            content = _Decoder(self._payload(frame), self).decode()
+            self._blobs[digest] = content
+        return content
+
+    def result(self) -> Dict[str, Any]:
+        value = _Decoder(self._payload(self._result_frame), self).decode()
+        if not isinstance(value, LazyMap):
+            raise ValueError("结果帧不是 map")
+        return value._raw
+
+
+class _Decoder:
+    """CBOR（RFC 8949）解码，只支持 ResultCodec 用到的确定长度编码"""
+
+    def __init__(self, data: bytes, doc: _Document):
+        self._data = data
+        self._pos = 0
+        self._doc = doc
+
+    def decode(self) -> Any:
+        data = self._data
+        initial = data[self._pos]
+        self._pos += 1
+        major, info = initial >> 5, initial & 0x1f
+        if major == 7:
+            return self._simple(info)
+        value = self._argument(info)
+        if major == 0:
+            return value
+        if major == 1:
+            return -1 - value
+        if major == 2:
+            start = self._pos
+            self._pos += value
+            return data[start:self._pos]
+        if major == 3:
+            start = self._pos
+            self._pos += value
+            return data[start:self._pos].decode('utf-8')
+        if major == 4:
+            return [self.decode() for _ in range(value)]
+        if major == 5:
+            items = {}
+            for _ in range(value):
+                key = self.decode()
+                items[key] = self.decode()
+            return LazyMap(self._doc, items)
+        # major == 6：tag
+        item = self.decode()
+        if value == _TAG_STRING_REF:
+            return self._doc.strings()[item]
+        if value == _TAG_BLOB_REF:
+            return _BlobRef(bytes(item))
+        return item
+
+    def _argument(self, info: int) -> int:
+        if info < 24:
+            return info
+        size = {24: 1, 25: 2, 26: 4, 27: 8}.get(info)
+        if size is None:
+            raise ValueError(f"不支持的 CBOR 长度编码: {info}")
+        start = self._pos
+        self._pos += size
+        return int.from_bytes(self._data[start:self._pos], 'big')
+
+    def _simple(self, info: int) -> Any:
+        if info == 20:
+            return False
+        if info == 21:
+            return True
+        if info in (22, 23):
+            return None
+        formats = {25: ('>e', 2), 26: ('>f', 4), 27: ('>d', 8)}
+        if info not in formats:
+            raise ValueError(f"不支持的 CBOR 简单值: {info}")
+        fmt, size = formats[info]
+        (value,) = struct.unpack_from(fmt, self._data, self._pos)
+        self._pos += size
+        return value
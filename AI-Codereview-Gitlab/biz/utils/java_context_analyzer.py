@@ -1,9 +1,11 @@
 import json
 import os
+import struct
 import subprocess
 from pathlib import Path
 from typing import List, Dict, Any, Optional
 
+from biz.utils import context_codec
 from biz.utils.log import logger
 from biz.utils.token_util import count_tokens
 
@@ -16,6 +18,8 @@ class JavaContextAnalyzer:
         current_dir = Path(__file__).parent.parent.parent
         self.java_tool_path = current_dir / "java-tools"
         self.max_context_tokens = int(os.getenv('CONTEXT_MAX_TOKENS', '20000'))
+        # Java 工具输出格式：json（默认）/ cbor / cbor-gzip（二进制，按需解码，见 context_codec）
+        self.output_format = os.getenv('CONTEXT_OUTPUT_FORMAT', 'json')
         self._ensure_java_tool_compiled()
     
     def _ensure_java_tool_compiled(self):
@@ -170,22 +174,35 @@ class JavaContextAnalyzer:
                     cmd.extend(['--changed-methods', changed_methods_json])
                 except Exception as e:
                     logger.error(f"序列化changed_methods失败，将按文件级别分析: {e}")
+
+            binary = self.output_format != 'json'
+            if binary:
+                cmd.extend(['--output-format', self.output_format])
             
             logger.info(f"执行Java命令: java -cp ... ContextExtractor --repo-path {repo_path} --changed-files {','.join(java_files)}")
             
             result = subprocess.run(
                 cmd,
                 capture_output=True,
-                text=True,
+                text=not binary,
                 timeout=60
             )
             
             if result.returncode != 0:
-                logger.error(f"Java工具执行失败:\nSTDOUT: {result.stdout}\nSTDERR: {result.stderr}")
-                raise Exception(f"Java工具执行失败: {result.stderr}")
+                stderr = result.stderr.decode('utf-8', 'replace') if binary else result.stderr
+                stdout = f"<{len(result.stdout)} 字节二进制输出>" if binary else result.stdout
+                logger.error(f"Java工具执行失败:\nSTDOUT: {stdout}\nSTDERR: {stderr}")
+                raise Exception(f"Java工具执行失败: {stderr}")
             
-            # 解析JSON输出
-            context_data = json.loads(result.stdout)
+            # 解析输出：二进制格式只扫描帧头，文件内容在格式化时才解码
+            if binary:
+                try:
+                    context_data = context_codec.decode(result.stdout)
+                except (ValueError, IndexError, struct.error) as e:
+                    logger.error(f"解析Java工具二进制输出失败: {e}")
+                    raise Exception(f"解析Java工具输出失败: {e}")
+            else:
+                context_data = json.loads(result.stdout)
             logger.info(f"成功提取上下文: {len(context_data.get('changedFiles', []))} 个修改文件, "
                        f"{len(context_data.get('relatedFiles', []))} 个相关文件")
             
@@ -340,6 +357,15 @@ class JavaContextAnalyzer:
                     context_parts.append(f"类名: {file_ctx['className']}")
                 if file_ctx.get('annotations'):
                     context_parts.append(f"类注解: {', '.join(file_ctx['annotations'])}")
+                hot_methods = [m for m in file_ctx.get('methods', []) if m.get('profileShare')]
+                if hot_methods:
+                    profile_type = data.get('stats', {}).get('profileType', 'cpu')
+                    hot = ', '.join(f"{m['name']} {m['profileShare']}%"
+                                    for m in sorted(hot_methods, key=lambda m: -m['profileShare']))
+                    context_parts.append(f"生产热点（{profile_type} 采样占比）: {hot}")
+                cost_changes = self._format_cost_deltas(file_ctx)
+                if cost_changes:
+                    context_parts.append(f"开销变化（相对 {data.get('stats', {}).get('baseRef')}）: {cost_changes}")
                 context_parts.append(f"\n{file_ctx['fullContent']}\n")
         
         # 2. 相关依赖类
@@ -347,7 +373,8 @@ class JavaContextAnalyzer:
         if related_files:
             context_parts.append("\n== 相关依赖类 ==\n")
             for related_file in related_files:
-                context_parts.append(f"\n文件: {related_file['path']} ({related_file['reason']})")
+                hot = f", 生产采样占比 {related_file['profileShare']}%" if related_file.get('profileShare') else ""
+                context_parts.append(f"\n文件: {related_file['path']} ({related_file['reason']}{hot})")
                 context_parts.append(f"\n{related_file['fullContent']}\n")
         
         # 3. 方法调用链
@@ -357,8 +384,142 @@ class JavaContextAnalyzer:
             for chain in call_chains[:20]:  # 最多20条
                 context_parts.append(f"- {chain}\n")
         
+        # 4. 静态规则检查结果
+        context_parts.append(self._format_findings(data))
+        
+        # 5. 能到达被改方法的基准与测试
+        context_parts.append(self._format_reaching_tests(data))
+        
+        # 6. 被改方法可能到达的锁与阻塞调用
+        context_parts.append(self._format_concurrency_hazards(data))
+        
+        # 7. 读写相同字段的其他方法（含源码）
+        context_parts.append(self._format_field_relations(data, with_sources=True))
+        
         return "".join(context_parts)
     
+    # 开销指标 -> 展示名称
+    _COST_LABELS = {
+        'maxLoopDepth': '循环嵌套',
+        'allocationsInLoops': '循环内分配',
+        'collectionCopies': '集合拷贝',
+        'streamsInLoops': '循环内Stream',
+        'blockingCalls': '阻塞调用',
+        'cyclomaticComplexity': '圈复杂度',
+    }
+    
+    def _format_cost_deltas(self, file_ctx: Dict[str, Any]) -> str:
+        """
+        格式化被改方法相对基线版本增加的开销指标
+        
+        Args:
+            file_ctx: 修改文件的上下文
+        
+        Returns:
+            例如 "ordersOfAll 循环嵌套+2 阻塞调用+1; added(新增) 圈复杂度+2"，没有增加时为空串
+        """
+        parts = []
+        for method in file_ctx.get('methods', []):
+            delta = method.get('costDelta')
+            if not delta:
+                continue
+            increased = [f"{label}+{delta[key]}" for key, label in self._COST_LABELS.items() if delta.get(key, 0) > 0]
+            if increased:
+                name = f"{method['name']}(新增)" if method.get('addedSinceBase') else method['name']
+                parts.append(f"{name} {' '.join(increased)}")
+        return "; ".join(parts)
+    
+    def _format_findings(self, data: Dict[str, Any]) -> str:
+        """
+        格式化 java-tools AST 规则的检查结果（确定性结果，供 LLM 复核）
+        
+        Args:
+            data: 上下文数据
+        
+        Returns:
+            格式化的文本，没有结果时为空串
+        """
+        findings = data.get('findings', [])
+        if not findings:
+            return ""
+        lines = ["\n== 静态规则检查结果 ==\n"]
+        for finding in findings:
+            location = f"{finding['file']}:{finding['startLine']}"
+            if finding.get('endLine', finding['startLine']) != finding['startLine']:
+                location += f"-{finding['endLine']}"
+            lines.append(f"- [{finding['severity']}] {finding['rule']} {location} {finding['message']}\n")
+        return "".join(lines)
+    
+    def _format_reaching_tests(self, data: Dict[str, Any]) -> str:
+        """
+        格式化能到达各被改方法的基准与测试（需 java-tools 索引测试源码）
+        
+        Args:
+            data: 上下文数据
+        
+        Returns:
+            格式化的文本，没有结果时为空串
+        """
+        reaching = data.get('reachingTests', [])
+        if not reaching:
+            return ""
+        lines = ["\n== 覆盖被改方法的基准与测试 ==\n"]
+        for item in reaching:
+            tests = ', '.join(f"{t['method']}[{t['kind']}, {t['hops']}层]" for t in item['tests'])
+            lines.append(f"- {item['method']}: {tests}\n")
+        return "".join(lines)
+    
+    def _format_concurrency_hazards(self, data: Dict[str, Any]) -> str:
+        """
+        格式化被改方法可能到达的锁与阻塞调用；有基线版本时只列出新引入的
+        
+        Args:
+            data: 上下文数据
+        
+        Returns:
+            格式化的文本，没有结果时为空串
+        """
+        lines = []
+        for item in data.get('concurrencyHazards', []):
+            for hazard in item['hazards']:
+                if hazard.get('newSinceBase') is False:
+                    continue
+                mark = "（新引入）" if hazard.get('newSinceBase') else ""
+                lines.append(f"- {item['method']} {hazard['kind']}{mark}: {' -> '.join(hazard['path'])}\n")
+        if not lines:
+            return ""
+        return "".join(["\n== 被改方法可能到达的锁与阻塞调用 ==\n"] + lines)
+    
+    def _format_field_relations(self, data: Dict[str, Any], with_sources: bool) -> str:
+        """
+        格式化被改方法读写的字段，以及读写同一字段的其他方法
+        
+        Args:
+            data: 上下文数据
+            with_sources: 是否附上其他方法的源码
+        
+        Returns:
+            格式化的文本，没有结果时为空串
+        """
+        lines = []
+        for relation in data.get('fieldRelations', []):
+            for usage in relation['fields']:
+                if not usage['accessors']:
+                    continue
+                column = f"（列 {usage['column']}）" if usage.get('column') else ""
+                others = ', '.join(f"{a['method']}[{a['access']}]" for a in usage['accessors'])
+                if usage.get('omitted'):
+                    others += f" 等另外 {usage['omitted']} 个"
+                lines.append(f"- {relation['method']} {usage['access']} {usage['field']}{column}: {others}\n")
+        if not lines:
+            return ""
+        parts = ["\n== 读写相同字段的方法 ==\n"] + lines
+        if with_sources:
+            for snippet in data.get('fieldAccessorSources', []):
+                parts.append(f"\n{snippet['file']}:{snippet['startLine']}-{snippet['endLine']} {snippet['method']}\n")
+                parts.append(f"{snippet['source']}\n")
+        return "".join(parts)
+    
     def _truncate_context(self, data: Dict[str, Any], max_tokens: int) -> str:
         """
         截断上下文以满足token限制
@@ -413,6 +574,12 @@ class JavaContextAnalyzer:
             for chain in call_chains[:10]:  # 最多10条
                 context_parts.append(f"- {chain}\n")
         
+        # 4. 静态规则检查结果、相关基准与测试、并发隐患、字段读写关系（篇幅很小，始终保留，不含源码）
+        context_parts.append(self._format_findings(data))
+        context_parts.append(self._format_reaching_tests(data))
+        context_parts.append(self._format_concurrency_hazards(data))
+        context_parts.append(self._format_field_relations(data, with_sources=False))
+        
         return "".join(context_parts)
 
 
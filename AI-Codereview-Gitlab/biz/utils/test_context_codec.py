@@ -0,0 +1,127 @@
+import gzip
+import hashlib
+import json
+import os
+import struct
+from collections.abc import Mapping
+
+from biz.utils import context_codec
+
+# 由 ContextExtractor --output-format cbor-gzip / json 对同一个示例仓库（源码即 JSON 中的 fullContent）生成，
+# 两个变更文件互为调用链相关文件，每份文件内容在 changedFiles 与 relatedFiles 中各出现一次
+_TESTDATA = os.path.join(os.path.dirname(__file__), 'testdata')
+# 两次运行间会变的统计字段，只比较是否存在
+_RUN_DEPENDENT_STATS = ('graphBuildMillis', 'peakRetainedHeapBytes', 'peakUsedHeapBytes', 'ruleTimingsMicros')
+
+
+def _head(major, value):
+    if value < 24:
+        return bytes([major << 5 | value])
+    if value < 0x100:
+        return bytes([major << 5 | 24, value])
+    return bytes([major << 5 | 25]) + struct.pack('>H', value)
+
+
+def _text(s):
+    data = s.encode('utf-8')
+    return _head(3, len(data)) + data
+
+
+def _frame(kind, payload, compress, prefix=b''):
+    if compress:
+        payload = gzip.compress(payload)
+    body = prefix + payload
+    return kind.encode() + bytes([1 if compress else 0]) + struct.pack('>I', len(body)) + body
+
+
+def _stream(compress):
+    content = "public class Demo {}\n"
+    digest = hashlib.sha256(content.encode('utf-8')).digest()
+    ref = lambda i: _head(6, 25) + _head(0, i)
+    blob = _head(6, 49374) + _head(2, len(digest)) + digest
+    file_ctx = _head(5, 2) + ref(0) + ref(1) + _text('fullContent') + blob
+    result = (_head(5, 3)
+              + _text('changedFiles') + _head(4, 1) + file_ctx
+              + _text('relatedFiles') + _head(4, 1) + (_head(5, 2) + ref(0) + ref(1) + _text('fullContent') + blob)
+              + _text('callChains') + _head(4, 2) + _head(0, 7) + _head(1, 2))
+    strings = _head(4, 2) + _text('path') + _text('src/main/java/Demo.java')
+    return (context_codec.MAGIC + _frame('S', strings, compress)
+            + _frame('B', _text(content), compress, digest)
+            + _frame('R', result, compress))
+
+
+def _assert_decoded(compress):
+    data = context_codec.decode(_stream(compress))
+
+    changed = data['changedFiles'][0]
+    related = data['relatedFiles'][0]
+    assert changed['path'] == 'src/main/java/Demo.java'
+    assert changed['fullContent'] == "public class Demo {}\n"
+    assert related['fullContent'] == changed['fullContent']
+    assert data['callChains'] == [7, -3]
+    assert data.get('findings', []) == []
+
+
+def test_decode_resolves_string_table_and_shared_blob():
+    _assert_decoded(compress=False)
+
+
+def test_decode_gzip_frames():
+    _assert_decoded(compress=True)
+
+
+def test_blob_is_decoded_only_when_read():
+    data = context_codec.decode(_stream(False))
+    doc = data._doc
+
+    assert data['changedFiles'][0]['path'] == 'src/main/java/Demo.java'
+    assert doc._blobs == {}
+
+    assert data['changedFiles'][0]['fullContent'].startswith('public class')
+    assert len(doc._blobs) == 1
+
+
+def test_decode_rejects_other_output():
+    try:
+        context_codec.decode(b'{"changedFiles": []}')
+    except ValueError:
+        return
+    raise AssertionError("JSON 输出不应被当作二进制输出解码")
+
+
+def _read_fixture(name):
+    with open(os.path.join(_TESTDATA, name), 'rb') as f:
+        return f.read()
+
+
+def _plain(value):
+    if isinstance(value, Mapping):
+        return {k: _plain(value[k]) for k in value}
+    if isinstance(value, list):
+        return [_plain(v) for v in value]
+    return value
+
+
+def _without_run_dependent_stats(result):
+    stats = result['stats']
+    for key in _RUN_DEPENDENT_STATS:
+        assert key in stats, key
+        del stats[key]
+    return result
+
+
+def test_decode_extractor_output_matches_json():
+    data = context_codec.decode(_read_fixture('context_result.cbor-gzip'))
+    expected = json.loads(_read_fixture('context_result.json').decode('utf-8'))
+
+    assert _without_run_dependent_stats(_plain(data)) == _without_run_dependent_stats(expected)
+
+
+def test_extractor_output_stores_each_file_content_once():
+    data = context_codec.decode(_read_fixture('context_result.cbor-gzip'))
+    doc = data._doc
+    contents = [f['fullContent'] for key in ('changedFiles', 'relatedFiles') for f in data[key]]
+
+    assert len(contents) == 5
+    assert len(doc._blob_frames) == len(set(contents)) == 3
+    assert len(doc._blobs) == 3
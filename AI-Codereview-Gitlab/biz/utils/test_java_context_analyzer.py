@@ -1,3 +1,6 @@
+import json
+import re
+import shutil
 import textwrap
 from pathlib import Path
 from tempfile import TemporaryDirectory
@@ -10,6 +13,9 @@ def _new_analyzer():
     return JavaContextAnalyzer.__new__(JavaContextAnalyzer)
 
 
+_PROJECT_ROOT = Path(__file__).parent.parent.parent
+
+
 def test_extract_method_from_body_only_diff():
     diff_text = textwrap.dedent(
         """
@@ -53,7 +59,173 @@ def test_extract_method_from_body_only_diff():
         assert changed == {"src/main/java/com/example/Demo.java": ["foo"]}
 
 
+def test_rule_engine_matches_q04_performance_cases():
+    # 需要先编译 java-tools（mvn package dependency:copy-dependencies）
+    analyzer = _new_analyzer()
+    analyzer.java_tool_path = _PROJECT_ROOT / "java-tools"
+    analyzer.output_format = "json"
+
+    for case_dir in sorted((_PROJECT_ROOT / "tests/Q04_Performance").iterdir()):
+        metadata = json.loads((case_dir / "metadata.json").read_text(encoding="utf-8"))
+        source = (case_dir / "after.java").read_text(encoding="utf-8")
+        class_name = re.search(r"class\s+(\w+)", source).group(1)
+        with TemporaryDirectory() as tmp:
+            path = f"src/main/java/{class_name}.java"
+            (Path(tmp) / path).parent.mkdir(parents=True)
+            shutil.copy(case_dir / "after.java", Path(tmp) / path)
+            data = analyzer._call_java_tool(tmp, [path])
+
+        findings = [f"{f['rule']} {f['file']}:{f['startLine']}" for f in data.get("findings", [])]
+        assert bool(findings) == metadata["should_detect"], (case_dir.name, findings)
+
+
+def test_format_reaching_tests():
+    analyzer = _new_analyzer()
+    assert analyzer._format_reaching_tests({"reachingTests": []}) == ""
+
+    text = analyzer._format_reaching_tests({
+        "reachingTests": [
+            {"method": "OrderService.total(int)", "tests": [
+                {"method": "OrderBenchmark.total()", "kind": "benchmark", "hops": 1},
+                {"method": "OrderServiceTest.testTotal()", "kind": "test", "hops": 2},
+            ]},
+        ]
+    })
+
+    assert text == (
+        "\n== 覆盖被改方法的基准与测试 ==\n"
+        "- OrderService.total(int): OrderBenchmark.total()[benchmark, 1层], OrderServiceTest.testTotal()[test, 2层]\n"
+    )
+
+
+def test_format_findings():
+    analyzer = _new_analyzer()
+    assert analyzer._format_findings({}) == ""
+    assert analyzer._format_findings({"findings": []}) == ""
+
+    text = analyzer._format_findings({
+        "findings": [
+            {"rule": "LoopQuery", "severity": "high", "file": "src/A.java", "startLine": 12, "endLine": 15,
+             "message": "循环内查询数据库"},
+            {"rule": "ThreadSleep", "severity": "medium", "file": "src/B.java", "startLine": 7, "endLine": 7,
+             "message": "请求线程中 sleep"},
+        ]
+    })
+
+    assert text == (
+        "\n== 静态规则检查结果 ==\n"
+        "- [high] LoopQuery src/A.java:12-15 循环内查询数据库\n"
+        "- [medium] ThreadSleep src/B.java:7 请求线程中 sleep\n"
+    )
+
+
+def test_format_cost_deltas():
+    analyzer = _new_analyzer()
+    assert analyzer._format_cost_deltas({}) == ""
+    # 没有基线（无 costDelta）或指标没有增加时不输出
+    assert analyzer._format_cost_deltas({"methods": [
+        {"name": "foo"},
+        {"name": "bar", "costDelta": {"maxLoopDepth": 0, "blockingCalls": -1}},
+    ]}) == ""
+
+    text = analyzer._format_cost_deltas({"methods": [
+        {"name": "ordersOfAll", "costDelta": {"maxLoopDepth": 2, "blockingCalls": 1, "collectionCopies": 0}},
+        {"name": "added", "addedSinceBase": True, "costDelta": {"cyclomaticComplexity": 2}},
+    ]})
+
+    assert text == "ordersOfAll 循环嵌套+2 阻塞调用+1; added(新增) 圈复杂度+2"
+
+
+def test_format_concurrency_hazards_without_base():
+    analyzer = _new_analyzer()
+    assert analyzer._format_concurrency_hazards({}) == ""
+
+    text = analyzer._format_concurrency_hazards({
+        "concurrencyHazards": [
+            {"method": "Cache.refresh()", "hazards": [
+                {"kind": "lock", "path": ["Cache.refresh()", "Cache.load()"]},
+            ]},
+        ]
+    })
+
+    assert text == (
+        "\n== 被改方法可能到达的锁与阻塞调用 ==\n"
+        "- Cache.refresh() lock: Cache.refresh() -> Cache.load()\n"
+    )
+
+
+def test_format_concurrency_hazards_lists_only_new_since_base():
+    analyzer = _new_analyzer()
+    hazards = {
+        "concurrencyHazards": [
+            {"method": "Cache.refresh()", "hazards": [
+                {"kind": "lock", "path": ["Cache.refresh()"], "newSinceBase": False},
+                {"kind": "blocking", "path": ["Cache.refresh()", "Thread.sleep(long)"], "newSinceBase": True},
+            ]},
+            {"method": "Cache.get()", "hazards": [
+                {"kind": "lock", "path": ["Cache.get()"], "newSinceBase": False},
+            ]},
+        ]
+    }
+
+    assert analyzer._format_concurrency_hazards(hazards) == (
+        "\n== 被改方法可能到达的锁与阻塞调用 ==\n"
+        "- Cache.refresh() blocking（新引入）: Cache.refresh() -> Thread.sleep(long)\n"
+    )
+
+    # 全部在基线中已存在时整节省略
+    hazards["concurrencyHazards"] = hazards["concurrencyHazards"][1:]
+    assert analyzer._format_concurrency_hazards(hazards) == ""
+
+
+def _field_relations():
+    return {
+        "fieldRelations": [
+            {"method": "Order.pay()", "fields": [
+                {"field": "Order.status", "access": "write", "column": "status",
+                 "accessors": [{"method": "Order.cancel()", "access": "write"},
+                               {"method": "OrderQuery.pending()", "access": "read"}],
+                 "omitted": 3},
+                {"field": "Order.amount", "access": "read", "accessors": []},
+            ]},
+        ],
+        "fieldAccessorSources": [
+            {"file": "src/Order.java", "startLine": 20, "endLine": 22, "method": "Order.cancel()",
+             "source": "void cancel() {\n    status = CANCELED;\n}"},
+        ],
+    }
+
+
+def test_format_field_relations():
+    analyzer = _new_analyzer()
+    assert analyzer._format_field_relations({}, with_sources=True) == ""
+    # 没有其他方法读写的字段不输出
+    assert analyzer._format_field_relations({"fieldRelations": [
+        {"method": "Order.pay()", "fields": [{"field": "Order.amount", "access": "read", "accessors": []}]},
+    ]}, with_sources=True) == ""
+
+    relation = ("- Order.pay() write Order.status（列 status）: "
+                "Order.cancel()[write], OrderQuery.pending()[read] 等另外 3 个\n")
+    assert analyzer._format_field_relations(_field_relations(), with_sources=False) == (
+        "\n== 读写相同字段的方法 ==\n" + relation
+    )
+    assert analyzer._format_field_relations(_field_relations(), with_sources=True) == (
+        "\n== 读写相同字段的方法 ==\n" + relation
+        + "\nsrc/Order.java:20-22 Order.cancel()\nvoid cancel() {\n    status = CANCELED;\n}\n"
+    )
 
 
+def test_truncated_context_keeps_sections_without_sources():
+    analyzer = _new_analyzer()
+    data = _field_relations()
+    data["changedFiles"] = [{"path": "src/Order.java", "fullContent": "class Order {}"}]
+    data["findings"] = [{"rule": "LoopQuery", "severity": "high", "file": "src/Order.java",
+                         "startLine": 3, "endLine": 3, "message": "循环内查询数据库"}]
 
+    text = analyzer._truncate_context(data, max_tokens=10000)
 
+    assert "- [high] LoopQuery src/Order.java:3 循环内查询数据库\n" in text
+    assert "== 读写相同字段的方法 ==" in text
+    assert "等另外 3 个" in text
+    assert "status = CANCELED" not in text
+    assert "== 覆盖被改方法的基准与测试 ==" not in text
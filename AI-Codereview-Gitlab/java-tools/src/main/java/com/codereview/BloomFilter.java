@@ -0,0 +1,101 @@
+package com.codereview;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 字符串集合的 Bloom filter（双重哈希），用于判断图分片是否可能包含某个方法 / 字段 key
+ * 误判率约 1%，不会漏判。只在单线程内写入，写入完成后可被多个线程只读共用。
+ */
+final class BloomFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final long[] bits;
+    private final int hashes;
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param expectedKeys 预计写入的 key 数
+     */
+    static BloomFilter forCapacity(int expectedKeys) {
+        int n = Math.max(1, expectedKeys);
+        long m = (long) Math.ceil(-n * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        int k = (int) Math.max(1, Math.round((double) words * 64 / n * Math.log(2)));
+        return new BloomFilter(new long[words], Math.min(k, 16));
+    }
+
+    void add(String key) {
+        long h1 = hash64(key);
+        long h2 = secondHash(h1);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String key) {
+        long h1 = hash64(key);
+        return mightContain(h1, secondHash(h1));
+    }
+
+    /**
+     * 同一个 key 要与很多分片比较时，先用 hash64 / secondHash 算好哈希
+     */
+    boolean mightContain(long h1, long h2) {
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, size);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a 64 位哈希
+     */
+    static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * 由第一个哈希派生第二个哈希（splitmix64 混合），保证为奇数
+     */
+    static long secondHash(long h1) {
+        long z = h1 + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) | 1L;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(hashes);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter read(DataInput in) throws IOException {
+        int hashes = in.readByte();
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashes);
+    }
+}
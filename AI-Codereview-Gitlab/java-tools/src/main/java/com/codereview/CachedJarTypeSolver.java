@@ -0,0 +1,267 @@
+package com.codereview;
+
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.javassistmodel.JavassistFactory;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 带持久化类名索引的 jar 类型解析器
+ * jar 内的类名索引按 jar 的 SHA-1 缓存在磁盘上，多个仓库、多次运行共享同一份索引；
+ * 只有请求的类型确实在该 jar 中时才打开 jar 读取类文件，未命中直接返回 unsolved，
+ * 既不读盘也不抛异常。
+ * 同一路径的 jar 在进程内只打开一次（见 {@link SharedJar}），各模块 / 各请求线程的组合解析器
+ * 只各持有一个轻量的实例，jar 中类型引用的其他类型回到各自的组合解析器上解析。
+ */
+class CachedJarTypeSolver implements TypeSolver {
+
+    /** SHA-1 -> jar 内的类名集合（进程内共享，只读） */
+    private static final Map<String, Set<String>> INDEX_BY_CHECKSUM = new ConcurrentHashMap<String, Set<String>>();
+    /** jar 绝对路径 -> 已打开的 jar（进程内共享） */
+    private static final Map<String, SharedJar> JARS_BY_PATH = new ConcurrentHashMap<String, SharedJar>();
+
+    private final SharedJar jar;
+    private TypeSolver parent;
+
+    private CachedJarTypeSolver(SharedJar jar) {
+        this.jar = jar;
+    }
+
+    /**
+     * 进程内共享的 jar：类名索引与读取类文件的 ClassPool。ClassPool 的查找自带同步，可以跨线程共用；
+     * 文件大小或修改时间变化（依赖升级后同路径覆盖）时重新打开。
+     */
+    private static final class SharedJar {
+        final File file;
+        final long length;
+        final long lastModified;
+        final Set<String> knownTypes;
+        /** 类名（a.b.Outer.Inner）-> ClassPool 中的类，没有时为空 Optional */
+        private final Map<String, Optional<CtClass>> classes = new ConcurrentHashMap<String, Optional<CtClass>>();
+        private ClassPool pool;
+
+        SharedJar(File file, Set<String> knownTypes) {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.knownTypes = knownTypes;
+        }
+
+        boolean isCurrent() {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        CtClass ctClass(String name) {
+            return classes.computeIfAbsent(name, k -> Optional.ofNullable(load(k))).orElse(null);
+        }
+
+        /**
+         * 索引中的类名把内部类的 $ 换成了 .，从右往左逐个还原成 $ 在 ClassPool 中查找
+         */
+        private CtClass load(String name) {
+            ClassPool classPool = pool();
+            if (classPool == null) {
+                return null;
+            }
+            String candidate = name;
+            while (true) {
+                CtClass ct = classPool.getOrNull(candidate);
+                if (ct != null) {
+                    return ct;
+                }
+                int dot = candidate.lastIndexOf('.');
+                if (dot < 0) {
+                    return null;
+                }
+                candidate = candidate.substring(0, dot) + "$" + candidate.substring(dot + 1);
+            }
+        }
+
+        private synchronized ClassPool pool() {
+            if (pool == null) {
+                try {
+                    ClassPool classPool = new ClassPool(false);
+                    classPool.appendClassPath(file.getAbsolutePath());
+                    pool = classPool;
+                } catch (NotFoundException e) {
+                    System.err.println("警告: 读取依赖 jar 失败: " + file.getAbsolutePath() + ", 原因: " + e.getMessage());
+                    return null;
+                }
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * @param cacheDir 磁盘索引目录，为 null 时只在进程内缓存
+     */
+    static CachedJarTypeSolver open(File jar, File cacheDir) throws IOException {
+        String path = jar.getAbsolutePath();
+        SharedJar shared = JARS_BY_PATH.get(path);
+        if (shared == null || !shared.isCurrent()) {
+            shared = new SharedJar(jar, knownTypes(jar, cacheDir));
+            JARS_BY_PATH.put(path, shared);
+        }
+        return new CachedJarTypeSolver(shared);
+    }
+
+    private static Set<String> knownTypes(File jar, File cacheDir) throws IOException {
+        String checksum = checksum(jar);
+        Set<String> types = INDEX_BY_CHECKSUM.get(checksum);
+        if (types == null) {
+            File cacheFile = cacheDir == null ? null : new File(cacheDir, checksum + ".classes.gz");
+            types = cacheFile != null && cacheFile.isFile() ? readIndex(cacheFile) : null;
+            if (types == null) {
+                types = indexJar(jar);
+                if (cacheFile != null) {
+                    writeIndex(cacheFile, types);
+                }
+            }
+            INDEX_BY_CHECKSUM.put(checksum, types);
+        }
+        return types;
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        if (!jar.knownTypes.contains(name)) {
+            return SymbolReference.unsolved();
+        }
+        CtClass ct = jar.ctClass(name);
+        return ct == null ? SymbolReference.<ResolvedReferenceTypeDeclaration>unsolved()
+                : SymbolReference.solved(JavassistFactory.toTypeDeclaration(ct, getRoot()));
+    }
+
+    @Override
+    public String toString() {
+        return "CachedJarTypeSolver{" + jar.file.getName() + "}";
+    }
+
+    // ===== 索引 =====
+
+    /**
+     * 优先使用本地 Maven 仓库里 jar 旁边的 .sha1 文件，没有时计算 SHA-1
+     */
+    private static String checksum(File jar) throws IOException {
+        File sha1File = new File(jar.getPath() + ".sha1");
+        if (sha1File.isFile()) {
+            String content = new String(Files.readAllBytes(sha1File.toPath()), StandardCharsets.US_ASCII).trim();
+            String[] parts = content.split("\\s+");
+            if (parts.length > 0 && parts[0].matches("[0-9a-fA-F]{40}")) {
+                return parts[0].toLowerCase(Locale.ROOT);
+            }
+        }
+        try (InputStream in = new FileInputStream(jar)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 与 JarTypeSolver 一致的类名规则：a/b/Outer$Inner.class -> a.b.Outer.Inner，跳过匿名类
+     */
+    private static Set<String> indexJar(File jar) throws IOException {
+        Set<String> types = new HashSet<String>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement().getName();
+                if (!entry.endsWith(".class") || entry.endsWith("module-info.class")
+                        || entry.endsWith("package-info.class") || entry.startsWith("META-INF/")) {
+                    continue;
+                }
+                String name = entry.substring(0, entry.length() - ".class".length());
+                if (name.matches(".*\\$\\d.*")) {
+                    continue;
+                }
+                types.add(name.replace('/', '.').replace('$', '.'));
+            }
+        }
+        return Collections.unmodifiableSet(types);
+    }
+
+    private static Set<String> readIndex(File cacheFile) {
+        Set<String> types = new HashSet<String>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(cacheFile)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    types.add(line);
+                }
+            }
+            return Collections.unmodifiableSet(types);
+        } catch (IOException e) {
+            // 索引损坏时重新生成
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子改名，多个进程同时写同一个 jar 的索引也不会读到半截文件
+     */
+    private static void writeIndex(File cacheFile, Set<String> types) {
+        try {
+            File dir = cacheFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                return;
+            }
+            List<String> sorted = new ArrayList<String>(types);
+            Collections.sort(sorted);
+            File tmp = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+            try (Writer writer = new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(tmp)), StandardCharsets.UTF_8)) {
+                for (String type : sorted) {
+                    writer.write(type);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("警告: 写入 jar 索引缓存失败: " + cacheFile.getAbsolutePath() + ", 原因: " + e.getMessage());
+        }
+    }
+}
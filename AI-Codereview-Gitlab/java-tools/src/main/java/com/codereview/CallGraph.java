@@ -0,0 +1,1265 @@
+package com.codereview;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 方法级调用图快照（不可变）
+ * 建好后通过 ContextEngine 原子发布，任意多个分析请求可以无锁并发读取；
+ * 重建时另起一份新快照，旧快照在新快照发布前继续服务。
+ *
+ * 构建时用 Tarjan 算法求强连通分量（递归 / 互相递归的方法），缩点为 DAG，
+ * 并为每个分量预先记录上下各 k 层可达的分量（有上限），调用链查询直接查表，不再在环上反复遍历。
+ * 扇入 / 扇出特别大的中心节点（日志、鉴权工具方法、通用 Repository 方法）不再继续展开，
+ * 只按相关度抽样少量邻居或直接截断，无论被改方法多“中心”，遍历耗时与上下文大小都有上界。
+ */
+final class CallGraph {
+
+    /** 只以 jar 形式出现的数据访问类型（类名前缀） */
+    private static final String[] DATA_ACCESS_PACKAGES = {
+            "org.springframework.data.repository.", "org.springframework.data.jpa.repository.",
+            "org.springframework.data.mongodb.repository.", "org.springframework.jdbc.core.",
+            "javax.persistence.EntityManager", "jakarta.persistence.EntityManager", "org.hibernate.Session",
+            "org.apache.ibatis.session.SqlSession", "com.baomidou.mybatisplus.core.mapper.BaseMapper"};
+
+    /** from 方法 -> to 方法集合，key 形如 com.example.Foo#bar(Long,String)（参数为擦除后的简单类型名） */
+    private final Map<String, Set<String>> down;
+    /** to 方法 -> from 方法集合 */
+    private final Map<String, Set<String>> up;
+    /** 方法 -> 源文件相对仓库根目录的路径（例如 module-a/src/main/java/com/example/Foo.java） */
+    private final Map<String, String> methodToFile;
+    /** 方法 -> 规范化 AST 指纹（只有有源码的方法） */
+    private final Map<String, Long> fingerprints;
+    /** 基准 / 测试方法 -> 类型（benchmark / test），需索引测试源码 */
+    private final Map<String, String> testRoots;
+    /** 方法 -> 自身的并发隐患位（见 ConcurrencyHazards），没有隐患的方法不记录 */
+    private final Map<String, Integer> hazards;
+    /** 方法 -> 其读写的字段（字段 key -> FieldAccessIndex.READ / WRITE 位），只含源码类中的状态字段 */
+    private final Map<String, Map<String, Integer>> fieldsByMethod;
+    /** 字段 -> 读写它的方法（倒排） */
+    private final Map<String, Map<String, Integer>> methodsByField;
+    /** 实体字段 -> 列名 */
+    private final Map<String, String> fieldColumns;
+    /** HTTP 入口方法 */
+    private final Set<String> endpoints;
+
+    // ===== 缩点后的 DAG =====
+
+    /** 方法 key -> 节点编号 */
+    private final Map<String, Integer> nodeIds;
+    /** 节点编号 -> 方法 key */
+    private final String[] nodeKeys;
+    /** 节点编号 -> 所属强连通分量 */
+    private final int[] sccOf;
+    /** 分量 -> 成员节点 */
+    private final int[][] sccMembers;
+    /** 分量 -> 被调分量 / 调用方分量（缩点后的 DAG 边，按原调用顺序） */
+    private final int[][] sccDown;
+    private final int[][] sccUp;
+    /** 分量内的 HTTP 入口方法数 */
+    private final int[] sccEndpoints;
+    /** 分量 -> 向下 / 向上 k 层可达分量摘要（见 Reach），超过上限时为 null，查询时退回 DAG 上的 BFS */
+    private final Reach[] downReach;
+    private final Reach[] upReach;
+    /** 摘要覆盖的层数 */
+    private final int summaryHops;
+    /** 节点编号 -> 入度（直接调用方数）/ 出度（直接被调方法数） */
+    private final int[] inDegree;
+    private final int[] outDegree;
+    /** 分量是否为向上 / 向下遍历时的中心节点（扇入 / 扇出超过阈值） */
+    private final boolean[] upHub;
+    private final boolean[] downHub;
+    /** 中心节点的邻居是抽样保留（true）还是全部截断（false） */
+    private final boolean sampleHubNeighbours;
+    private final int hubSampleSize;
+    /** 建图时识别出的数据访问类（Repository / DAO / Mapper）全限定名 */
+    private final Set<String> dataAccessClasses;
+    /** 分量 -> 到最近的数据访问方法的调用层数（自身含数据访问方法为 0，到达不了为 Integer.MAX_VALUE） */
+    private final int[] dataAccessHops;
+    /** 分量 -> 可能到达的并发隐患位（自身与所有直接、间接被调方法的并集） */
+    private final int[] reachHazards;
+    /** 分量 -> 影响面（按需计算并缓存） */
+    private final Map<Integer, BlastRadius> blastRadiusCache = new ConcurrentHashMap<Integer, BlastRadius>();
+
+    private CallGraph(Map<String, Set<String>> down, Map<String, Set<String>> up, Map<String, String> methodToFile,
+                      Map<String, Long> fingerprints, Set<String> endpoints, Set<String> dataAccessClasses,
+                      Map<String, String> testRoots, Map<String, Integer> hazards,
+                      Map<String, Map<String, Integer>> fieldAccesses, Map<String, Set<String>> stateFields,
+                      Map<String, String> fieldColumns, EngineConfig config) {
+        this.down = down;
+        this.up = up;
+        this.methodToFile = methodToFile;
+        this.fingerprints = fingerprints;
+        this.testRoots = testRoots;
+        this.hazards = hazards;
+        this.fieldColumns = fieldColumns;
+        this.endpoints = endpoints;
+        this.fieldsByMethod = new HashMap<String, Map<String, Integer>>();
+        this.methodsByField = new HashMap<String, Map<String, Integer>>();
+        indexFieldAccesses(fieldAccesses, stateFields);
+        this.summaryHops = config.reachSummaryHops;
+        this.sampleHubNeighbours = "sample".equals(config.hubPolicy);
+        this.hubSampleSize = config.hubSampleSize;
+
+        // 节点编号：先是有源码的方法，再是只作为调用目标出现的方法（JDK / 三方库）
+        Set<String> keys = new LinkedHashSet<String>(methodToFile.keySet());
+        keys.addAll(down.keySet());
+        keys.addAll(up.keySet());
+        this.nodeKeys = keys.toArray(new String[0]);
+        this.nodeIds = new HashMap<String, Integer>(nodeKeys.length * 2);
+        for (int i = 0; i < nodeKeys.length; i++) {
+            nodeIds.put(nodeKeys[i], i);
+        }
+        int[][] adjacency = new int[nodeKeys.length][];
+        this.inDegree = new int[nodeKeys.length];
+        this.outDegree = new int[nodeKeys.length];
+        for (int i = 0; i < nodeKeys.length; i++) {
+            adjacency[i] = toIds(down.get(nodeKeys[i]));
+            outDegree[i] = adjacency[i].length;
+            Set<String> callers = up.get(nodeKeys[i]);
+            inDegree[i] = callers == null ? 0 : callers.size();
+        }
+
+        this.sccOf = tarjan(adjacency);
+        int sccCount = 0;
+        for (int c : sccOf) {
+            sccCount = Math.max(sccCount, c + 1);
+        }
+        this.sccMembers = groupMembers(sccOf, sccCount);
+        this.sccDown = condense(adjacency, sccOf, sccMembers);
+        this.sccUp = reverse(sccDown);
+        this.sccEndpoints = new int[sccCount];
+        for (String endpoint : endpoints) {
+            Integer id = nodeIds.get(endpoint);
+            if (id != null) {
+                sccEndpoints[sccOf[id]]++;
+            }
+        }
+        this.upHub = hubFlags(sccUp, config.hubPercentile, config.hubMinDegree);
+        this.downHub = hubFlags(sccDown, config.hubPercentile, config.hubMinDegree);
+        this.dataAccessClasses = dataAccessClasses;
+        this.dataAccessHops = computeDataAccessHops();
+        this.reachHazards = computeReachHazards();
+        this.downReach = new Reach[sccCount];
+        this.upReach = new Reach[sccCount];
+        for (int c = 0; c < sccCount; c++) {
+            downReach[c] = Reach.compute(sccDown, downHub, c, summaryHops, config.reachSummaryCap);
+            upReach[c] = Reach.compute(sccUp, upHub, c, summaryHops, config.reachSummaryCap);
+        }
+    }
+
+    boolean isEmpty() {
+        return down.isEmpty();
+    }
+
+    int methodCount() {
+        return methodToFile.size();
+    }
+
+    int sccCount() {
+        return sccMembers.length;
+    }
+
+    /**
+     * 最大强连通分量的方法数（1 表示图中没有递归环）
+     */
+    int largestSccSize() {
+        int largest = 0;
+        for (int[] members : sccMembers) {
+            largest = Math.max(largest, members.length);
+        }
+        return largest;
+    }
+
+    /**
+     * 中心节点（向上或向下）所含的方法数
+     */
+    int hubMethodCount() {
+        int count = 0;
+        for (int c = 0; c < sccMembers.length; c++) {
+            if (upHub[c] || downHub[c]) {
+                count += sccMembers[c].length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 方法所在分量是否为中心节点（任一方向）
+     */
+    boolean isHub(String methodKey) {
+        Integer id = nodeIds.get(methodKey);
+        return id != null && (upHub[sccOf[id]] || downHub[sccOf[id]]);
+    }
+
+    int inDegree(String methodKey) {
+        Integer id = nodeIds.get(methodKey);
+        return id == null ? 0 : inDegree[id];
+    }
+
+    int outDegree(String methodKey) {
+        Integer id = nodeIds.get(methodKey);
+        return id == null ? 0 : outDegree[id];
+    }
+
+    /**
+     * 所有有源码的方法 key
+     */
+    Set<String> methodKeys() {
+        return Collections.unmodifiableSet(methodToFile.keySet());
+    }
+
+    /**
+     * 图中所有方法 key，含只作为调用目标出现的方法（JDK / 三方库）
+     */
+    Set<String> allMethodKeys() {
+        return Collections.unmodifiableSet(nodeIds.keySet());
+    }
+
+    boolean isEndpoint(String methodKey) {
+        return endpoints.contains(methodKey);
+    }
+
+    /**
+     * 基准 / 测试方法的类型（benchmark / test），不是时为 null
+     */
+    String testRootKind(String methodKey) {
+        return testRoots.get(methodKey);
+    }
+
+    /**
+     * 已索引的基准 / 测试方法数
+     */
+    int testRootCount() {
+        return testRoots.size();
+    }
+
+    String fileOf(String methodKey) {
+        return methodToFile.get(methodKey);
+    }
+
+    Set<String> callees(String methodKey) {
+        Set<String> callees = down.get(methodKey);
+        return callees == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(callees);
+    }
+
+    Set<String> callers(String methodKey) {
+        Set<String> callers = up.get(methodKey);
+        return callers == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(callers);
+    }
+
+    /**
+     * 方法向下 depth 层内的所有被调方法（按 key 排序）及其指纹，没有源码的方法（JDK / 三方库）指纹为 null。
+     * 不做中心节点截断：依赖指纹要求覆盖全部被调方法。
+     */
+    SortedMap<String, Long> calleeFingerprints(String methodKey, int depth) {
+        SortedMap<String, Long> result = new TreeMap<String, Long>();
+        List<String> frontier = Collections.singletonList(methodKey);
+        Set<String> visited = new HashSet<String>(frontier);
+        for (int d = 0; d < depth && !frontier.isEmpty(); d++) {
+            List<String> next = new ArrayList<String>();
+            for (String key : frontier) {
+                for (String callee : callees(key)) {
+                    if (visited.add(callee)) {
+                        result.put(callee, fingerprints.get(callee));
+                        next.add(callee);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+    /**
+     * 从起始方法集合出发，沿调用图向上/向下分别追踪指定层数，收集相关方法。
+     * 层数按缩点后的 DAG 计算：同一个递归环内的方法互相可达，算作第 0 层；整个环只算一层。
+     * 结果按层由近到远排列。
+     *
+     * @param pruned 收集被截断 / 抽样的中心节点（key 为方向 + 分量），可以为 null
+     */
+    Set<String> collectRelatedMethods(Set<String> startMethods, int upDepth, int downDepth,
+                                      Map<String, PrunedHub> pruned) {
+        Set<String> related = new LinkedHashSet<String>();
+        if (startMethods == null || startMethods.isEmpty()) {
+            return related;
+        }
+        List<Integer> startSccs = startSccs(startMethods);
+
+        // 与起点处在同一个递归环里的方法
+        for (int c : startSccs) {
+            addMembers(c, related);
+        }
+
+        // 向下
+        if (downDepth > 0) {
+            for (int[] layer : mergeLayers(startSccs, false, downDepth, pruned)) {
+                for (int c : layer) {
+                    addMembers(c, related);
+                }
+            }
+        }
+
+        // 向上
+        if (upDepth > 0) {
+            for (int[] layer : mergeLayers(startSccs, true, upDepth, pruned)) {
+                for (int c : layer) {
+                    addMembers(c, related);
+                }
+            }
+        }
+
+        // 不把起始方法本身放进去（起点的方法所在文件已经在 changedFiles 里）
+        related.removeAll(startMethods);
+        return related;
+    }
+
+    /**
+     * 构建调用链字符串列表
+     * 从起始方法出发，构建到相关方法的调用链路径
+     *
+     * @param profile 生产 profile，不为 null 时每条链标注采样占比，并把热的链排在前面
+     */
+    List<String> buildCallChains(Set<String> startMethods, Set<String> relatedMethods, int upDepth, int downDepth,
+                                 ProfileWeights profile) {
+        List<String> chains = new ArrayList<String>();
+        if (startMethods == null || startMethods.isEmpty()) {
+            return chains;
+        }
+        // 链 -> 采样占比，按占比稳定排序时使用
+        final Map<String, Double> shares = new HashMap<String, Double>();
+
+        // 构建向下调用链（startMethod -> relatedMethod），同一递归环内的方法也在此列
+        for (String startMethod : startMethods) {
+            Integer id = nodeIds.get(startMethod);
+            if (id == null) {
+                continue;
+            }
+            List<int[]> layers = new ArrayList<int[]>();
+            layers.add(new int[]{sccOf[id]});
+            if (downDepth > 0) {
+                layers.addAll(layers(sccOf[id], false, downDepth, null));
+            }
+            for (int[] layer : layers) {
+                for (int c : layer) {
+                    for (int m : sccMembers[c]) {
+                        if (relatedMethods.contains(nodeKeys[m]) && !nodeKeys[m].equals(startMethod)) {
+                            chains.add(chain(startMethod, nodeKeys[m], profile, shares));
+                        }
+                    }
+                }
+            }
+        }
+
+        // 构建向上调用链（relatedMethod -> startMethod）
+        if (upDepth > 0) {
+            for (String startMethod : startMethods) {
+                Integer id = nodeIds.get(startMethod);
+                if (id == null) {
+                    continue;
+                }
+                for (int[] layer : layers(sccOf[id], true, upDepth, null)) {
+                    for (int c : layer) {
+                        for (int m : sccMembers[c]) {
+                            if (relatedMethods.contains(nodeKeys[m])) {
+                                chains.add(chain(nodeKeys[m], startMethod, profile, shares));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (profile != null) {
+            Collections.sort(chains, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Double.compare(shares.get(b), shares.get(a));
+                }
+            });
+        }
+        return chains;
+    }
+
+    /**
+     * 格式化一条调用链；有 profile 时标注占比：直接调用取该调用边的占比，
+     * 隔层调用取两端方法占比的较小值作为上界（标注为 ≤）
+     */
+    private String chain(String from, String to, ProfileWeights profile, Map<String, Double> shares) {
+        String chain = MethodKeys.format(from) + " -> " + MethodKeys.format(to);
+        if (profile == null) {
+            return chain;
+        }
+        boolean direct = callees(from).contains(to);
+        double share = direct ? profile.edgeShare(from, to) : Math.min(profile.share(from), profile.share(to));
+        if (share > 0) {
+            chain += " [" + profile.type + " " + (direct ? "" : "≤") + ProfileWeights.percent(share) + "%]";
+        }
+        shares.put(chain, share);
+        return chain;
+    }
+
+    /**
+     * 方法的影响面：所有直接或间接调用它的方法数，以及其中（含自身）的 HTTP 入口数。
+     * 按分量计算一次后缓存，方法不在图中时返回 null。
+     */
+    BlastRadius blastRadius(String methodKey) {
+        Integer id = nodeIds.get(methodKey);
+        if (id == null) {
+            return null;
+        }
+        final int scc = sccOf[id];
+        BlastRadius cached = blastRadiusCache.get(scc);
+        if (cached != null) {
+            return cached;
+        }
+        // 同一分量内的其他方法都是调用方
+        int callers = sccMembers[scc].length - 1;
+        int endpoints = sccEndpoints[scc];
+        boolean[] visited = new boolean[sccMembers.length];
+        visited[scc] = true;
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(scc);
+        while (!queue.isEmpty()) {
+            for (int caller : sccUp[queue.poll()]) {
+                if (!visited[caller]) {
+                    visited[caller] = true;
+                    callers += sccMembers[caller].length;
+                    endpoints += sccEndpoints[caller];
+                    queue.add(caller);
+                }
+            }
+        }
+        BlastRadius radius = new BlastRadius(callers, endpoints, sccMembers[scc].length);
+        blastRadiusCache.put(scc, radius);
+        return radius;
+    }
+
+    /**
+     * 在 maxHops 层调用内到达 methodKey 的基准 / 测试方法（沿调用方反向 BFS）。
+     * 按层数由近到远、同层基准在前排列，最多 limit 个；同一层的结果要么全部保留要么按排序截断，结果稳定。
+     * 与影响面不同，这里不跳过中心节点：测试常经由公共工具方法间接调用被改方法。
+     */
+    List<TestReach> testsReaching(String methodKey, int maxHops, int limit) {
+        List<TestReach> result = new ArrayList<TestReach>();
+        if (testRoots.isEmpty() || maxHops <= 0) {
+            return result;
+        }
+        Set<String> visited = new HashSet<String>();
+        visited.add(methodKey);
+        List<String> frontier = Collections.singletonList(methodKey);
+        for (int hop = 1; hop <= maxHops && !frontier.isEmpty() && result.size() < limit; hop++) {
+            List<String> next = new ArrayList<String>();
+            List<TestReach> level = new ArrayList<TestReach>();
+            for (String m : frontier) {
+                for (String caller : callers(m)) {
+                    if (!visited.add(caller)) {
+                        continue;
+                    }
+                    next.add(caller);
+                    String kind = testRoots.get(caller);
+                    if (kind != null) {
+                        level.add(new TestReach(caller, kind, hop));
+                    }
+                }
+            }
+            Collections.sort(level, new Comparator<TestReach>() {
+                @Override
+                public int compare(TestReach a, TestReach b) {
+                    if (!a.kind.equals(b.kind)) {
+                        return a.kind.equals(TestReach.BENCHMARK) ? -1 : 1;
+                    }
+                    return a.methodKey.compareTo(b.methodKey);
+                }
+            });
+            for (TestReach reach : level) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(reach);
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+    private List<Integer> startSccs(Set<String> startMethods) {
+        Set<Integer> sccs = new LinkedHashSet<Integer>();
+        for (String m : startMethods) {
+            Integer id = nodeIds.get(m);
+            if (id != null) {
+                sccs.add(sccOf[id]);
+            }
+        }
+        return new ArrayList<Integer>(sccs);
+    }
+
+    private void addMembers(int scc, Set<String> out) {
+        for (int m : sccMembers[scc]) {
+            out.add(nodeKeys[m]);
+        }
+    }
+
+    /**
+     * 多个起点的分层结果按层合并，保证近的层排在前面
+     */
+    private List<int[]> mergeLayers(List<Integer> startSccs, boolean upward, int depth,
+                                    Map<String, PrunedHub> pruned) {
+        List<List<int[]>> perStart = new ArrayList<List<int[]>>();
+        for (int c : startSccs) {
+            perStart.add(layers(c, upward, depth, pruned));
+        }
+        List<int[]> merged = new ArrayList<int[]>();
+        for (int d = 0; d < depth; d++) {
+            for (List<int[]> layers : perStart) {
+                if (d < layers.size()) {
+                    merged.add(layers.get(d));
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 从分量 scc 出发第 1..depth 层的分量；depth 不超过摘要层数时直接查表。
+     * 遍历在中心节点处停止：按策略从其邻居中抽样相关度最高的几个，或全部截断；
+     * 起点本身是中心节点时总是抽样，保证被改方法至少有少量上下文。
+     */
+    private List<int[]> layers(int scc, boolean upward, int depth, Map<String, PrunedHub> pruned) {
+        int[][] edges = upward ? sccUp : sccDown;
+        boolean[] hubs = upward ? upHub : downHub;
+        Reach reach = (upward ? upReach : downReach)[scc];
+        if (reach == null || depth > summaryHops) {
+            reach = Reach.compute(edges, hubs, scc, depth, Integer.MAX_VALUE);
+        }
+        List<List<Integer>> layers = new ArrayList<List<Integer>>();
+        Set<Integer> seen = new HashSet<Integer>();
+        seen.add(scc);
+        for (int d = 1; d <= Math.min(depth, reach.hops()); d++) {
+            List<Integer> layer = new ArrayList<Integer>();
+            for (int c : reach.layer(d)) {
+                layer.add(c);
+                seen.add(c);
+            }
+            layers.add(layer);
+        }
+
+        for (int i = 0; i < reach.prunedHubs.length; i++) {
+            int hub = reach.prunedHubs[i];
+            int hubLayer = reach.prunedLayers[i];
+            if (hubLayer >= depth) {
+                continue;
+            }
+            List<Integer> neighbours = new ArrayList<Integer>();
+            for (int n : edges[hub]) {
+                if (!seen.contains(n)) {
+                    neighbours.add(n);
+                }
+            }
+            List<Integer> sampled = sampleHubNeighbours || hub == scc
+                    ? sampleByRelevance(neighbours, nodeKeys[sccMembers[scc][0]], hubSampleSize)
+                    : Collections.<Integer>emptyList();
+            while (layers.size() <= hubLayer) {
+                layers.add(new ArrayList<Integer>());
+            }
+            layers.get(hubLayer).addAll(sampled);
+            seen.addAll(sampled);
+            if (pruned != null && neighbours.size() > sampled.size()) {
+                String key = (upward ? "up:" : "down:") + hub;
+                if (!pruned.containsKey(key)) {
+                    pruned.put(key, new PrunedHub(nodeKeys[sccMembers[hub][0]], upward ? "up" : "down",
+                            edges[hub].length, neighbours.size() - sampled.size(), sampled.size()));
+                }
+            }
+        }
+
+        List<int[]> result = new ArrayList<int[]>();
+        for (List<Integer> layer : layers) {
+            result.add(toArray(layer));
+        }
+        return result;
+    }
+
+    /**
+     * 按与起点的相关度抽样中心节点的邻居：包名公共前缀越长越相关，其次选扇入扇出更小（更具体）的方法
+     */
+    private List<Integer> sampleByRelevance(List<Integer> neighbours, String anchorKey, int size) {
+        if (neighbours.size() <= size) {
+            return neighbours;
+        }
+        final String[] anchor = MethodKeys.classOf(anchorKey).split("\\.");
+        List<Integer> sorted = new ArrayList<Integer>(neighbours);
+        Collections.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byPrefix = Integer.compare(commonPrefix(b), commonPrefix(a));
+                if (byPrefix != 0) {
+                    return byPrefix;
+                }
+                int byDegree = Integer.compare(sccUp[a].length + sccDown[a].length, sccUp[b].length + sccDown[b].length);
+                return byDegree != 0 ? byDegree : nodeKeys[sccMembers[a][0]].compareTo(nodeKeys[sccMembers[b][0]]);
+            }
+
+            private int commonPrefix(int c) {
+                String[] parts = MethodKeys.classOf(nodeKeys[sccMembers[c][0]]).split("\\.");
+                int n = 0;
+                while (n < parts.length && n < anchor.length && parts[n].equals(anchor[n])) {
+                    n++;
+                }
+                return n;
+            }
+        });
+        return new ArrayList<Integer>(sorted.subList(0, size));
+    }
+
+    // ===== 字段读写 =====
+
+    /**
+     * 方法读写的字段（字段 key -> READ / WRITE 位，按 key 排序）
+     */
+    SortedMap<String, Integer> fieldsAccessedBy(String methodKey) {
+        Map<String, Integer> fields = fieldsByMethod.get(methodKey);
+        return fields == null ? new TreeMap<String, Integer>() : new TreeMap<String, Integer>(fields);
+    }
+
+    /**
+     * 读写字段的方法（方法 key -> READ / WRITE 位，按 key 排序）
+     */
+    SortedMap<String, Integer> methodsAccessing(String fieldKey) {
+        Map<String, Integer> methods = methodsByField.get(fieldKey);
+        return methods == null ? new TreeMap<String, Integer>() : new TreeMap<String, Integer>(methods);
+    }
+
+    /**
+     * 实体字段映射的列名，不是实体字段时为 null
+     */
+    String columnOf(String fieldKey) {
+        return fieldColumns.get(fieldKey);
+    }
+
+    /**
+     * 只保留源码类中声明的状态字段（过滤 JDK / 三方库的 getXxx、isEmpty 等以及计算属性），并建立倒排。
+     * 状态字段还需在某个方法中被写过（构造器不算）或映射到列，否则视为只在注入 / 初始化时赋值的依赖。
+     */
+    private void indexFieldAccesses(Map<String, Map<String, Integer>> fieldAccesses,
+                                    Map<String, Set<String>> stateFields) {
+        Set<String> written = new HashSet<String>();
+        for (Map<String, Integer> accesses : fieldAccesses.values()) {
+            for (Map.Entry<String, Integer> access : accesses.entrySet()) {
+                if ((access.getValue() & FieldAccessIndex.WRITE) != 0) {
+                    written.add(access.getKey());
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, Integer>> e : fieldAccesses.entrySet()) {
+            for (Map.Entry<String, Integer> access : e.getValue().entrySet()) {
+                String fieldKey = access.getKey();
+                int dot = fieldKey.lastIndexOf('.');
+                Set<String> fields = stateFields.get(fieldKey.substring(0, dot));
+                if (fields == null || !fields.contains(fieldKey.substring(dot + 1))
+                        || !(written.contains(fieldKey) || fieldColumns.containsKey(fieldKey))) {
+                    continue;
+                }
+                fieldsByMethod.computeIfAbsent(e.getKey(), k -> new HashMap<String, Integer>())
+                        .put(fieldKey, access.getValue());
+                methodsByField.computeIfAbsent(fieldKey, k -> new HashMap<String, Integer>())
+                        .put(e.getKey(), access.getValue());
+            }
+        }
+    }
+
+    // ===== 并发隐患可达性 =====
+
+    /**
+     * 方法自身的并发隐患位
+     */
+    int ownHazards(String methodKey) {
+        Integer own = hazards.get(methodKey);
+        return own == null ? 0 : own;
+    }
+
+    /**
+     * 方法直接或间接可能到达的并发隐患位（含自身），不在图中为 0。不受中心节点截断影响。
+     */
+    int reachableHazards(String methodKey) {
+        Integer id = nodeIds.get(methodKey);
+        return id == null ? ownHazards(methodKey) : reachHazards[sccOf[id]];
+    }
+
+    /**
+     * 从方法到最近的、自身带有 kind 隐患的方法的最短调用路径（含两端），到达不了时为空。
+     * BFS 只进入可达摘要中含 kind 的方法，代价与路径附近的图大小成正比。
+     */
+    List<String> hazardPath(String methodKey, int kind) {
+        if ((reachableHazards(methodKey) & kind) == 0) {
+            return new ArrayList<String>();
+        }
+        Map<String, String> parent = new HashMap<String, String>();
+        parent.put(methodKey, null);
+        Deque<String> queue = new ArrayDeque<String>();
+        queue.add(methodKey);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if ((ownHazards(current) & kind) != 0) {
+                LinkedList<String> path = new LinkedList<String>();
+                for (String m = current; m != null; m = parent.get(m)) {
+                    path.addFirst(m);
+                }
+                return path;
+            }
+            // 同层按 key 排序保证结果稳定
+            for (String callee : new TreeSet<String>(callees(current))) {
+                if (!parent.containsKey(callee) && (reachableHazards(callee) & kind) != 0) {
+                    parent.put(callee, current);
+                    queue.add(callee);
+                }
+            }
+        }
+        return new ArrayList<String>();
+    }
+
+    /**
+     * 自底向上在缩点后的 DAG 上汇总隐患位：分量取成员自身隐患的并集，再并上所有被调分量
+     */
+    private int[] computeReachHazards() {
+        int count = sccMembers.length;
+        int[] reach = new int[count];
+        for (Map.Entry<String, Integer> e : hazards.entrySet()) {
+            Integer id = nodeIds.get(e.getKey());
+            if (id != null) {
+                reach[sccOf[id]] |= e.getValue();
+            }
+        }
+        int[] remaining = new int[count];
+        Deque<Integer> ready = new ArrayDeque<Integer>();
+        for (int c = 0; c < count; c++) {
+            remaining[c] = sccDown[c].length;
+            if (remaining[c] == 0) {
+                ready.add(c);
+            }
+        }
+        while (!ready.isEmpty()) {
+            int c = ready.poll();
+            for (int caller : sccUp[c]) {
+                reach[caller] |= reach[c];
+                if (--remaining[caller] == 0) {
+                    ready.add(caller);
+                }
+            }
+        }
+        return reach;
+    }
+
+    // ===== 数据访问可达性 =====
+
+    /**
+     * 方法经几层调用到达数据访问方法（Repository / DAO / Mapper / JdbcTemplate 等），自身即数据访问方法为 0，
+     * 到达不了或不在图中为 -1。不受中心节点截断影响。
+     */
+    int dataAccessHops(String methodKey) {
+        Integer id = nodeIds.get(methodKey);
+        if (id == null || dataAccessHops[sccOf[id]] == Integer.MAX_VALUE) {
+            return -1;
+        }
+        return dataAccessHops[sccOf[id]];
+    }
+
+    /**
+     * 从方法到最近的数据访问方法的一条调用路径（含两端），到达不了时为空
+     */
+    List<String> dataAccessPath(String methodKey) {
+        List<String> path = new ArrayList<String>();
+        if (dataAccessHops(methodKey) < 0) {
+            return path;
+        }
+        Set<String> visited = new HashSet<String>();
+        String current = methodKey;
+        while (current != null && visited.add(current)) {
+            path.add(current);
+            int id = nodeIds.get(current);
+            if (isDataAccessNode(id)) {
+                return path;
+            }
+            // 沿层数最小的被调方法前进，同层按 key 排序保证结果稳定
+            String next = null;
+            int best = Integer.MAX_VALUE;
+            for (String callee : new TreeSet<String>(callees(current))) {
+                int hops = dataAccessHops(callee);
+                if (hops >= 0 && hops < best && !visited.contains(callee)) {
+                    best = hops;
+                    next = callee;
+                }
+            }
+            current = next;
+        }
+        return path;
+    }
+
+    private boolean isDataAccessNode(int id) {
+        return isDataAccessClass(MethodKeys.classOf(nodeKeys[id]), dataAccessClasses);
+    }
+
+    /**
+     * 自底向上在缩点后的 DAG 上求到数据访问方法的层数：被调分量先定，调用方取最小值加一
+     */
+    private int[] computeDataAccessHops() {
+        int count = sccMembers.length;
+        int[] hops = new int[count];
+        Arrays.fill(hops, Integer.MAX_VALUE);
+        for (int id = 0; id < nodeKeys.length; id++) {
+            if (isDataAccessNode(id)) {
+                hops[sccOf[id]] = 0;
+            }
+        }
+        int[] remaining = new int[count];
+        Deque<Integer> ready = new ArrayDeque<Integer>();
+        for (int c = 0; c < count; c++) {
+            remaining[c] = sccDown[c].length;
+            if (remaining[c] == 0) {
+                ready.add(c);
+            }
+        }
+        while (!ready.isEmpty()) {
+            int c = ready.poll();
+            for (int caller : sccUp[c]) {
+                if (hops[c] != Integer.MAX_VALUE && hops[c] + 1 < hops[caller]) {
+                    hops[caller] = hops[c] + 1;
+                }
+                if (--remaining[caller] == 0) {
+                    ready.add(caller);
+                }
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * 数据访问类：建图时识别出的 Repository / DAO / Mapper（见 ContextEngine.isDataAccess），
+     * 以及只以 jar 形式出现的 Spring Data、JDBC、JPA、MyBatis 接口
+     */
+    private static boolean isDataAccessClass(String classFqn, Set<String> dataAccessClasses) {
+        if (dataAccessClasses.contains(classFqn)) {
+            return true;
+        }
+        for (String prefix : DATA_ACCESS_PACKAGES) {
+            if (classFqn.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 扇入（或扇出）超过给定分位数且不小于 minDegree 的分量视为中心节点；percentile 不在 (0, 100) 内时不启用
+     */
+    private static boolean[] hubFlags(int[][] edges, int percentile, int minDegree) {
+        boolean[] hubs = new boolean[edges.length];
+        if (percentile <= 0 || percentile >= 100) {
+            return hubs;
+        }
+        List<Integer> degrees = new ArrayList<Integer>();
+        for (int[] e : edges) {
+            if (e.length > 0) {
+                degrees.add(e.length);
+            }
+        }
+        if (degrees.isEmpty()) {
+            return hubs;
+        }
+        Collections.sort(degrees);
+        int threshold = degrees.get((int) Math.floor((degrees.size() - 1) * percentile / 100.0));
+        for (int c = 0; c < edges.length; c++) {
+            hubs[c] = edges[c].length > threshold && edges[c].length >= minDegree;
+        }
+        return hubs;
+    }
+
+    private int[] toIds(Set<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return new int[0];
+        }
+        int[] ids = new int[keys.size()];
+        int i = 0;
+        for (String key : keys) {
+            ids[i++] = nodeIds.get(key);
+        }
+        return ids;
+    }
+
+    // ===== 强连通分量 =====
+
+    /**
+     * 迭代版 Tarjan 算法（避免大图上递归过深栈溢出），返回每个节点所属分量的编号
+     */
+    private static int[] tarjan(int[][] adjacency) {
+        int n = adjacency.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] scc = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int sp = 0;
+        // 模拟递归调用栈：当前节点与下一条待访问的边
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        int counter = 0;
+        int sccCount = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int csp = 0;
+            callNode[csp] = root;
+            callEdge[csp++] = 0;
+            index[root] = low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+
+            while (csp > 0) {
+                int v = callNode[csp - 1];
+                if (callEdge[csp - 1] < adjacency[v].length) {
+                    int w = adjacency[v][callEdge[csp - 1]++];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callNode[csp] = w;
+                        callEdge[csp++] = 0;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        scc[w] = sccCount;
+                    } while (w != v);
+                    sccCount++;
+                }
+                csp--;
+                if (csp > 0) {
+                    int parent = callNode[csp - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return scc;
+    }
+
+    private static int[][] groupMembers(int[] sccOf, int sccCount) {
+        int[] sizes = new int[sccCount];
+        for (int c : sccOf) {
+            sizes[c]++;
+        }
+        int[][] members = new int[sccCount][];
+        for (int c = 0; c < sccCount; c++) {
+            members[c] = new int[sizes[c]];
+        }
+        int[] fill = new int[sccCount];
+        for (int node = 0; node < sccOf.length; node++) {
+            int c = sccOf[node];
+            members[c][fill[c]++] = node;
+        }
+        return members;
+    }
+
+    /**
+     * 缩点：分量之间去重的边，保持成员原有的调用顺序
+     */
+    private static int[][] condense(int[][] adjacency, int[] sccOf, int[][] members) {
+        int[][] condensed = new int[members.length][];
+        for (int c = 0; c < members.length; c++) {
+            Set<Integer> targets = new LinkedHashSet<Integer>();
+            for (int node : members[c]) {
+                for (int to : adjacency[node]) {
+                    if (sccOf[to] != c) {
+                        targets.add(sccOf[to]);
+                    }
+                }
+            }
+            condensed[c] = toArray(targets);
+        }
+        return condensed;
+    }
+
+    private static int[][] reverse(int[][] edges) {
+        List<List<Integer>> reversed = new ArrayList<List<Integer>>(edges.length);
+        for (int i = 0; i < edges.length; i++) {
+            reversed.add(new ArrayList<Integer>());
+        }
+        for (int from = 0; from < edges.length; from++) {
+            for (int to : edges[from]) {
+                reversed.get(to).add(from);
+            }
+        }
+        int[][] result = new int[edges.length][];
+        for (int i = 0; i < edges.length; i++) {
+            result[i] = toArray(reversed.get(i));
+        }
+        return result;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int v : values) {
+            array[i++] = v;
+        }
+        return array;
+    }
+
+    /**
+     * 从某个分量出发 1..k 层可达的分量（BFS 序），按层紧凑存放：
+     * offsets[d - 1]..offsets[d] 为第 d 层。遇到中心节点不展开，记录在 prunedHubs 中（prunedLayers 为其所在层，起点为 0）
+     */
+    private static final class Reach {
+        private final int[] sccs;
+        private final int[] offsets;
+        private final int[] prunedHubs;
+        private final int[] prunedLayers;
+
+        private Reach(int[] sccs, int[] offsets, int[] prunedHubs, int[] prunedLayers) {
+            this.sccs = sccs;
+            this.offsets = offsets;
+            this.prunedHubs = prunedHubs;
+            this.prunedLayers = prunedLayers;
+        }
+
+        /**
+         * @param cap 可达分量数上限，超过时返回 null（不存摘要，查询时现算）
+         */
+        static Reach compute(int[][] edges, boolean[] hubs, int start, int hops, int cap) {
+            List<Integer> reached = new ArrayList<Integer>();
+            List<Integer> offsets = new ArrayList<Integer>();
+            List<Integer> prunedHubs = new ArrayList<Integer>();
+            List<Integer> prunedLayers = new ArrayList<Integer>();
+            offsets.add(0);
+            Set<Integer> visited = new HashSet<Integer>();
+            visited.add(start);
+            List<Integer> frontier = Collections.singletonList(start);
+            for (int d = 0; d < hops && !frontier.isEmpty(); d++) {
+                List<Integer> next = new ArrayList<Integer>();
+                for (int c : frontier) {
+                    if (hubs[c] && edges[c].length > 0) {
+                        prunedHubs.add(c);
+                        prunedLayers.add(d);
+                        continue;
+                    }
+                    for (int to : edges[c]) {
+                        if (visited.add(to)) {
+                            next.add(to);
+                        }
+                    }
+                }
+                if (next.isEmpty()) {
+                    break;
+                }
+                reached.addAll(next);
+                if (reached.size() > cap) {
+                    return null;
+                }
+                offsets.add(reached.size());
+                frontier = next;
+            }
+            return new Reach(toArray(reached), toArray(offsets), toArray(prunedHubs), toArray(prunedLayers));
+        }
+
+        int hops() {
+            return offsets.length - 1;
+        }
+
+        int[] layer(int depth) {
+            return Arrays.copyOfRange(sccs, offsets[depth - 1], offsets[depth]);
+        }
+    }
+
+    /**
+     * 遍历时被截断 / 抽样的中心节点
+     */
+    static final class PrunedHub {
+        /** 中心节点（递归环取其中一个方法） */
+        final String methodKey;
+        /** up：扇入过大，调用方被截断；down：扇出过大，被调方法被截断 */
+        final String direction;
+        /** 该方向上的邻居数 */
+        final int degree;
+        /** 未纳入结果的邻居数 */
+        final int prunedNeighbours;
+        /** 抽样保留的邻居数 */
+        final int sampledNeighbours;
+
+        PrunedHub(String methodKey, String direction, int degree, int prunedNeighbours, int sampledNeighbours) {
+            this.methodKey = methodKey;
+            this.direction = direction;
+            this.degree = degree;
+            this.prunedNeighbours = prunedNeighbours;
+            this.sampledNeighbours = sampledNeighbours;
+        }
+    }
+
+    /**
+     * 方法的影响面
+     */
+    static final class BlastRadius {
+        /** 直接或间接调用该方法的方法数 */
+        final int transitiveCallers;
+        /** 受影响的 HTTP 入口数（含方法自身） */
+        final int endpoints;
+        /** 所在递归环的方法数，1 表示不在环上 */
+        final int cycleSize;
+
+        BlastRadius(int transitiveCallers, int endpoints, int cycleSize) {
+            this.transitiveCallers = transitiveCallers;
+            this.endpoints = endpoints;
+            this.cycleSize = cycleSize;
+        }
+    }
+
+    /**
+     * 能到达被改方法的基准 / 测试方法
+     */
+    static final class TestReach {
+        static final String BENCHMARK = "benchmark";
+        static final String TEST = "test";
+
+        final String methodKey;
+        /** benchmark（JMH @Benchmark）/ test（JUnit / TestNG 测试） */
+        final String kind;
+        /** 到被改方法的调用层数 */
+        final int hops;
+
+        TestReach(String methodKey, String kind, int hops) {
+            this.methodKey = methodKey;
+            this.kind = kind;
+            this.hops = hops;
+        }
+    }
+
+    /**
+     * 调用图构建器：合并各模块的调用图片段，所有 key 经字符串池去重。
+     * 构建器只在建图线程内使用，build() 之后不可再修改。
+     */
+    static final class Builder {
+        private final Map<String, Set<String>> down = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> up = new HashMap<String, Set<String>>();
+        private final Map<String, String> methodToFile = new HashMap<String, String>();
+        private final Map<String, Long> fingerprints = new HashMap<String, Long>();
+        private final Set<String> endpoints = new HashSet<String>();
+        private final Set<String> dataAccessClasses = new HashSet<String>();
+        private final Map<String, String> testRoots = new HashMap<String, String>();
+        private final Map<String, Integer> hazards = new HashMap<String, Integer>();
+        private final Map<String, Map<String, Integer>> fieldAccesses = new HashMap<String, Map<String, Integer>>();
+        private final Map<String, Set<String>> stateFields = new HashMap<String, Set<String>>();
+        private final Map<String, String> fieldColumns = new HashMap<String, String>();
+        /** 方法 key 字符串池，相同 key 在各个 Map 中只保留一份 */
+        private final Map<String, String> keyPool = new HashMap<String, String>();
+        /** 可达摘要与中心节点策略等建图参数 */
+        private final EngineConfig config;
+        private boolean built;
+
+        Builder(EngineConfig config) {
+            this.config = config;
+        }
+
+        /**
+         * 合并模块调用图，模块片段合并后即可回收
+         */
+        Builder merge(ModuleGraph graph) {
+            if (built) {
+                throw new IllegalStateException("CallGraph already built");
+            }
+            for (Map.Entry<String, String> e : graph.methodToFile.entrySet()) {
+                methodToFile.put(pool(e.getKey()), pool(e.getValue()));
+            }
+            for (Map.Entry<String, Set<String>> e : graph.down.entrySet()) {
+                Set<String> tos = down.computeIfAbsent(pool(e.getKey()), k -> new LinkedHashSet<String>());
+                for (String to : e.getValue()) {
+                    tos.add(pool(to));
+                }
+            }
+            for (Map.Entry<String, Set<String>> e : graph.up.entrySet()) {
+                Set<String> froms = up.computeIfAbsent(pool(e.getKey()), k -> new LinkedHashSet<String>());
+                for (String from : e.getValue()) {
+                    froms.add(pool(from));
+                }
+            }
+            for (Map.Entry<String, Long> e : graph.fingerprints.entrySet()) {
+                fingerprints.put(pool(e.getKey()), e.getValue());
+            }
+            for (String endpoint : graph.endpoints) {
+                endpoints.add(pool(endpoint));
+            }
+            dataAccessClasses.addAll(graph.dataAccessClasses);
+            for (Map.Entry<String, String> e : graph.testRoots.entrySet()) {
+                testRoots.put(pool(e.getKey()), e.getValue());
+            }
+            for (Map.Entry<String, Integer> e : graph.hazards.entrySet()) {
+                hazards.put(pool(e.getKey()), e.getValue());
+            }
+            for (Map.Entry<String, Map<String, Integer>> e : graph.fieldAccesses.entrySet()) {
+                Map<String, Integer> fields = fieldAccesses.computeIfAbsent(pool(e.getKey()),
+                        k -> new HashMap<String, Integer>());
+                for (Map.Entry<String, Integer> access : e.getValue().entrySet()) {
+                    fields.merge(pool(access.getKey()), access.getValue(), (a, b) -> a | b);
+                }
+            }
+            stateFields.putAll(graph.stateFields);
+            fieldColumns.putAll(graph.fieldColumns);
+            return this;
+        }
+
+        CallGraph build() {
+            built = true;
+            return new CallGraph(down, up, methodToFile, fingerprints, endpoints, dataAccessClasses, testRoots,
+                    hazards, fieldAccesses, stateFields, fieldColumns, config);
+        }
+
+        private String pool(String key) {
+            String pooled = keyPool.putIfAbsent(key, key);
+            return pooled != null ? pooled : key;
+        }
+    }
+
+    /**
+     * 单个模块（或一次按需建图）的调用图片段，由建图任务各自填充，再交给 Builder 合并
+     */
+    static class ModuleGraph {
+        Map<String, Set<String>> down = new HashMap<String, Set<String>>();
+        Map<String, Set<String>> up = new HashMap<String, Set<String>>();
+        Map<String, String> methodToFile = new HashMap<String, String>();
+        /** 被调方法 -> 其源文件（只记录能解析到源码的方法） */
+        Map<String, Path> calleeFiles = new HashMap<String, Path>();
+        /** 方法 -> 规范化 AST 指纹 */
+        Map<String, Long> fingerprints = new HashMap<String, Long>();
+        /** HTTP 入口方法（带 @GetMapping / @RequestMapping 等注解） */
+        Set<String> endpoints = new HashSet<String>();
+        /** 数据访问类（Repository / DAO / Mapper）的全限定名 */
+        Set<String> dataAccessClasses = new HashSet<String>();
+        /** 基准 / 测试方法 -> benchmark / test */
+        Map<String, String> testRoots = new HashMap<String, String>();
+        /** 方法 -> 自身的并发隐患位（只记录非零） */
+        Map<String, Integer> hazards = new HashMap<String, Integer>();
+        /** 方法 -> 读写的字段（字段 key -> READ / WRITE 位），含尚未确认是否为源码类状态字段的 getter / setter */
+        Map<String, Map<String, Integer>> fieldAccesses = new HashMap<String, Map<String, Integer>>();
+        /** 源码类全限定名 -> 其状态字段名 */
+        Map<String, Set<String>> stateFields = new HashMap<String, Set<String>>();
+        /** 实体字段 -> 列名 */
+        Map<String, String> fieldColumns = new HashMap<String, String>();
+
+        void addFieldAccess(String methodKey, String fieldKey, int flags) {
+            fieldAccesses.computeIfAbsent(methodKey, k -> new HashMap<String, Integer>())
+                    .merge(fieldKey, flags, (a, b) -> a | b);
+        }
+
+        void addEdge(String from, String to) {
+            down.computeIfAbsent(from, k -> new LinkedHashSet<String>()).add(to);
+            up.computeIfAbsent(to, k -> new LinkedHashSet<String>()).add(from);
+        }
+    }
+}
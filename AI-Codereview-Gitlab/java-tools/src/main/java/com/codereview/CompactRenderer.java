@@ -0,0 +1,281 @@
+package com.codereview;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.JavadocComment;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.Name;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.javadoc.JavadocBlockTag;
+
+import java.util.*;
+
+/**
+ * 相关文件的精简渲染（节省 token）
+ * 基于 AST 在原文上做删改：去掉注释（可保留 Javadoc 中的 @throws）、未使用的 import、空行和行尾空白，
+ * 不在调用链上的方法体折叠为 { ... }。
+ * 原文行号不连续处插入 //@L<n> 标记，表示下一行对应原文第 n 行（只跳过一行时输出空行），
+ * 审查意见可以据此映射回原文件。
+ */
+final class CompactRenderer {
+
+    private static final String ELIDED_BODY = "{ ... }";
+
+    private CompactRenderer() {
+    }
+
+    /**
+     * @param keepBodies      保留方法体的方法 key（在调用链上的方法），为 null 时保留全部方法体
+     * @param keepAnnotations 是否保留注解
+     * @param keepThrows      是否把 Javadoc 中的 @throws 保留为单行注释
+     * @return 精简后的源码；解析失败时返回 null，由调用方退回原文
+     */
+    static String render(String source, Set<String> keepBodies, boolean keepAnnotations, boolean keepThrows) {
+        String text = source.replace("\r\n", "\n").replace('\r', '\n');
+        Optional<CompilationUnit> parsed = new JavaParser().parse(text).getResult();
+        if (!parsed.isPresent()) {
+            return null;
+        }
+        CompilationUnit cu = parsed.get();
+        int[] lineStarts = lineStarts(text);
+        List<Edit> edits = new ArrayList<Edit>();
+
+        // 1. 不在调用链上的方法体
+        List<BlockStmt> elided = new ArrayList<BlockStmt>();
+        if (keepBodies != null) {
+            String packageName = cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+            for (ClassOrInterfaceDeclaration cls : cu.findAll(ClassOrInterfaceDeclaration.class)) {
+                String classFqn = MethodKeys.classFqn(cls, packageName);
+                for (MethodDeclaration method : cls.getMethods()) {
+                    if (!method.getBody().isPresent()) {
+                        continue;
+                    }
+                    String key = MethodKeys.build(classFqn, MethodKeys.erasedSignature(method));
+                    if (!keepBodies.contains(key)) {
+                        elided.add(method.getBody().get());
+                        addEdit(edits, method.getBody().get(), ELIDED_BODY, lineStarts);
+                    }
+                }
+            }
+        }
+
+        // 2. 注释
+        for (Comment comment : cu.getAllComments()) {
+            String replacement = "";
+            if (keepThrows && comment instanceof JavadocComment) {
+                replacement = throwsTags((JavadocComment) comment);
+            }
+            addEdit(edits, comment, replacement, lineStarts);
+        }
+
+        // 3. 注解
+        if (!keepAnnotations) {
+            for (AnnotationExpr annotation : cu.findAll(AnnotationExpr.class)) {
+                addEdit(edits, annotation, "", lineStarts);
+            }
+        }
+
+        // 4. 去掉方法体、注释之后不再引用的 import
+        Set<String> usedNames = usedNames(cu, elided);
+        for (ImportDeclaration imp : cu.getImports()) {
+            if (!imp.isAsterisk() && !usedNames.contains(imp.getName().getIdentifier())) {
+                addEdit(edits, imp, "", lineStarts);
+            }
+        }
+
+        return apply(text, edits);
+    }
+
+    /**
+     * Javadoc 中的 @throws / @exception 压缩为一行，没有时返回空串
+     */
+    private static String throwsTags(JavadocComment comment) {
+        StringBuilder sb = new StringBuilder();
+        for (JavadocBlockTag tag : comment.parse().getBlockTags()) {
+            if (tag.getType() != JavadocBlockTag.Type.THROWS && tag.getType() != JavadocBlockTag.Type.EXCEPTION) {
+                continue;
+            }
+            sb.append(sb.length() == 0 ? "// @throws " : "; ");
+            sb.append(tag.getName().orElse(""));
+            String description = tag.getContent().toText().replaceAll("\\s+", " ").trim();
+            if (!description.isEmpty()) {
+                sb.append(' ').append(description);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 保留下来的代码中出现的所有标识符（跳过 import 本身和被折叠的方法体）
+     */
+    private static Set<String> usedNames(CompilationUnit cu, List<BlockStmt> elided) {
+        Set<Node> skipped = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        skipped.addAll(elided);
+        skipped.addAll(cu.getImports());
+        Set<String> names = new HashSet<String>();
+        Deque<Node> stack = new ArrayDeque<Node>();
+        stack.push(cu);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (skipped.contains(node)) {
+                continue;
+            }
+            if (node instanceof SimpleName) {
+                names.add(((SimpleName) node).getIdentifier());
+            } else if (node instanceof Name) {
+                names.add(((Name) node).getIdentifier());
+            }
+            for (Node child : node.getChildNodes()) {
+                stack.push(child);
+            }
+        }
+        return names;
+    }
+
+    private static void addEdit(List<Edit> edits, Node node, String replacement, int[] lineStarts) {
+        Optional<Range> range = node.getRange();
+        if (!range.isPresent()) {
+            return;
+        }
+        int start = offset(range.get().begin, lineStarts);
+        int end = offset(range.get().end, lineStarts) + 1;
+        edits.add(new Edit(start, end, replacement));
+    }
+
+    /**
+     * 按偏移依次应用修改（与前一处修改重叠的跳过，例如被折叠方法体内的注释），
+     * 同时记录每个输出行对应的原文行号；空行与行尾空白直接丢弃
+     */
+    private static String apply(String text, List<Edit> edits) {
+        Collections.sort(edits, new Comparator<Edit>() {
+            @Override
+            public int compare(Edit a, Edit b) {
+                return a.start != b.start ? Integer.compare(a.start, b.start) : Integer.compare(b.end, a.end);
+            }
+        });
+        LineWriter out = new LineWriter();
+        int pos = 0;
+        for (Edit edit : edits) {
+            if (edit.start < pos) {
+                continue;
+            }
+            out.copy(text, pos, edit.start);
+            out.replace(text, edit.start, edit.end, edit.replacement);
+            pos = edit.end;
+        }
+        out.copy(text, pos, text.length());
+        return out.finish();
+    }
+
+    private static int[] lineStarts(String text) {
+        List<Integer> starts = new ArrayList<Integer>();
+        starts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * JavaParser 的行列号从 1 开始，制表符按 1 列计
+     */
+    private static int offset(Position position, int[] lineStarts) {
+        return lineStarts[position.line - 1] + position.column - 1;
+    }
+
+    private static final class Edit {
+        final int start;
+        final int end;
+        final String replacement;
+
+        Edit(int start, int end, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * 逐行输出，记录每行对应的原文行号，在行号跳变处插入 //@L<n> 或空行
+     */
+    private static final class LineWriter {
+        private final StringBuilder out = new StringBuilder();
+        private final StringBuilder line = new StringBuilder();
+        /** 当前所在的原文行 */
+        private int originalLine = 1;
+        /** 当前输出行起始处对应的原文行 */
+        private int lineOrigin = 1;
+        /** 上一个输出行对应的原文行 */
+        private int lastEmitted = 0;
+
+        void copy(String text, int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    flush();
+                    originalLine++;
+                    lineOrigin = originalLine;
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+
+        /**
+         * 被删改区域内的换行不输出；若当前行还没有内容，后续内容归到区域结束所在的原文行
+         */
+        void replace(String text, int from, int to, String replacement) {
+            for (int i = from; i < to; i++) {
+                if (text.charAt(i) == '\n') {
+                    originalLine++;
+                }
+            }
+            if (line.toString().trim().isEmpty()) {
+                lineOrigin = originalLine;
+                if (!replacement.isEmpty()) {
+                    // 保留缩进
+                    line.append(replacement);
+                }
+            } else {
+                line.append(replacement);
+            }
+        }
+
+        String finish() {
+            flush();
+            return out.toString();
+        }
+
+        private void flush() {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            if (end > 0 && !line.substring(0, end).trim().isEmpty()) {
+                if (lineOrigin == lastEmitted + 2) {
+                    // 只跳过一行时输出空行，比标记更短
+                    out.append('\n');
+                } else if (lineOrigin != lastEmitted + 1) {
+                    out.append("//@L").append(lineOrigin).append('\n');
+                }
+                out.append(line, 0, end).append('\n');
+                lastEmitted = lineOrigin;
+            }
+            line.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.codereview;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+
+import java.util.*;
+
+/**
+ * 并发隐患索引：方法自身（不含其调用的方法）涉及的锁与阻塞操作，按位记录
+ * 建图时每个方法计算一次，由 CallGraph 沿调用图向上汇总为“可能到达”的隐患。
+ * 只看 AST：锁、wait / notify 按方法名识别，volatile 只识别本类字段（直接访问或 this.x）。
+ */
+final class ConcurrencyHazards {
+
+    /** synchronized 方法或代码块 */
+    static final int SYNCHRONIZED = 1;
+    /** Lock / ReentrantLock / Semaphore 等的加锁调用 */
+    static final int LOCK = 1 << 1;
+    /** 读写 volatile 字段 */
+    static final int VOLATILE = 1 << 2;
+    /** Object.wait / notify / notifyAll */
+    static final int WAIT_NOTIFY = 1 << 3;
+    /** Thread.sleep / TimeUnit.sleep */
+    static final int SLEEP = 1 << 4;
+    /** 其他阻塞调用：join、await、JDBC、文件 / 网络 I/O（见 CostAnalyzer.isBlocking） */
+    static final int BLOCKING = 1 << 5;
+
+    /** 各隐患位与输出名称，按输出顺序排列 */
+    private static final int[] KINDS = {SYNCHRONIZED, LOCK, VOLATILE, WAIT_NOTIFY, SLEEP, BLOCKING};
+    private static final String[] NAMES = {"synchronized", "lock", "volatile", "wait-notify", "sleep", "blocking"};
+
+    private static final Set<String> LOCK_METHODS = new HashSet<String>(Arrays.asList(
+            "lock", "lockInterruptibly", "tryLock", "acquire", "acquireUninterruptibly", "tryAcquire"));
+    private static final Set<String> WAIT_NOTIFY_METHODS = new HashSet<String>(Arrays.asList(
+            "wait", "notify", "notifyAll"));
+
+    private ConcurrencyHazards() {
+    }
+
+    /**
+     * 类中声明为 volatile 的字段名
+     */
+    static Set<String> volatileFields(ClassOrInterfaceDeclaration cls) {
+        Set<String> names = new HashSet<String>();
+        for (FieldDeclaration field : cls.getFields()) {
+            if (field.hasModifier(Modifier.Keyword.VOLATILE)) {
+                for (VariableDeclarator variable : field.getVariables()) {
+                    names.add(variable.getNameAsString());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 方法自身的隐患位
+     *
+     * @param volatileFields 所在类的 volatile 字段名
+     */
+    static int of(MethodDeclaration method, Set<String> volatileFields) {
+        int hazards = method.isSynchronized() ? SYNCHRONIZED : 0;
+        if (!method.getBody().isPresent()) {
+            return hazards;
+        }
+        for (Node node : method.getBody().get().findAll(Node.class)) {
+            hazards |= hazardOf(node, volatileFields);
+        }
+        return hazards;
+    }
+
+    private static int hazardOf(Node node, Set<String> volatileFields) {
+        if (node instanceof SynchronizedStmt) {
+            return SYNCHRONIZED;
+        }
+        if (node instanceof MethodCallExpr) {
+            MethodCallExpr call = (MethodCallExpr) node;
+            String name = call.getNameAsString();
+            if (LOCK_METHODS.contains(name) && call.getScope().isPresent()) {
+                return LOCK;
+            }
+            if (WAIT_NOTIFY_METHODS.contains(name) && call.getArguments().size() <= 2) {
+                return WAIT_NOTIFY;
+            }
+            if (CostAnalyzer.isSleep(call)) {
+                return SLEEP;
+            }
+            return CostAnalyzer.isBlocking(call) ? BLOCKING : 0;
+        }
+        if (node instanceof ObjectCreationExpr) {
+            return CostAnalyzer.isBlocking((ObjectCreationExpr) node) ? BLOCKING : 0;
+        }
+        if (!volatileFields.isEmpty()) {
+            if (node instanceof NameExpr && volatileFields.contains(((NameExpr) node).getNameAsString())) {
+                return VOLATILE;
+            }
+            if (node instanceof FieldAccessExpr && ((FieldAccessExpr) node).getScope().isThisExpr()
+                    && volatileFields.contains(((FieldAccessExpr) node).getNameAsString())) {
+                return VOLATILE;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 隐患位展开为名称列表
+     */
+    static List<String> names(int hazards) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < KINDS.length; i++) {
+            if ((hazards & KINDS[i]) != 0) {
+                names.add(NAMES[i]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 隐患位展开为单个位的列表，顺序同 names
+     */
+    static List<Integer> kinds(int hazards) {
+        List<Integer> kinds = new ArrayList<Integer>();
+        for (int kind : KINDS) {
+            if ((hazards & kind) != 0) {
+                kinds.add(kind);
+            }
+        }
+        return kinds;
+    }
+
+    static String name(int kind) {
+        for (int i = 0; i < KINDS.length; i++) {
+            if (KINDS[i] == kind) {
+                return NAMES[i];
+            }
+        }
+        throw new IllegalArgumentException("unknown hazard: " + kind);
+    }
+}
@@ -0,0 +1,2116 @@
+package com.codereview;
+
+import com.codereview.ContextExtractor.AnalysisStats;
+import com.codereview.ContextExtractor.BlastRadius;
+import com.codereview.ContextExtractor.ConcurrencyHazard;
+import com.codereview.ContextExtractor.ContextCluster;
+import com.codereview.ContextExtractor.ContextResult;
+import com.codereview.ContextExtractor.FieldAccessor;
+import com.codereview.ContextExtractor.FieldRelation;
+import com.codereview.ContextExtractor.FieldUsage;
+import com.codereview.ContextExtractor.FileContext;
+import com.codereview.ContextExtractor.Finding;
+import com.codereview.ContextExtractor.HazardPath;
+import com.codereview.ContextExtractor.MethodCost;
+import com.codereview.ContextExtractor.MethodInfo;
+import com.codereview.ContextExtractor.MethodSnippet;
+import com.codereview.ContextExtractor.PrunedHub;
+import com.codereview.ContextExtractor.QueryResult;
+import com.codereview.ContextExtractor.ReachingTest;
+import com.codereview.ContextExtractor.ReachingTests;
+import com.codereview.ContextExtractor.RelatedFile;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * 单个仓库的上下文分析引擎
+ * 持有仓库布局与当前发布的调用图快照，analyze 可被多个线程并发调用：
+ * 调用图快照不可变、无锁读取；需要符号解析的请求各自使用本线程的类型解析器与 JavaParser 实例。
+ * 全量建图在后台线程进行，同一时刻最多一次，新图建好后原子替换旧快照。
+ */
+class ContextEngine {
+
+    private static final int MAX_RELATED_FILES = 10; // 最多提取10个相关文件
+    private static final int MAX_FILE_SIZE = 500 * 1024; // 最大文件大小500KB
+    private static final int MAX_CALL_CHAINS = 20; // 最多输出20条调用链
+    private static final int MAX_FIELD_ACCESSOR_SOURCES = 30; // 最多输出30个读写相同字段的方法源码
+    /** 数据访问基础接口（Spring Data / MyBatis-Plus） */
+    private static final Set<String> DATA_ACCESS_BASE_TYPES = new HashSet<String>(Arrays.asList(
+            "Repository", "CrudRepository", "ListCrudRepository", "PagingAndSortingRepository", "JpaRepository",
+            "JpaSpecificationExecutor", "MongoRepository", "ReactiveCrudRepository", "BaseMapper"));
+
+    /** 测试方法注解（JUnit 4 / 5、TestNG） */
+    private static final Set<String> TEST_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+            "Test", "ParameterizedTest", "RepeatedTest", "TestFactory", "TestTemplate"));
+
+    private final String repoPath;
+    private final EngineConfig config;
+
+    /** 最新发布的工作区与调用图快照，重建后整体替换 */
+    private final AtomicReference<Snapshot> snapshot;
+    /** 只用于串行化分片重建；请求与查询读取已发布的快照，不等这把锁 */
+    private final Object shardLock = new Object();
+    /** 分片模式下供查询用的完整调用图，与其来源分片成对发布（分片重建后作废） */
+    private volatile ShardQueryGraph shardQueryGraph;
+
+    private final Object buildLock = new Object();
+    /** 正在进行或最近一次的全量建图 */
+    private Future<CallGraph> pendingBuild;
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(daemonThreads("context-graph-build"));
+    /** 修改文件并行分析的线程池，第一次分析多个文件时创建 */
+    private volatile ExecutorService analysisExecutor;
+
+    /** 最近一次加载的生产 profile，同一文件与调用图快照上复用 */
+    private volatile LoadedProfile lastProfile;
+    /** 修改文件上执行的 AST 规则（无状态，各请求共用） */
+    private final RuleEngine ruleEngine;
+
+    /**
+     * 进程内正在进行的分析请求数（所有引擎合计）：JavaParserFacade 的实例缓存是 JVM 全局的，
+     * 只有没有请求在用时才能清空，见 {@link #releaseFacades()}
+     */
+    private static final AtomicInteger ACTIVE_REQUESTS = new AtomicInteger();
+
+    /**
+     * 一次布局发现得到的工作区：模块 / 源码目录布局，以及依赖布局的三方依赖 jar、类型声明索引、
+     * 文件级依赖图与请求线程的类型解析器。仓库有新提交时（rebuild / refreshGraphShards）重新发现布局、
+     * 整体新建，与在其上建出的调用图一起发布；正在进行的请求继续使用旧工作区。
+     */
+    private final class Workspace {
+        final ProjectLayout layout;
+        /** 模块集合 -> 三方依赖 jar，各模块建图与各请求线程共用 */
+        final Map<List<String>, List<File>> jarsByModules = new ConcurrentHashMap<List<String>, List<File>>();
+        /** 解析依赖时按本地仓库最新版本猜测的依赖（groupId:artifactId:version） */
+        final Set<String> guessedVersions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        /** 源码类型声明索引，建图与各请求的类型解析器共用，第一次使用时扫描 */
+        volatile DeclarationIndex declarationIndex;
+        /** 文件级依赖图（轻量层），方法级调用图不可用时兜底 */
+        volatile ImportGraph importGraph;
+        /**
+         * 分析请求线程各自的类型解析器（覆盖全部模块源码）。
+         * JavaParserTypeSolver 的解析缓存与 JarTypeSolver 都不是线程安全的，不能跨线程共享；
+         * 随工作区整体替换，丢弃各线程缓存的旧源码。
+         */
+        final ThreadLocal<CombinedTypeSolver> requestSolver;
+
+        Workspace() {
+            this.layout = ProjectLayout.discover(new File(repoPath), config.includeTestSources,
+                    config.includeGeneratedSources);
+            this.requestSolver = ThreadLocal.withInitial(() -> createTypeSolver(
+                    this, null, dependencyJars(this, layout.modules), config.parseCacheSize));
+        }
+
+        DeclarationIndex declarationIndex() {
+            DeclarationIndex index = declarationIndex;
+            if (index == null) {
+                synchronized (this) {
+                    if (declarationIndex == null) {
+                        declarationIndex = DeclarationIndex.build(layout.allSourceRoots());
+                    }
+                    index = declarationIndex;
+                }
+            }
+            return index;
+        }
+
+        ImportGraph importGraph() {
+            ImportGraph graph = importGraph;
+            if (graph == null) {
+                synchronized (this) {
+                    if (importGraph == null) {
+                        importGraph = ImportGraph.build(layout);
+                    }
+                    graph = importGraph;
+                }
+            }
+            return graph;
+        }
+    }
+
+    /**
+     * 发布给请求的快照：工作区与在其上建出的方法级调用图、调用图分片（CONTEXT_GRAPH_SHARD_DIR），还没有时为 null。
+     * 不可变，重建后用新实例整体替换，工作区与图总是成对切换。
+     */
+    private static final class Snapshot {
+        final Workspace workspace;
+        final CallGraph graph;
+        final GraphShards shards;
+
+        Snapshot(Workspace workspace, CallGraph graph, GraphShards shards) {
+            this.workspace = workspace;
+            this.graph = graph;
+            this.shards = shards;
+        }
+    }
+
+    /**
+     * 由一批分片加载出的完整调用图，不可变
+     */
+    private static final class ShardQueryGraph {
+        final GraphShards source;
+        final CallGraph graph;
+
+        ShardQueryGraph(GraphShards source, CallGraph graph) {
+            this.source = source;
+            this.graph = graph;
+        }
+    }
+
+    ContextEngine(String repoPath, EngineConfig config) {
+        this.repoPath = repoPath;
+        this.config = config;
+        this.snapshot = new AtomicReference<Snapshot>(new Snapshot(new Workspace(), null, null));
+        this.ruleEngine = RuleEngine.of(config.rules);
+    }
+
+    private Workspace workspace() {
+        return snapshot.get().workspace;
+    }
+
+    EngineConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 当前发布的调用图快照，还没有建好时为 null
+     */
+    CallGraph currentGraph() {
+        return snapshot.get().graph;
+    }
+
+    ContextResult analyze(List<String> changedFiles, Map<String, List<String>> changedMethodsMap) {
+        return analyze(changedFiles, changedMethodsMap, null, null, null);
+    }
+
+    /**
+     * @param profilePath 生产环境的 collapsed stack 文件，为 null 时不做热点标注
+     * @param profileType profile 的类型（cpu / alloc 等），只用于标注，默认 cpu
+     * @param baseRef     基线版本（git ref，例如 MR 的目标分支），为 null 时不计算被改方法的开销变化
+     */
+    ContextResult analyze(List<String> changedFiles, Map<String, List<String>> changedMethodsMap,
+                          String profilePath, String profileType, String baseRef) {
+        ACTIVE_REQUESTS.incrementAndGet();
+        try {
+            return analyzeRequest(changedFiles, changedMethodsMap, profilePath, profileType, baseRef);
+        } finally {
+            ACTIVE_REQUESTS.decrementAndGet();
+        }
+    }
+
+    private ContextResult analyzeRequest(List<String> changedFiles, Map<String, List<String>> changedMethodsMap,
+                                         String profilePath, String profileType, String baseRef) {
+        ContextResult result = new ContextResult();
+        HeapMonitor heapMonitor = HeapMonitor.start();
+
+        result.stats = new AnalysisStats();
+        if (baseRef != null && !GitRevisions.isValidRef(new File(repoPath), baseRef)) {
+            System.err.println("警告: 基线版本无效，不计算开销变化: " + baseRef);
+            baseRef = null;
+        }
+        result.stats.baseRef = baseRef;
+
+        long buildStart = System.currentTimeMillis();
+        int upDepth = config.upDepth;
+        int downDepth = config.downDepth;
+        CallGraph graph = null;
+        if (config.demandDriven && !"import".equals(config.graphTier)) {
+            // 按需建图：只解析被改方法上下 N 层可能涉及的文件，图只属于本次请求，不发布
+            graph = buildDemandDrivenCallGraph(changedFiles, changedMethodsMap, upDepth, downDepth, result.stats);
+        } else if (usesGraphShards()) {
+            // 分片调用图：只加载 BFS 涉及的分片，图只属于本次请求，不发布
+            graph = buildShardedCallGraph(changedFiles, changedMethodsMap, result.stats);
+        } else if (!"import".equals(config.graphTier)) {
+            graph = awaitCallGraph(config.fullGraphTimeoutMs);
+        }
+        boolean useCallGraph = graph != null && !graph.isEmpty();
+        ImportGraph imports = useCallGraph ? null : workspace().importGraph();
+        result.stats.graphTier = useCallGraph ? "full" : "import";
+        result.stats.graphBuildMillis = System.currentTimeMillis() - buildStart;
+
+        // 生产 profile：映射到调用图上，标注热点并优先选择热的调用方
+        ProfileWeights loadedProfile = null;
+        if (profilePath != null && useCallGraph) {
+            loadedProfile = profile(profilePath, profileType == null ? "cpu" : profileType, graph);
+        } else if (profilePath != null) {
+            System.err.println("警告: 没有方法级调用图，忽略 profile: " + profilePath);
+        }
+        final ProfileWeights profile = loadedProfile;
+        if (profile != null) {
+            result.stats.profileType = profile.type;
+            result.stats.profileSamples = profile.totalSamples;
+            result.stats.profileMappedSamples = profile.mappedSamples;
+        }
+
+        // 各修改文件的解析、方法遍历、上下游 BFS 与调用链互不依赖，并行分析后按修改文件的顺序合并
+        final CallGraph methodGraph = useCallGraph ? graph : null;
+        List<FileAnalysis> analyses = analyzeFiles(changedFiles, changedMethodsMap, baseRef, methodGraph, imports,
+                profile, upDepth, downDepth);
+
+        // 遍历中被截断 / 抽样的中心节点，所有修改文件共用
+        Map<String, CallGraph.PrunedHub> prunedHubs = new LinkedHashMap<String, CallGraph.PrunedHub>();
+        // 修改文件 -> 其中的被改方法，大 MR 分簇时使用
+        Map<String, Set<String>> startMethodsByFile = new LinkedHashMap<String, Set<String>>();
+        // 调用链上的方法（被改方法及其相关方法），精简渲染时保留这些方法的方法体
+        Set<String> chainMethods = useCallGraph ? new HashSet<String>() : null;
+        // 规则 id -> 累计耗时（纳秒）
+        Map<String, Long> ruleNanos = new LinkedHashMap<String, Long>();
+        // 与被改方法读写相同字段的其他方法，最后统一提取源码
+        Set<String> fieldAccessorMethods = new LinkedHashSet<String>();
+        for (FileAnalysis analysis : analyses) {
+            result.changedFiles.add(analysis.fileContext);
+            result.findings.addAll(analysis.findings);
+            for (Map.Entry<String, Long> e : analysis.ruleNanos.entrySet()) {
+                Long total = ruleNanos.get(e.getKey());
+                ruleNanos.put(e.getKey(), total == null ? e.getValue() : total + e.getValue());
+            }
+            if (analysis.startMethods != null) {
+                startMethodsByFile.put(analysis.path, analysis.startMethods);
+                chainMethods.addAll(analysis.chainMethods);
+            }
+            for (Map.Entry<String, CallGraph.PrunedHub> e : analysis.prunedHubs.entrySet()) {
+                prunedHubs.putIfAbsent(e.getKey(), e.getValue());
+            }
+            result.blastRadius.addAll(analysis.blastRadius);
+            result.reachingTests.addAll(analysis.reachingTests);
+            result.fieldRelations.addAll(analysis.fieldRelations);
+            result.concurrencyHazards.addAll(analysis.concurrencyHazards);
+            fieldAccessorMethods.addAll(analysis.fieldAccessors);
+            result.callChains.addAll(analysis.callChains);
+            // 相关文件在合并时才读取：先到的修改文件优先，去重后总数不超过 MAX_RELATED_FILES
+            for (String relatedFilePath : analysis.relatedFiles) {
+                if (result.relatedFiles.size() >= MAX_RELATED_FILES) {
+                    break;
+                }
+                addRelatedFile(result.relatedFiles, relatedFilePath, analysis.path, analysis.relatedReason);
+            }
+        }
+
+        JavaParser parser = new JavaParser();
+        // 去重调用链
+        Set<String> uniqueChains = new LinkedHashSet<String>(result.callChains);
+        result.callChains = new ArrayList<String>(uniqueChains);
+        if (result.callChains.size() > MAX_CALL_CHAINS) {
+            result.callChains = result.callChains.subList(0, MAX_CALL_CHAINS);
+        }
+        if (profile != null) {
+            annotateProfile(result.relatedFiles, chainMethods, graph, profile);
+        }
+        if (chainMethods != null) {
+            annotateCosts(result.relatedFiles, chainMethods, parser);
+        }
+        if (!fieldAccessorMethods.isEmpty()) {
+            result.fieldAccessorSources = methodSnippets(graph, fieldAccessorMethods, new HashSet<String>(
+                    trimmed(changedFiles)), parser);
+        }
+        renderRelatedFiles(result.relatedFiles, chainMethods);
+
+        // 大 MR：按调用图邻域把被改方法分簇，每簇单独提取上下文，可并行交给多个 LLM 请求审查
+        if (useCallGraph && config.partitionMinFiles > 0 && startMethodsByFile.size() >= config.partitionMinFiles) {
+            result.clusters = partition(graph, startMethodsByFile, upDepth, downDepth, profile);
+            result.stats.clusterCount = result.clusters.size();
+        }
+
+        for (CallGraph.PrunedHub hub : prunedHubs.values()) {
+            PrunedHub ph = new PrunedHub();
+            ph.method = MethodKeys.format(hub.methodKey);
+            ph.direction = hub.direction;
+            ph.degree = hub.degree;
+            ph.prunedNeighbours = hub.prunedNeighbours;
+            ph.sampledNeighbours = hub.sampledNeighbours;
+            result.prunedHubs.add(ph);
+        }
+
+        // 影响面大的方法排在前面
+        Collections.sort(result.blastRadius, new Comparator<BlastRadius>() {
+            @Override
+            public int compare(BlastRadius a, BlastRadius b) {
+                if (a.transitiveCallers != b.transitiveCallers) {
+                    return Integer.compare(b.transitiveCallers, a.transitiveCallers);
+                }
+                return Integer.compare(b.endpoints, a.endpoints);
+            }
+        });
+
+        heapMonitor.stop();
+        result.stats.memoryBudgetBytes = config.memoryBudgetBytes > 0 ? config.memoryBudgetBytes : null;
+        result.stats.parseCacheSize = config.parseCacheSize > 0 ? config.parseCacheSize : null;
+        result.stats.peakRetainedHeapBytes = heapMonitor.getPeakRetainedBytes();
+        result.stats.heapPeakScope = heapMonitor.isShared() ? "shared" : "request";
+        result.stats.peakUsedHeapBytes = heapMonitor.isShared() ? null : heapMonitor.getPeakUsedBytes();
+        result.stats.indexedMethods = graph == null ? 0 : graph.methodCount();
+        if (!workspace().guessedVersions.isEmpty()) {
+            result.stats.guessedDependencyVersions = new ArrayList<String>(new TreeSet<String>(
+                    workspace().guessedVersions));
+        }
+        DeclarationIndex declarations = workspace().declarationIndex;
+        result.stats.indexedTypes = declarations == null ? null : declarations.size();
+        if (!ruleEngine.isEmpty()) {
+            result.stats.ruleTimingsMicros = new LinkedHashMap<String, Long>();
+            for (Map.Entry<String, Long> e : ruleNanos.entrySet()) {
+                result.stats.ruleTimingsMicros.put(e.getKey(), e.getValue() / 1000);
+            }
+        }
+        if (useCallGraph) {
+            result.stats.sccCount = graph.sccCount();
+            result.stats.largestSccSize = graph.largestSccSize();
+            result.stats.hubMethods = graph.hubMethodCount();
+            result.stats.testRoots = graph.testRootCount();
+        }
+
+        return result;
+    }
+
+    /**
+     * 单个修改文件的分析结果。各文件并行计算，合并时按修改文件的顺序拼接、去重与截断，结果与逐个分析相同。
+     */
+    private static final class FileAnalysis {
+        final String path;
+        FileContext fileContext;
+        final List<Finding> findings = new ArrayList<Finding>();
+        final Map<String, Long> ruleNanos = new LinkedHashMap<String, Long>();
+        /** 被改方法（没有方法级调用图时为 null） */
+        Set<String> startMethods;
+        /** 被改方法及其相关方法 */
+        final Set<String> chainMethods = new HashSet<String>();
+        final Map<String, CallGraph.PrunedHub> prunedHubs = new LinkedHashMap<String, CallGraph.PrunedHub>();
+        final List<BlastRadius> blastRadius = new ArrayList<BlastRadius>();
+        final List<ReachingTests> reachingTests = new ArrayList<ReachingTests>();
+        final List<FieldRelation> fieldRelations = new ArrayList<FieldRelation>();
+        final List<ConcurrencyHazard> concurrencyHazards = new ArrayList<ConcurrencyHazard>();
+        final Set<String> fieldAccessors = new LinkedHashSet<String>();
+        final List<String> callChains = new ArrayList<String>();
+        /** 相关文件候选（按优先顺序、已去重），合并时才读取内容 */
+        final Set<String> relatedFiles = new LinkedHashSet<String>();
+        String relatedReason;
+
+        FileAnalysis(String path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * 分析各修改文件：多个文件时提交到分析线程池并行执行，按修改文件的顺序返回（跳过的文件不返回）
+     */
+    private List<FileAnalysis> analyzeFiles(List<String> changedFiles, final Map<String, List<String>> changedMethodsMap,
+                                            final String baseRef, final CallGraph graph, final ImportGraph imports,
+                                            final ProfileWeights profile, final int upDepth, final int downDepth) {
+        List<String> javaFiles = new ArrayList<String>();
+        for (String relativeFilePath : changedFiles) {
+            relativeFilePath = relativeFilePath.trim();
+            // 跳过非Java文件
+            if (relativeFilePath.endsWith(".java")) {
+                javaFiles.add(relativeFilePath);
+            }
+        }
+
+        List<FileAnalysis> analyses = new ArrayList<FileAnalysis>();
+        ExecutorService pool = analysisExecutor();
+        if (pool == null || javaFiles.size() < 2) {
+            for (String relativeFilePath : javaFiles) {
+                FileAnalysis analysis = analyzeFile(relativeFilePath, changedMethodsMap, baseRef, graph, imports,
+                        profile, upDepth, downDepth);
+                if (analysis != null) {
+                    analyses.add(analysis);
+                }
+            }
+            return analyses;
+        }
+
+        List<Future<FileAnalysis>> futures = new ArrayList<Future<FileAnalysis>>();
+        for (final String relativeFilePath : javaFiles) {
+            futures.add(pool.submit(new Callable<FileAnalysis>() {
+                @Override
+                public FileAnalysis call() {
+                    return analyzeFile(relativeFilePath, changedMethodsMap, baseRef, graph, imports, profile,
+                            upDepth, downDepth);
+                }
+            }));
+        }
+        try {
+            for (Future<FileAnalysis> future : futures) {
+                FileAnalysis analysis = future.get();
+                if (analysis != null) {
+                    analyses.add(analysis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("分析修改文件时被中断", e);
+        } catch (ExecutionException e) {
+            // 与逐个分析时一样，非 IO 异常使本次请求失败
+            for (Future<FileAnalysis> future : futures) {
+                future.cancel(true);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return analyses;
+    }
+
+    /**
+     * 修改文件分析线程池，CONTEXT_ANALYSIS_THREADS 为 1 时为 null。
+     * 随引擎常驻：baseHazards 用到的类型解析器按线程缓存，线程复用时不必重新加载依赖 jar。
+     */
+    private ExecutorService analysisExecutor() {
+        if (config.analysisThreads <= 1) {
+            return null;
+        }
+        ExecutorService pool = analysisExecutor;
+        if (pool == null) {
+            synchronized (this) {
+                if (analysisExecutor == null) {
+                    analysisExecutor = Executors.newFixedThreadPool(config.analysisThreads,
+                            daemonThreads("context-file-analysis"));
+                }
+                pool = analysisExecutor;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 分析单个修改文件，只读共享的调用图与 profile，结果写入各自的 FileAnalysis
+     *
+     * @param graph 方法级调用图，不可用时为 null（按 imports 追踪相关文件）
+     * @return 文件不存在或解析失败时为 null
+     */
+    private FileAnalysis analyzeFile(String relativeFilePath, Map<String, List<String>> changedMethodsMap,
+                                     String baseRef, CallGraph graph, ImportGraph imports, final ProfileWeights profile,
+                                     int upDepth, int downDepth) {
+        File file = new File(repoPath, relativeFilePath);
+        if (!file.exists() || !file.isFile()) {
+            System.err.println("警告: 文件不存在或不是文件: " + file.getAbsolutePath());
+            return null;
+        }
+
+        final FileAnalysis analysis = new FileAnalysis(relativeFilePath);
+        // JavaParser 不是线程安全的，每个文件各用一个；带上本线程的解析器，开销指标中的阻塞调用按接收者类型识别
+        JavaParser parser = newResolvingParser(workspace().requestSolver.get());
+        final CallGraph methodGraph = graph;
+        try {
+            // 1. 解析修改的文件
+            Optional<CompilationUnit> parsed = parser.parse(file).getResult();
+            if (!parsed.isPresent()) {
+                System.err.println("警告: 解析文件失败: " + file.getAbsolutePath());
+                return null;
+            }
+            CompilationUnit cu = parsed.get();
+
+            final FileContext fileCtx = new FileContext();
+            fileCtx.path = relativeFilePath;
+            fileCtx.fullContent = readFile(file);
+            fileCtx.methods = new ArrayList<MethodInfo>();
+            fileCtx.annotations = new ArrayList<String>();
+
+            // 2. 提取类信息
+            List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
+            for (ClassOrInterfaceDeclaration cls : classes) {
+                fileCtx.className = cls.getNameAsString();
+                // 提取类注解
+                for (AnnotationExpr ann : cls.getAnnotations()) {
+                    fileCtx.annotations.add(ann.getNameAsString());
+                }
+            }
+
+            Set<String> targetMethods = null;
+            if (changedMethodsMap != null && changedMethodsMap.get(relativeFilePath) != null) {
+                targetMethods = new HashSet<String>(changedMethodsMap.get(relativeFilePath));
+            }
+            final Set<String> changedMethods = targetMethods;
+
+            // 3. 提取方法信息、注解与开销指标（文件内全量），被改方法与基线版本对比开销
+            final String packageName = cu.getPackageDeclaration()
+                    .map(p -> p.getNameAsString())
+                    .orElse("");
+            // 基线版本的源码；文件在基线中不存在（新增文件）时为 null
+            final String baseSource = baseRef == null ? null
+                    : GitRevisions.show(new File(repoPath), baseRef, relativeFilePath);
+            final Map<String, MethodCost> baseCosts = baseRef == null ? null
+                    : baseCosts(parser, baseSource, baseRef, relativeFilePath);
+            cu.accept(new VoidVisitorAdapter<Void>() {
+                @Override
+                public void visit(MethodDeclaration method, Void arg) {
+                    super.visit(method, arg);
+                    MethodInfo mi = new MethodInfo();
+                    mi.name = method.getNameAsString();
+                    mi.annotations = new ArrayList<String>();
+                    for (AnnotationExpr ann : method.getAnnotations()) {
+                        mi.annotations.add(ann.getNameAsString());
+                    }
+                    mi.signature = method.getDeclarationAsString(false, false, false);
+                    mi.cost = CostAnalyzer.of(method);
+                    if (baseCosts != null && MethodKeys.matchesChangedMethod(changedMethods,
+                            mi.name, MethodKeys.erasedSignature(method))) {
+                        MethodCost before = baseCosts.get(costKey(method, packageName));
+                        mi.addedSinceBase = before == null;
+                        mi.costDelta = CostAnalyzer.delta(mi.cost, before);
+                    }
+                    long fingerprint = MethodFingerprints.of(method);
+                    mi.fingerprint = MethodFingerprints.hex(fingerprint);
+                    if (methodGraph != null && method.getParentNode().orElse(null)
+                            instanceof ClassOrInterfaceDeclaration) {
+                        String classFqn = MethodKeys.classFqn(
+                                (ClassOrInterfaceDeclaration) method.getParentNode().get(), packageName);
+                        String methodKey = MethodKeys.build(classFqn, MethodKeys.erasedSignature(method));
+                        mi.dependencyFingerprint = MethodFingerprints.hex(MethodFingerprints.combine(fingerprint,
+                                methodGraph.calleeFingerprints(methodKey, config.fingerprintDepth)));
+                        if (profile != null && profile.share(methodKey) > 0) {
+                            mi.profileShare = ProfileWeights.percent(profile.share(methodKey));
+                            mi.profileSelfShare = ProfileWeights.percent(profile.selfShare(methodKey));
+                        }
+                    }
+                    fileCtx.methods.add(mi);
+                }
+            }, null);
+
+            analysis.fileContext = fileCtx;
+
+            // 4. 确定性的 AST 规则检查（被改方法内），结果随上下文一起输出
+            if (!ruleEngine.isEmpty()) {
+                analysis.findings.addAll(ruleEngine.run(cu, relativeFilePath, targetMethods, methodGraph,
+                        analysis.ruleNanos));
+            }
+
+            if (graph == null) {
+                // 轻量层：按 import / 同包引用追踪相关文件，不输出调用链
+                analysis.relatedFiles.addAll(imports.relatedFiles(relativeFilePath, Math.max(upDepth, downDepth)));
+                analysis.relatedReason = "import-graph related to " + relativeFilePath;
+                return analysis;
+            }
+
+            // 5. 以“被改方法”为中心，按调用链前后各 N 层提取相关文件
+
+            // 计算当前文件中“被改方法”的 methodKey 集合
+            Set<String> startMethodKeys = new HashSet<String>();
+            for (ClassOrInterfaceDeclaration cls : classes) {
+                String classFqn = MethodKeys.classFqn(cls, packageName);
+
+                for (MethodDeclaration method : cls.getMethods()) {
+                    String signature = MethodKeys.erasedSignature(method);
+                    if (MethodKeys.matchesChangedMethod(targetMethods, method.getNameAsString(), signature)) {
+                        startMethodKeys.add(MethodKeys.build(classFqn, signature));
+                    }
+                }
+            }
+
+            analysis.startMethods = startMethodKeys;
+
+            // 基于调用图向上/向下各追踪 N 层，收集相关方法
+            Set<String> relatedMethodKeys = graph.collectRelatedMethods(startMethodKeys, upDepth, downDepth,
+                    analysis.prunedHubs);
+            analysis.chainMethods.addAll(startMethodKeys);
+            analysis.chainMethods.addAll(relatedMethodKeys);
+            if (profile != null) {
+                relatedMethodKeys = rankByProfile(relatedMethodKeys, profile);
+            }
+
+            // 基线版本中各方法可能到达的并发隐患，用于找出被改方法新到达的锁与阻塞调用
+            Map<String, Integer> baseHazards = baseRef == null ? null
+                    : baseHazards(baseSource, packageName, graph);
+
+            // 被改方法的影响面，供大 MR 按影响面排序审查
+            for (String methodKey : startMethodKeys) {
+                CallGraph.BlastRadius radius = graph.blastRadius(methodKey);
+                if (radius != null) {
+                    BlastRadius br = new BlastRadius();
+                    br.method = MethodKeys.format(methodKey);
+                    br.file = relativeFilePath;
+                    br.transitiveCallers = radius.transitiveCallers;
+                    br.endpoints = radius.endpoints;
+                    br.cycleSize = radius.cycleSize > 1 ? radius.cycleSize : null;
+                    analysis.blastRadius.add(br);
+                }
+                // 能到达被改方法的基准 / 测试，供只重跑相关的基准与性能测试
+                List<CallGraph.TestReach> reaching = graph.testsReaching(methodKey, config.testReachHops,
+                        config.testReachLimit);
+                if (!reaching.isEmpty()) {
+                    ReachingTests rt = new ReachingTests();
+                    rt.method = MethodKeys.format(methodKey);
+                    rt.file = relativeFilePath;
+                    for (CallGraph.TestReach reach : reaching) {
+                        ReachingTest test = new ReachingTest();
+                        test.method = MethodKeys.format(reach.methodKey);
+                        test.file = graph.fileOf(reach.methodKey);
+                        test.kind = reach.kind;
+                        test.hops = reach.hops;
+                        rt.tests.add(test);
+                    }
+                    analysis.reachingTests.add(rt);
+                }
+                FieldRelation relation = fieldRelation(graph, methodKey, relativeFilePath, analysis.fieldAccessors);
+                if (relation != null) {
+                    analysis.fieldRelations.add(relation);
+                }
+                ConcurrencyHazard hazard = concurrencyHazard(graph, methodKey, relativeFilePath, baseHazards);
+                if (hazard != null) {
+                    analysis.concurrencyHazards.add(hazard);
+                }
+            }
+
+            // 构建调用链字符串（用于输出给LLM）
+            analysis.callChains.addAll(graph.buildCallChains(startMethodKeys, relatedMethodKeys, upDepth, downDepth,
+                    profile));
+
+            // 相关方法所属文件作为相关文件候选（合并时限制数量）
+            for (String methodKey : relatedMethodKeys) {
+                String relatedFilePath = graph.fileOf(methodKey);
+                if (relatedFilePath != null && !relatedFilePath.equals(relativeFilePath)) {
+                    analysis.relatedFiles.add(relatedFilePath);
+                }
+            }
+            analysis.relatedReason = "call-chain related to " + relativeFilePath;
+            return analysis;
+
+        } catch (IOException e) {
+            System.err.println("警告: 解析文件失败: " + file.getAbsolutePath() + ", 原因: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 把被改方法按调用图分簇：每个被改方法与其上下 N 层邻域内的方法合并（并查集），
+     * 邻域有交集的被改方法落在同一簇；邻域不经过中心节点，否则所有调用了日志方法的改动都会连成一簇。
+     * 各簇的上下文在线程池中并行提取，每簇各自受相关文件数与调用链条数的上限约束。
+     */
+    private List<ContextCluster> partition(final CallGraph graph, Map<String, Set<String>> startMethodsByFile,
+                                           final int upDepth, final int downDepth, final ProfileWeights profile) {
+        Map<String, String> parent = new HashMap<String, String>();
+        Map<String, String> fileOfStart = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Set<String>> e : startMethodsByFile.entrySet()) {
+            for (String start : new TreeSet<String>(e.getValue())) {
+                fileOfStart.putIfAbsent(start, e.getKey());
+                find(parent, start);
+                for (String related : neighbourhood(graph, start, upDepth, downDepth)) {
+                    union(parent, start, related);
+                }
+            }
+        }
+
+        // 按修改文件的顺序收集各簇
+        Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+        for (String start : fileOfStart.keySet()) {
+            groups.computeIfAbsent(find(parent, start), k -> new ArrayList<String>()).add(start);
+        }
+        final Set<String> allChangedFiles = startMethodsByFile.keySet();
+        final Map<String, String> startFiles = fileOfStart;
+
+        int threads = Math.max(1, Math.min(config.indexThreads, groups.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads("context-cluster"));
+        try {
+            List<Future<ContextCluster>> futures = new ArrayList<Future<ContextCluster>>();
+            for (final List<String> members : groups.values()) {
+                futures.add(pool.submit(new Callable<ContextCluster>() {
+                    @Override
+                    public ContextCluster call() {
+                        return buildCluster(graph, members, startFiles, allChangedFiles, upDepth, downDepth,
+                                profile);
+                    }
+                }));
+            }
+            List<ContextCluster> clusters = new ArrayList<ContextCluster>();
+            for (Future<ContextCluster> future : futures) {
+                try {
+                    clusters.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    System.err.println("警告: 分簇上下文提取失败: " + e.getCause());
+                }
+            }
+            // 改动多的簇排在前面，编号按排序后的顺序
+            Collections.sort(clusters, new Comparator<ContextCluster>() {
+                @Override
+                public int compare(ContextCluster a, ContextCluster b) {
+                    return Integer.compare(b.changedMethods.size(), a.changedMethods.size());
+                }
+            });
+            for (int i = 0; i < clusters.size(); i++) {
+                clusters.get(i).id = i + 1;
+            }
+            return clusters;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 方法上下 N 层内、不经过中心节点可达的方法（不含中心节点本身）
+     */
+    private static Set<String> neighbourhood(CallGraph graph, String start, int upDepth, int downDepth) {
+        Set<String> reached = new HashSet<String>();
+        for (int direction = 0; direction < 2; direction++) {
+            boolean upward = direction == 0;
+            List<String> frontier = Collections.singletonList(start);
+            Set<String> visited = new HashSet<String>(frontier);
+            for (int d = 0; d < (upward ? upDepth : downDepth) && !frontier.isEmpty(); d++) {
+                List<String> next = new ArrayList<String>();
+                for (String key : frontier) {
+                    for (String n : upward ? graph.callers(key) : graph.callees(key)) {
+                        if (!graph.isHub(n) && visited.add(n)) {
+                            next.add(n);
+                        }
+                    }
+                }
+                reached.addAll(next);
+                frontier = next;
+            }
+        }
+        return reached;
+    }
+
+    private ContextCluster buildCluster(CallGraph graph, List<String> members, Map<String, String> fileOfStart,
+                                        Set<String> allChangedFiles, int upDepth, int downDepth,
+                                        ProfileWeights profile) {
+        ContextCluster cluster = new ContextCluster();
+        Set<String> starts = new LinkedHashSet<String>(members);
+        Set<String> files = new LinkedHashSet<String>();
+        for (String start : members) {
+            cluster.changedMethods.add(MethodKeys.format(start));
+            files.add(fileOfStart.get(start));
+        }
+        cluster.changedFiles.addAll(files);
+
+        Set<String> related = graph.collectRelatedMethods(starts, upDepth, downDepth, null);
+        if (profile != null) {
+            related = rankByProfile(related, profile);
+        }
+        Set<String> chains = new LinkedHashSet<String>(graph.buildCallChains(starts, related, upDepth, downDepth,
+                profile));
+        for (String chain : chains) {
+            if (cluster.callChains.size() >= MAX_CALL_CHAINS) {
+                break;
+            }
+            cluster.callChains.add(chain);
+        }
+        String reason = "call-chain related to cluster " + String.join(",", files);
+        for (String methodKey : related) {
+            if (cluster.relatedFiles.size() >= MAX_RELATED_FILES) {
+                break;
+            }
+            String relatedFilePath = graph.fileOf(methodKey);
+            // 修改文件的内容已在 changedFiles 中，簇内只放非修改文件
+            if (relatedFilePath == null || allChangedFiles.contains(relatedFilePath)) {
+                continue;
+            }
+            addRelatedFile(cluster.relatedFiles, relatedFilePath, null, reason);
+        }
+        starts.addAll(related);
+        if (profile != null) {
+            annotateProfile(cluster.relatedFiles, starts, graph, profile);
+        }
+        annotateCosts(cluster.relatedFiles, starts, new JavaParser());
+        renderRelatedFiles(cluster.relatedFiles, starts);
+        return cluster;
+    }
+
+    private static String find(Map<String, String> parent, String x) {
+        String root = x;
+        String p;
+        while ((p = parent.get(root)) != null && !p.equals(root)) {
+            root = p;
+        }
+        parent.putIfAbsent(root, root);
+        // 路径压缩
+        while (!x.equals(root)) {
+            String next = parent.get(x);
+            parent.put(x, root);
+            x = next;
+        }
+        return root;
+    }
+
+    private static void union(Map<String, String> parent, String a, String b) {
+        String ra = find(parent, a);
+        String rb = find(parent, b);
+        if (!ra.equals(rb)) {
+            parent.put(rb, ra);
+        }
+    }
+
+    /**
+     * 将相关文件加入结果：跳过当前修改文件本身、已加入的文件和超大文件，总数不超过 MAX_RELATED_FILES
+     */
+    private void addRelatedFile(List<RelatedFile> relatedFiles, String relatedFilePath, String changedFilePath,
+                                String reason) {
+        if (relatedFiles.size() >= MAX_RELATED_FILES) {
+            return;
+        }
+
+        // 避免把当前 changed file 自己再作为 relatedFile 加入
+        if (relatedFilePath.equals(changedFilePath)) {
+            return;
+        }
+
+        // 去重：如果该文件已经作为 relatedFile 加入，则跳过
+        for (RelatedFile rf : relatedFiles) {
+            if (rf.path.equals(relatedFilePath)) {
+                return;
+            }
+        }
+
+        File relatedFile = new File(repoPath, relatedFilePath);
+        if (relatedFile.exists() && relatedFile.length() < MAX_FILE_SIZE) {
+            RelatedFile rf = new RelatedFile();
+            rf.path = relatedFilePath;
+            rf.fullContent = readFile(relatedFile);
+            rf.reason = reason;
+            relatedFiles.add(rf);
+        }
+    }
+
+    /**
+     * 按生产采样占比重排相关方法：热的在前，没有采样的保持原来由近到远的顺序
+     */
+    private static Set<String> rankByProfile(Set<String> methods, final ProfileWeights profile) {
+        List<String> ranked = new ArrayList<String>(methods);
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Double.compare(profile.share(b), profile.share(a));
+            }
+        });
+        return new LinkedHashSet<String>(ranked);
+    }
+
+    /**
+     * 相关文件标注其中调用链上方法的最大采样占比
+     */
+    private static void annotateProfile(List<RelatedFile> relatedFiles, Set<String> chainMethods, CallGraph graph,
+                                        ProfileWeights profile) {
+        Map<String, Double> shareByFile = new HashMap<String, Double>();
+        for (String key : chainMethods) {
+            String file = graph.fileOf(key);
+            double share = profile.share(key);
+            if (file != null && share > 0) {
+                shareByFile.merge(file, share, Math::max);
+            }
+        }
+        for (RelatedFile rf : relatedFiles) {
+            Double share = shareByFile.get(rf.path);
+            if (share != null) {
+                rf.profileShare = ProfileWeights.percent(share);
+            }
+        }
+    }
+
+    /**
+     * 相关文件列出其中调用链上的方法及其开销指标（在精简渲染之前，基于原文解析）
+     */
+    private static void annotateCosts(List<RelatedFile> relatedFiles, Set<String> chainMethods, JavaParser parser) {
+        for (RelatedFile rf : relatedFiles) {
+            Optional<CompilationUnit> parsed = parser.parse(rf.fullContent).getResult();
+            if (!parsed.isPresent()) {
+                continue;
+            }
+            String packageName = parsed.get().getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+            rf.methods = new ArrayList<MethodInfo>();
+            for (MethodDeclaration method : parsed.get().findAll(MethodDeclaration.class)) {
+                if (!chainMethods.contains(costKey(method, packageName))) {
+                    continue;
+                }
+                MethodInfo mi = new MethodInfo();
+                mi.name = method.getNameAsString();
+                mi.signature = method.getDeclarationAsString(false, false, false);
+                mi.cost = CostAnalyzer.of(method);
+                rf.methods.add(mi);
+            }
+        }
+    }
+
+    /**
+     * 文件在基线版本中各方法的开销指标（key 同 costKey）；文件在基线中不存在时为空表
+     */
+    private static Map<String, MethodCost> baseCosts(JavaParser parser, String source, String baseRef,
+                                                     String relativeFilePath) {
+        Map<String, MethodCost> costs = new HashMap<String, MethodCost>();
+        if (source == null) {
+            return costs;
+        }
+        Optional<CompilationUnit> parsed = parser.parse(source).getResult();
+        if (!parsed.isPresent()) {
+            System.err.println("警告: 解析基线版本失败: " + baseRef + ":" + relativeFilePath);
+            return costs;
+        }
+        String packageName = parsed.get().getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+        for (MethodDeclaration method : parsed.get().findAll(MethodDeclaration.class)) {
+            costs.putIfAbsent(costKey(method, packageName), CostAnalyzer.of(method));
+        }
+        return costs;
+    }
+
+    /**
+     * 基线版本中各方法可能到达的并发隐患：方法自身的隐患，并上其调用的方法在当前调用图中的可达隐患。
+     * 被调方法按当前版本计算（同一 MR 中也改了被调方法时，差异归到被调方法上）。
+     * 文件在基线中不存在时为空表（所有方法都按新增处理）。
+     */
+    private Map<String, Integer> baseHazards(String source, String packageName, final CallGraph graph) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        if (source == null) {
+            return result;
+        }
+        final CombinedTypeSolver typeSolver = workspace().requestSolver.get();
+        Optional<CompilationUnit> parsed = newResolvingParser(typeSolver).parse(source).getResult();
+        if (!parsed.isPresent()) {
+            return result;
+        }
+        String basePackage = parsed.get().getPackageDeclaration().map(p -> p.getNameAsString()).orElse(packageName);
+        for (ClassOrInterfaceDeclaration cls : parsed.get().findAll(ClassOrInterfaceDeclaration.class)) {
+            Set<String> volatileFields = ConcurrencyHazards.volatileFields(cls);
+            String classFqn = MethodKeys.classFqn(cls, basePackage);
+            for (MethodDeclaration method : cls.getMethods()) {
+                int hazards = ConcurrencyHazards.of(method, volatileFields);
+                for (MethodCallExpr call : method.findAll(MethodCallExpr.class)) {
+                    try {
+                        String calledKey = MethodKeys.of(JavaParserFacade.get(typeSolver).solve(call)
+                                .getCorrespondingDeclaration());
+                        hazards |= graph.reachableHazards(calledKey);
+                    } catch (Exception e) {
+                        // 单个调用解析失败不影响整体
+                    }
+                }
+                result.put(MethodKeys.build(classFqn, MethodKeys.erasedSignature(method)), hazards);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 被改方法读写的字段及读写同一字段的其他方法（写在前），没有读写字段时为 null
+     *
+     * @param accessorMethods 收集列出的其他方法，之后统一提取源码
+     */
+    private FieldRelation fieldRelation(CallGraph graph, final String methodKey, String file,
+                                        Set<String> accessorMethods) {
+        if (config.fieldAccessLimit == 0) {
+            return null;
+        }
+        SortedMap<String, Integer> fields = graph.fieldsAccessedBy(methodKey);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        FieldRelation relation = new FieldRelation();
+        relation.method = MethodKeys.format(methodKey);
+        relation.file = file;
+        for (Map.Entry<String, Integer> field : writesFirst(fields)) {
+            FieldUsage usage = new FieldUsage();
+            usage.field = field.getKey();
+            usage.column = graph.columnOf(field.getKey());
+            usage.access = FieldAccessIndex.accessName(field.getValue());
+            SortedMap<String, Integer> others = graph.methodsAccessing(field.getKey());
+            others.remove(methodKey);
+            for (Map.Entry<String, Integer> other : writesFirst(others)) {
+                if (usage.accessors.size() >= config.fieldAccessLimit) {
+                    usage.omitted++;
+                    continue;
+                }
+                FieldAccessor accessor = new FieldAccessor();
+                accessor.method = MethodKeys.format(other.getKey());
+                accessor.file = graph.fileOf(other.getKey());
+                accessor.access = FieldAccessIndex.accessName(other.getValue());
+                usage.accessors.add(accessor);
+                accessorMethods.add(other.getKey());
+            }
+            relation.fields.add(usage);
+        }
+        return relation;
+    }
+
+    /**
+     * 按 key 排好序的读写记录中，带写的排在前面（稳定排序）
+     */
+    private static List<Map.Entry<String, Integer>> writesFirst(SortedMap<String, Integer> accesses) {
+        List<Map.Entry<String, Integer>> ordered = new ArrayList<Map.Entry<String, Integer>>(accesses.entrySet());
+        Collections.sort(ordered, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                boolean wa = (a.getValue() & FieldAccessIndex.WRITE) != 0;
+                boolean wb = (b.getValue() & FieldAccessIndex.WRITE) != 0;
+                return wa == wb ? 0 : (wa ? -1 : 1);
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * 提取方法源码（原文行），跳过 skipFiles 中的文件，最多 MAX_FIELD_ACCESSOR_SOURCES 个；同一文件只解析一次
+     */
+    private List<MethodSnippet> methodSnippets(CallGraph graph, Collection<String> methodKeys, Set<String> skipFiles,
+                                               JavaParser parser) {
+        Map<String, List<String>> byFile = new LinkedHashMap<String, List<String>>();
+        for (String key : methodKeys) {
+            String file = graph.fileOf(key);
+            if (file != null && !skipFiles.contains(file)) {
+                byFile.computeIfAbsent(file, k -> new ArrayList<String>()).add(key);
+            }
+        }
+        Map<String, MethodSnippet> snippets = new HashMap<String, MethodSnippet>();
+        for (Map.Entry<String, List<String>> e : byFile.entrySet()) {
+            File file = new File(repoPath, e.getKey());
+            if (!file.isFile() || file.length() >= MAX_FILE_SIZE) {
+                continue;
+            }
+            String content = readFile(file);
+            Optional<CompilationUnit> parsed = parser.parse(content).getResult();
+            if (!parsed.isPresent()) {
+                continue;
+            }
+            Set<String> wanted = new HashSet<String>(e.getValue());
+            String[] lines = content.split("\r?\n", -1);
+            String packageName = parsed.get().getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+            for (MethodDeclaration method : parsed.get().findAll(MethodDeclaration.class)) {
+                String key = costKey(method, packageName);
+                if (!wanted.contains(key) || !method.getRange().isPresent()) {
+                    continue;
+                }
+                MethodSnippet snippet = new MethodSnippet();
+                snippet.method = MethodKeys.format(key);
+                snippet.file = e.getKey();
+                snippet.startLine = method.getRange().get().begin.line;
+                snippet.endLine = method.getRange().get().end.line;
+                snippet.source = String.join("\n",
+                        Arrays.asList(lines).subList(snippet.startLine - 1, Math.min(lines.length, snippet.endLine)));
+                snippets.put(key, snippet);
+            }
+        }
+        // 按收集顺序输出（先出现的被改方法、先写后读）
+        List<MethodSnippet> result = new ArrayList<MethodSnippet>();
+        for (String key : methodKeys) {
+            MethodSnippet snippet = snippets.get(key);
+            if (snippet != null && result.size() < MAX_FIELD_ACCESSOR_SOURCES) {
+                result.add(snippet);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> trimmed(List<String> paths) {
+        List<String> result = new ArrayList<String>();
+        for (String path : paths) {
+            result.add(path.trim());
+        }
+        return result;
+    }
+
+    /**
+     * 被改方法可能到达的并发隐患及到达各隐患的最短路径；没有隐患时为 null
+     *
+     * @param baseHazards 基线版本各方法的可达隐患，未指定基线时为 null
+     */
+    private static ConcurrencyHazard concurrencyHazard(CallGraph graph, String methodKey, String file,
+                                                       Map<String, Integer> baseHazards) {
+        int reach = graph.reachableHazards(methodKey);
+        if (reach == 0) {
+            return null;
+        }
+        int before = 0;
+        if (baseHazards != null && baseHazards.get(methodKey) != null) {
+            before = baseHazards.get(methodKey);
+        }
+        ConcurrencyHazard hazard = new ConcurrencyHazard();
+        hazard.method = MethodKeys.format(methodKey);
+        hazard.file = file;
+        for (int kind : ConcurrencyHazards.kinds(reach)) {
+            HazardPath hp = new HazardPath();
+            hp.kind = ConcurrencyHazards.name(kind);
+            hp.path = new ArrayList<String>();
+            for (String m : graph.hazardPath(methodKey, kind)) {
+                hp.path.add(MethodKeys.format(m));
+            }
+            hp.newSinceBase = baseHazards == null ? null : (before & kind) == 0;
+            hazard.hazards.add(hp);
+        }
+        return hazard;
+    }
+
+    /**
+     * 具名类中的方法为调用图 key；枚举、匿名类等中的方法只用擦除签名（同一文件内可能重名，取第一个）
+     */
+    private static String costKey(MethodDeclaration method, String packageName) {
+        String signature = MethodKeys.erasedSignature(method);
+        Node parent = method.getParentNode().orElse(null);
+        if (parent instanceof ClassOrInterfaceDeclaration) {
+            return MethodKeys.build(MethodKeys.classFqn((ClassOrInterfaceDeclaration) parent, packageName), signature);
+        }
+        return signature;
+    }
+
+    /**
+     * 加载 profile 并映射到调用图；同一文件（路径、修改时间、大小不变）在同一调用图快照上只读取一次
+     */
+    private ProfileWeights profile(String path, String type, CallGraph graph) {
+        File file = new File(path);
+        LoadedProfile last = lastProfile;
+        if (last != null && last.matches(file, type, graph)) {
+            return last.weights;
+        }
+        try {
+            ProfileWeights weights = ProfileWeights.load(file, type, graph);
+            lastProfile = new LoadedProfile(file, type, graph, weights);
+            return weights;
+        } catch (IOException e) {
+            System.err.println("警告: 读取 profile 失败: " + path + ", 原因: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class LoadedProfile {
+        final String path;
+        final long lastModified;
+        final long length;
+        final String type;
+        final CallGraph graph;
+        final ProfileWeights weights;
+
+        LoadedProfile(File file, String type, CallGraph graph, ProfileWeights weights) {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.type = type;
+            this.graph = graph;
+            this.weights = weights;
+        }
+
+        boolean matches(File file, String type, CallGraph graph) {
+            return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified()
+                    && length == file.length() && this.type.equals(type) && this.graph == graph;
+        }
+    }
+
+    /**
+     * compact 模式下把相关文件换成精简渲染，只保留 keepBodies 中方法的方法体（为 null 时保留全部方法体）；
+     * 解析失败的文件保留原文
+     */
+    private void renderRelatedFiles(List<RelatedFile> relatedFiles, Set<String> keepBodies) {
+        if (!"compact".equals(config.renderMode)) {
+            return;
+        }
+        for (RelatedFile rf : relatedFiles) {
+            try {
+                String compact = CompactRenderer.render(rf.fullContent, keepBodies,
+                        config.compactKeepAnnotations, config.compactKeepThrows);
+                if (compact != null && !compact.isEmpty()) {
+                    rf.fullContent = compact;
+                    rf.rendering = "compact";
+                }
+            } catch (RuntimeException e) {
+                System.err.println("警告: 精简渲染失败: " + rf.path + ", 原因: " + e.getMessage());
+            }
+        }
+    }
+
+    // ===== 调用图快照的构建与发布 =====
+
+    /**
+     * 取当前调用图快照；还没有时触发后台建图并最多等待 timeoutMs（0 表示一直等待）。
+     * 超时后本次请求退化为文件级依赖图，后台建图继续，完成后发布给后续请求。
+     */
+    private CallGraph awaitCallGraph(long timeoutMs) {
+        CallGraph current = snapshot.get().graph;
+        if (current != null) {
+            return current;
+        }
+        Future<CallGraph> build = startBuild(false);
+        try {
+            return timeoutMs > 0 ? build.get(timeoutMs, TimeUnit.MILLISECONDS) : build.get();
+        } catch (TimeoutException e) {
+            System.err.println("警告: 方法级调用图构建超过 " + timeoutMs + "ms，退化为文件级依赖图");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("警告: 方法级调用图构建失败: " + e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * 重新构建调用图（例如仓库有新提交）：重新发现布局（新增 / 删除的模块与源码目录、依赖变化），
+     * 在新工作区上建图，旧快照在新图建好之前继续服务
+     */
+    Future<CallGraph> rebuild() {
+        return startBuild(true);
+    }
+
+    /**
+     * @param force 强制重建；已有建图在进行时排在其后（建图线程只有一个），保证新图基于调用时的源码
+     */
+    private Future<CallGraph> startBuild(boolean force) {
+        synchronized (buildLock) {
+            boolean running = pendingBuild != null && !pendingBuild.isDone();
+            if (force || (!running && (pendingBuild == null || snapshot.get().graph == null))) {
+                pendingBuild = buildExecutor.submit(new Callable<CallGraph>() {
+                    @Override
+                    public CallGraph call() throws InterruptedException {
+                        Workspace workspace = force ? new Workspace() : workspace();
+                        // 建图被中断时抛出，不发布不完整的图，旧快照继续服务
+                        CallGraph graph = buildGlobalCallGraph(workspace);
+                        publish(workspace, graph, null);
+                        return graph;
+                    }
+                });
+            }
+            return pendingBuild;
+        }
+    }
+
+    /**
+     * 发布新快照，工作区与图一起切换
+     *
+     * @param graph  新的方法级调用图，为 null 时保留当前的
+     * @param shards 新的调用图分片，为 null 时保留当前的
+     */
+    private void publish(final Workspace workspace, final CallGraph graph, final GraphShards shards) {
+        snapshot.updateAndGet(s -> new Snapshot(workspace, graph != null ? graph : s.graph,
+                shards != null ? shards : s.shards));
+    }
+
+    /**
+     * 构建全局调用图：按模块扫描源码目录下的所有 Java 文件，
+     * 为每个方法建立 from->to、to->from 的调用关系，以及方法到文件的映射。
+     * 各模块使用独立的类型解析器（自身源码 + 依赖模块源码）并行建图，最后按模块顺序合并；
+     * 方法 key 是全限定名，跨模块的调用边合并后自然连通。
+     * 内存预算在这里只用于告警：超出时打印警告，仍然建完整张图。
+     *
+     * @throws InterruptedException 等待模块建图时被中断，未完成的模块任务随之取消
+     */
+    private CallGraph buildGlobalCallGraph(final Workspace workspace) throws InterruptedException {
+        CallGraph.Builder builder = new CallGraph.Builder(config);
+        if (workspace.layout.modules.isEmpty()) {
+            return builder.build();
+        }
+
+        int threads = Math.max(1, Math.min(config.indexThreads, workspace.layout.modules.size()));
+        // 预算模式下每个并行任务各有一份解析缓存，线程数不超过缓存能分摊的份数
+        final long moduleCacheSize;
+        if (config.parseCacheSize > 0) {
+            threads = (int) Math.max(1, Math.min(threads, config.parseCacheSize / 16));
+            moduleCacheSize = Math.max(16, config.parseCacheSize / threads);
+        } else {
+            moduleCacheSize = -1;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads("context-module-index"));
+        try {
+            List<Future<CallGraph.ModuleGraph>> futures = new ArrayList<Future<CallGraph.ModuleGraph>>();
+            for (final ProjectLayout.Module module : workspace.layout.modules) {
+                futures.add(pool.submit(new Callable<CallGraph.ModuleGraph>() {
+                    @Override
+                    public CallGraph.ModuleGraph call() {
+                        return buildModuleGraph(workspace, module, moduleCacheSize);
+                    }
+                }));
+            }
+            for (Future<CallGraph.ModuleGraph> future : futures) {
+                try {
+                    builder.merge(future.get());
+                    if (config.memoryBudgetBytes > 0 && HeapMonitor.lastRetainedBytes() > config.memoryBudgetBytes) {
+                        System.err.println("警告: 建图过程中存活堆大小超过内存预算: "
+                                + HeapMonitor.lastRetainedBytes() / 1024 / 1024 + "MB > "
+                                + config.memoryBudgetBytes / 1024 / 1024 + "MB");
+                    }
+                } catch (InterruptedException e) {
+                    pool.shutdownNow();
+                    throw e;
+                } catch (Exception e) {
+                    // 单个模块建图失败不影响其他模块
+                    System.err.println("警告: 模块调用图构建失败: " + e.getMessage());
+                }
+            }
+            return builder.build();
+        } finally {
+            pool.shutdown();
+            releaseFacades();
+        }
+    }
+
+    /**
+     * 模块解析器已经不再使用，释放 JavaParserFacade 中按解析器缓存的实例
+     * （实例强引用着作为 key 的解析器，WeakHashMap 不会自行回收）。
+     * clearInstances() 本身不加锁，而 JavaParserFacade.get() 以类对象为锁，这里持同一把锁清空；
+     * 有分析请求正在进行时跳过，留给下一次建图时释放。
+     */
+    private static void releaseFacades() {
+        synchronized (JavaParserFacade.class) {
+            if (ACTIVE_REQUESTS.get() == 0) {
+                JavaParserFacade.clearInstances();
+            }
+        }
+    }
+
+    /**
+     * 构建单个模块的调用图。JavaParser 的解析器与类型解析缓存都不是线程安全的，
+     * 因此每个模块任务独占一套解析器，在单线程内顺序解析本模块的文件。
+     */
+    private CallGraph.ModuleGraph buildModuleGraph(Workspace workspace, ProjectLayout.Module module,
+                                                   long parseCacheSize) {
+        final CallGraph.ModuleGraph graph = new CallGraph.ModuleGraph();
+        List<ProjectLayout.Module> closure = workspace.layout.dependencyClosure(module);
+        List<File> roots = new ArrayList<File>();
+        for (ProjectLayout.Module m : closure) {
+            roots.addAll(m.sourceRoots);
+        }
+        final CombinedTypeSolver typeSolver = createTypeSolver(workspace, roots, dependencyJars(workspace, closure),
+                parseCacheSize);
+        JavaParser parser = newResolvingParser(typeSolver);
+        Path repoRoot = workspace.layout.repoRoot.toPath();
+
+        for (File sourceRoot : module.sourceRoots) {
+            List<Path> javaFiles;
+            try {
+                javaFiles = listJavaFiles(sourceRoot.toPath());
+            } catch (IOException e) {
+                continue;
+            }
+            for (Path p : javaFiles) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // 建图被取消
+                    return graph;
+                }
+                indexFile(parser, typeSolver, repoRoot, p, graph);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * 解析单个源文件，把其中每个方法的调用边、方法到文件的映射写入 graph
+     */
+    private static void indexFile(JavaParser parser, final CombinedTypeSolver typeSolver, Path repoRoot,
+                                  Path p, final CallGraph.ModuleGraph graph) {
+        String relativePath = repoRoot.relativize(p).toString().replace("\\", "/");
+        try {
+            Optional<CompilationUnit> parsed = parser.parse(p).getResult();
+            if (!parsed.isPresent()) {
+                return;
+            }
+            CompilationUnit cu = parsed.get();
+            String packageName = cu.getPackageDeclaration()
+                    .map(pd -> pd.getNameAsString())
+                    .orElse("");
+
+            List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
+            for (ClassOrInterfaceDeclaration cls : classes) {
+                String classFqn = MethodKeys.classFqn(cls, packageName);
+                if (isDataAccess(cls)) {
+                    graph.dataAccessClasses.add(classFqn);
+                }
+                Set<String> volatileFields = ConcurrencyHazards.volatileFields(cls);
+                Set<String> stateFields = FieldAccessIndex.stateFields(cls);
+                graph.stateFields.put(classFqn, stateFields);
+                graph.fieldColumns.putAll(FieldAccessIndex.columns(cls, classFqn));
+
+                for (MethodDeclaration method : cls.getMethods()) {
+                    final String methodKey = MethodKeys.build(classFqn, MethodKeys.erasedSignature(method));
+
+                    graph.methodToFile.put(methodKey, relativePath);
+                    graph.fingerprints.put(methodKey, MethodFingerprints.of(method));
+                    if (isEndpoint(method)) {
+                        graph.endpoints.add(methodKey);
+                    }
+                    int hazards = ConcurrencyHazards.of(method, volatileFields);
+                    if (hazards != 0) {
+                        graph.hazards.put(methodKey, hazards);
+                    }
+                    for (Map.Entry<String, Integer> access : FieldAccessIndex.directAccesses(method, classFqn,
+                            stateFields, typeSolver).entrySet()) {
+                        graph.addFieldAccess(methodKey, access.getKey(), access.getValue());
+                    }
+                    String testKind = testRootKind(method);
+                    if (testKind != null) {
+                        graph.testRoots.put(methodKey, testKind);
+                    }
+
+                    // 在方法体内收集调用的其他方法（向下边）
+                    method.accept(new VoidVisitorAdapter<Void>() {
+                        @Override
+                        public void visit(MethodCallExpr call, Void arg) {
+                            super.visit(call, arg);
+                            try {
+                                ResolvedMethodDeclaration resolved = JavaParserFacade.get(typeSolver)
+                                        .solve(call)
+                                        .getCorrespondingDeclaration();
+                                // solve 已经按实参类型选中了具体的重载，这里只连到该重载
+                                String calledKey = MethodKeys.of(resolved);
+                                graph.addEdge(methodKey, calledKey);
+                                // getter / setter 调用记为读写对应字段
+                                FieldAccessIndex.FieldAccess field = FieldAccessIndex.accessorField(MethodKeys.classOf(calledKey),
+                                        resolved.getName(), resolved.getNumberOfParams());
+                                if (field != null) {
+                                    graph.addFieldAccess(methodKey, field.field, field.flags);
+                                }
+                                // 记录被调方法所在的源文件，按需建图时据此向下扩展
+                                Optional<Node> ast = resolved.toAst();
+                                if (ast.isPresent()) {
+                                    Optional<Path> calleeFile = ast.get().findCompilationUnit()
+                                            .flatMap(c -> c.getStorage())
+                                            .map(storage -> storage.getPath());
+                                    if (calleeFile.isPresent()) {
+                                        graph.calleeFiles.put(calledKey, calleeFile.get());
+                                    }
+                                }
+                            } catch (Exception e) {
+                                // 单个调用解析失败不影响整体；Lombok 等没有源码的访问器按接收者类型记到字段上
+                                FieldAccessIndex.FieldAccess field =
+                                        FieldAccessIndex.unresolvedAccessorField(call, typeSolver);
+                                if (field != null) {
+                                    graph.addFieldAccess(methodKey, field.field, field.flags);
+                                }
+                            }
+                        }
+                    }, null);
+                }
+            }
+        } catch (Exception e) {
+            // 单个文件解析失败不影响整体
+        }
+    }
+
+    /**
+     * 按需建图：不解析全部源文件，只从被改方法出发逐层扩展。
+     * 向上：调用某方法的文件里一定出现该方法名，先用词法预筛找出包含当前层方法名的文件，只解析这些文件；
+     * 向下：被调方法的源文件在解析调用处时已由符号解析给出，直接解析。
+     * 适合大仓库上的小 MR，解析量与改动涉及的范围成正比而不是与仓库大小成正比。
+     *
+     * @param changedFiles   修改的文件（相对仓库根目录）
+     * @param changedMethods 文件 -> 被改方法名 / 擦除签名，为空时该文件所有方法都作为起点
+     */
+    private CallGraph buildDemandDrivenCallGraph(List<String> changedFiles, Map<String, List<String>> changedMethods,
+                                                 int upDepth, int downDepth, AnalysisStats stats) {
+        Workspace workspace = workspace();
+        CombinedTypeSolver typeSolver = workspace.requestSolver.get();
+        Path repoRoot = workspace.layout.repoRoot.toPath();
+        JavaParser parser = newResolvingParser(typeSolver);
+        CallGraph.ModuleGraph graph = new CallGraph.ModuleGraph();
+
+        List<Path> candidates = new ArrayList<Path>();
+        for (File root : workspace.layout.allSourceRoots()) {
+            try {
+                candidates.addAll(listJavaFiles(root.toPath()));
+            } catch (IOException e) {
+                // 单个源码目录失败不影响整体
+            }
+        }
+        Set<Path> parsed = new HashSet<Path>();
+        int scanned = 0;
+
+        // 第 0 层：解析修改的文件，确定起点方法
+        for (String changed : changedFiles) {
+            Path p = repoRoot.resolve(changed.trim()).normalize();
+            if (Files.isRegularFile(p) && parsed.add(p)) {
+                indexFile(parser, typeSolver, repoRoot, p, graph);
+            }
+        }
+        Set<String> start = startMethods(graph, changedFiles, changedMethods);
+
+        // 向上：逐层用方法名预筛出可能的调用方文件（不用类型名：经子类型、变量或静态导入的调用方不一定提到类型）
+        Set<String> frontier = new HashSet<String>(start);
+        Set<String> scannedNames = new HashSet<String>();
+        for (int d = 0; d < upDepth && !frontier.isEmpty(); d++) {
+            Set<String> names = new HashSet<String>();
+            for (String key : frontier) {
+                String name = MethodKeys.nameOf(key);
+                if (scannedNames.add(name)) {
+                    names.add(name);
+                }
+            }
+            if (!names.isEmpty()) {
+                LexicalPrefilter filter = LexicalPrefilter.of(names);
+                for (Path p : candidates) {
+                    if (parsed.contains(p)) {
+                        continue;
+                    }
+                    scanned++;
+                    try {
+                        if (filter.matches(p) && parsed.add(p)) {
+                            indexFile(parser, typeSolver, repoRoot, p, graph);
+                        }
+                    } catch (IOException e) {
+                        // 单个文件读取失败不影响整体
+                    }
+                }
+            }
+            Set<String> next = new HashSet<String>();
+            for (String key : frontier) {
+                Set<String> callers = graph.up.get(key);
+                if (callers != null) {
+                    next.addAll(callers);
+                }
+            }
+            frontier = next;
+        }
+
+        // 向下：直接解析被调方法所在的源文件
+        frontier = new HashSet<String>(start);
+        for (int d = 0; d < downDepth && !frontier.isEmpty(); d++) {
+            Set<String> next = new HashSet<String>();
+            for (String key : frontier) {
+                Set<String> callees = graph.down.get(key);
+                if (callees == null) {
+                    continue;
+                }
+                for (String callee : callees) {
+                    Path calleeFile = graph.calleeFiles.get(callee);
+                    if (calleeFile != null && parsed.add(calleeFile.normalize())) {
+                        indexFile(parser, typeSolver, repoRoot, calleeFile, graph);
+                    }
+                    next.add(callee);
+                }
+            }
+            frontier = next;
+        }
+
+        stats.prefilterScannedFiles = scanned;
+        stats.prefilterParsedFiles = parsed.size();
+        return new CallGraph.Builder(config).merge(graph).build();
+    }
+
+    /**
+     * 图片段中属于修改文件的被改方法（未指定被改方法的文件取其全部方法）
+     */
+    private static Set<String> startMethods(CallGraph.ModuleGraph graph, List<String> changedFiles,
+                                            Map<String, List<String>> changedMethods) {
+        Set<String> files = new HashSet<String>();
+        for (String changed : changedFiles) {
+            files.add(changed.trim());
+        }
+        Set<String> start = new HashSet<String>();
+        for (Map.Entry<String, String> e : graph.methodToFile.entrySet()) {
+            if (!files.contains(e.getValue())) {
+                continue;
+            }
+            List<String> targets = changedMethods == null ? null : changedMethods.get(e.getValue());
+            if (MethodKeys.matchesChangedMethod(targets == null ? null : new HashSet<String>(targets),
+                    MethodKeys.nameOf(e.getKey()), MethodKeys.signatureOf(e.getKey()))) {
+                start.add(e.getKey());
+            }
+        }
+        return start;
+    }
+
+    // ===== 分片调用图 =====
+
+    /**
+     * 是否使用分片持久化的调用图：配置了 CONTEXT_GRAPH_SHARD_DIR，且不是按需建图或只用文件级依赖图
+     */
+    boolean usesGraphShards() {
+        return config.graphShardDir != null && !config.demandDriven && !"import".equals(config.graphTier);
+    }
+
+    /**
+     * 仓库有新提交后重新检查分片（服务模式的 rebuild 请求），返回分片中的方法总数
+     */
+    int refreshGraphShards() {
+        return refreshShards(null, true).methodCount();
+    }
+
+    /**
+     * 打开分片存储，把过期的分片重建到最新：逐个源码目录比较源文件签名（文件名、大小、修改时间），
+     * 只重新解析有变化的目录，已删除目录的分片一并移除。每个引擎第一次使用分片时、以及 rebuild 时调用。
+     * 其他目录中调用被改目录的分片，其调用边是按被改目录原来的声明解析的，签名不变也会过期：
+     * 重建后用 references filter 找出引用了被重建分片所定义 key（重建前后的都算）的分片一并重建；
+     * 这些分片重建后定义的 key 有增减时，继续找引用它们的分片，直到没有新的分片要重建。
+     *
+     * @param stats      记录重建的分片数，为 null 时不记录
+     * @param rediscover 重新发现布局（仓库有新提交），新工作区与重建后的分片一起发布；为 false 时只在分片尚未打开时打开
+     */
+    private GraphShards refreshShards(AnalysisStats stats, boolean rediscover) {
+        synchronized (shardLock) {
+            Snapshot published = snapshot.get();
+            if (!rediscover && published.shards != null) {
+                // 等锁期间已由其他线程打开
+                return published.shards;
+            }
+            Workspace workspace = rediscover ? new Workspace() : published.workspace;
+            final File storeDir = new File(config.graphShardDir, shardStoreName(workspace));
+            GraphShards current = published.shards != null ? published.shards : GraphShards.open(storeDir);
+            final Map<String, GraphShards.Shard> rebuilt = new ConcurrentHashMap<String, GraphShards.Shard>();
+            final Set<String> liveDirs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+            // 第一轮：源文件有变化的目录，传播其定义的全部 key
+            Set<String> changedKeys = refreshShardPass(workspace, current, storeDir, null, rebuilt, liveDirs);
+            // 之后：引用了变化 key 的其他目录，只传播重建前后有增减的 key
+            while (!changedKeys.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                Set<String> dependents = new HashSet<String>();
+                for (GraphShards.Shard shard : current.shards()) {
+                    if (rebuilt.containsKey(shard.dir) || !liveDirs.contains(shard.dir)) {
+                        continue;
+                    }
+                    for (String key : changedKeys) {
+                        if (shard.references.mightContain(key)) {
+                            dependents.add(shard.dir);
+                            break;
+                        }
+                    }
+                }
+                if (dependents.isEmpty()) {
+                    break;
+                }
+                changedKeys = refreshShardPass(workspace, current, storeDir, dependents, rebuilt, liveDirs);
+            }
+
+            Set<String> removed = new HashSet<String>();
+            for (GraphShards.Shard shard : current.shards()) {
+                if (!liveDirs.contains(shard.dir)) {
+                    removed.add(shard.dir);
+                }
+            }
+            if (!rebuilt.isEmpty() || !removed.isEmpty()) {
+                current = current.update(rebuilt, removed);
+            }
+            if (stats != null) {
+                stats.shardsRebuilt = rebuilt.size();
+            }
+            publish(workspace, null, current);
+            return current;
+        }
+    }
+
+    /**
+     * 按模块并行重建一轮分片
+     *
+     * @param forced 要重建的目录，为 null 时重建源文件签名有变化的目录
+     * @return 需要继续传播的 key：签名变化的目录取重建前后定义的全部 key，forced 目录取重建前后有增减的 key
+     */
+    private Set<String> refreshShardPass(final Workspace workspace, final GraphShards previous, final File storeDir,
+                                         final Set<String> forced, final Map<String, GraphShards.Shard> rebuilt,
+                                         final Set<String> liveDirs) {
+        final Set<String> changedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        int threads = Math.max(1, Math.min(config.indexThreads, workspace.layout.modules.size()));
+        final long cacheSize = config.parseCacheSize > 0 ? Math.max(16, config.parseCacheSize / threads) : -1;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads("context-shard-index"));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final ProjectLayout.Module module : workspace.layout.modules) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        refreshModuleShards(workspace, module, previous, storeDir, cacheSize, forced, rebuilt, liveDirs,
+                                changedKeys);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    pool.shutdownNow();
+                    break;
+                } catch (ExecutionException e) {
+                    // 单个模块失败不影响其他模块，失败的目录下次重试
+                    System.err.println("警告: 模块调用图分片构建失败: " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            releaseFacades();
+        }
+        return changedKeys;
+    }
+
+    /**
+     * 重建单个模块中过期的目录分片；模块的类型解析器只在确实有目录要重建时才创建
+     */
+    private void refreshModuleShards(Workspace workspace, ProjectLayout.Module module, GraphShards previous,
+                                     File storeDir, long cacheSize, Set<String> forced,
+                                     Map<String, GraphShards.Shard> rebuilt, Set<String> liveDirs,
+                                     Set<String> changedKeys) {
+        Path repoRoot = workspace.layout.repoRoot.toPath();
+        CombinedTypeSolver typeSolver = null;
+        JavaParser parser = null;
+        for (File sourceRoot : module.sourceRoots) {
+            Map<Path, List<Path>> filesByDir = new TreeMap<Path, List<Path>>();
+            try {
+                for (Path p : listJavaFiles(sourceRoot.toPath())) {
+                    filesByDir.computeIfAbsent(p.getParent(), k -> new ArrayList<Path>()).add(p);
+                }
+            } catch (IOException e) {
+                continue;
+            }
+            for (Map.Entry<Path, List<Path>> e : filesByDir.entrySet()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                String dir = repoRoot.relativize(e.getKey()).toString().replace("\\", "/");
+                liveDirs.add(dir);
+                if (forced != null && !forced.contains(dir)) {
+                    continue;
+                }
+                try {
+                    long signature = GraphShards.signature(e.getValue());
+                    GraphShards.Shard old = previous.shard(dir);
+                    if (forced == null && old != null && old.signature == signature) {
+                        continue;
+                    }
+                    if (typeSolver == null) {
+                        List<File> roots = new ArrayList<File>();
+                        List<ProjectLayout.Module> closure = workspace.layout.dependencyClosure(module);
+                        for (ProjectLayout.Module m : closure) {
+                            roots.addAll(m.sourceRoots);
+                        }
+                        typeSolver = createTypeSolver(workspace, roots, dependencyJars(workspace, closure), cacheSize);
+                        parser = newResolvingParser(typeSolver);
+                    }
+                    // Bloom filter 无法枚举，重建前定义的 key 从旧分片文件读出（写入新分片前）
+                    Set<String> oldKeys = Collections.emptySet();
+                    if (old != null) {
+                        CallGraph.ModuleGraph oldGraph = new CallGraph.ModuleGraph();
+                        try {
+                            previous.load(old, oldGraph);
+                            oldKeys = GraphShards.definedKeys(oldGraph);
+                        } catch (IOException ex) {
+                            // 旧分片文件缺失或损坏，只按新定义传播
+                        }
+                    }
+                    CallGraph.ModuleGraph graph = new CallGraph.ModuleGraph();
+                    for (Path p : e.getValue()) {
+                        indexFile(parser, typeSolver, repoRoot, p, graph);
+                    }
+                    rebuilt.put(dir, GraphShards.write(storeDir, dir, module.name, signature, graph));
+                    Set<String> newKeys = GraphShards.definedKeys(graph);
+                    if (forced == null) {
+                        changedKeys.addAll(oldKeys);
+                        changedKeys.addAll(newKeys);
+                    } else {
+                        for (String key : oldKeys) {
+                            if (!newKeys.contains(key)) {
+                                changedKeys.add(key);
+                            }
+                        }
+                        for (String key : newKeys) {
+                            if (!oldKeys.contains(key)) {
+                                changedKeys.add(key);
+                            }
+                        }
+                    }
+                } catch (IOException ex) {
+                    System.err.println("警告: 写入调用图分片失败: " + dir + ", 原因: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 分片存储目录名：同一仓库在不同配置下（是否含测试源码、是否解析 jar）建出的图不同，分开存放
+     */
+    private String shardStoreName(Workspace workspace) {
+        return Long.toHexString(BloomFilter.hash64(workspace.layout.repoRoot.getAbsolutePath() + "|tests="
+                + config.includeTestSources + "|generated=" + config.includeGeneratedSources
+                + "|jars=" + config.resolveJars));
+    }
+
+    /**
+     * 从分片构建本次请求的调用图：先加载修改文件所在目录的分片，再沿调用边逐层扩展，
+     * 每层只加载 Bloom filter 命中边界方法的分片——向上找引用边界方法的分片（调用方），
+     * 向下找定义边界方法的分片（被调方法的调用边）；被改方法读写的字段再加载定义或读写它们的分片。
+     * 向上扩展到调用链与基准 / 测试反查的层数，向下扩展到调用链与依赖指纹的层数。
+     */
+    private CallGraph buildShardedCallGraph(List<String> changedFiles, Map<String, List<String>> changedMethods,
+                                            AnalysisStats stats) {
+        GraphShards shards = snapshot.get().shards;
+        if (shards == null) {
+            shards = refreshShards(stats, false);
+        }
+        CallGraph.ModuleGraph graph = new CallGraph.ModuleGraph();
+        Set<String> loaded = new HashSet<String>();
+
+        // 第 0 层：修改文件所在目录的分片
+        for (String changed : changedFiles) {
+            String path = changed.trim();
+            int slash = path.lastIndexOf('/');
+            GraphShards.Shard shard = shards.shard(slash < 0 ? "" : path.substring(0, slash));
+            if (shard != null && loaded.add(shard.dir)) {
+                loadShard(shards, shard, graph);
+            }
+        }
+        Set<String> start = startMethods(graph, changedFiles, changedMethods);
+
+        Set<String> frontier = new HashSet<String>(start);
+        int upHops = Math.max(config.upDepth, config.testReachHops);
+        for (int d = 0; d < upHops && !frontier.isEmpty(); d++) {
+            loadMatchingShards(shards, frontier, true, false, loaded, graph);
+            Set<String> next = new HashSet<String>();
+            for (String key : frontier) {
+                Set<String> callers = graph.up.get(key);
+                if (callers != null) {
+                    next.addAll(callers);
+                }
+            }
+            frontier = next;
+        }
+
+        frontier = new HashSet<String>(start);
+        int downHops = Math.max(config.downDepth, config.fingerprintDepth);
+        for (int d = 0; d < downHops && !frontier.isEmpty(); d++) {
+            Set<String> next = new HashSet<String>();
+            for (String key : frontier) {
+                Set<String> callees = graph.down.get(key);
+                if (callees != null) {
+                    next.addAll(callees);
+                }
+            }
+            loadMatchingShards(shards, next, false, true, loaded, graph);
+            frontier = next;
+        }
+
+        if (config.fieldAccessLimit > 0) {
+            Set<String> fields = new HashSet<String>();
+            for (String key : start) {
+                Map<String, Integer> accesses = graph.fieldAccesses.get(key);
+                if (accesses != null) {
+                    fields.addAll(accesses.keySet());
+                }
+            }
+            loadMatchingShards(shards, fields, true, true, loaded, graph);
+        }
+
+        stats.shardsLoaded = loaded.size();
+        stats.shardsTotal = shards.shards().size();
+        return new CallGraph.Builder(config).merge(graph).build();
+    }
+
+    /**
+     * 加载 Bloom filter 命中任一 key 的未加载分片
+     *
+     * @param references 按“引用了 key”匹配
+     * @param defines    按“定义了 key”匹配
+     */
+    private static void loadMatchingShards(GraphShards shards, Set<String> keys, boolean references, boolean defines,
+                                           Set<String> loaded, CallGraph.ModuleGraph graph) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        long[][] hashes = new long[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            long h1 = BloomFilter.hash64(key);
+            hashes[i++] = new long[]{h1, BloomFilter.secondHash(h1)};
+        }
+        for (GraphShards.Shard shard : shards.shards()) {
+            if (loaded.contains(shard.dir)) {
+                continue;
+            }
+            for (long[] h : hashes) {
+                if ((references && shard.references.mightContain(h[0], h[1]))
+                        || (defines && shard.defines.mightContain(h[0], h[1]))) {
+                    loaded.add(shard.dir);
+                    loadShard(shards, shard, graph);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void loadShard(GraphShards shards, GraphShards.Shard shard, CallGraph.ModuleGraph graph) {
+        try {
+            shards.load(shard, graph);
+        } catch (IOException e) {
+            // 分片文件缺失或损坏时跳过，下次 rebuild 重建
+            System.err.println("警告: 读取调用图分片失败: " + shard.dir + ", 原因: " + e.getMessage());
+        }
+    }
+
+    // ===== 调用图查询 =====
+
+    /**
+     * 在调用图上执行 callers / callees / paths 查询（不重新解析源码）
+     */
+    QueryResult query(GraphQuery.Spec spec) {
+        CallGraph graph = queryGraph();
+        long start = System.nanoTime();
+        QueryResult result = GraphQuery.run(graph, spec);
+        result.queryMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * 查询用的完整调用图：分片模式下加载当前发布的全部分片（同一批分片只加载一次），
+     * 后台重建分片期间继续使用旧的一批，不等重建完成；并发的首次查询可能各自加载一次。
+     * 其他模式使用方法级调用图快照，还没有时等待建图完成
+     */
+    private CallGraph queryGraph() {
+        if (usesGraphShards()) {
+            GraphShards shards = snapshot.get().shards;
+            if (shards == null) {
+                shards = refreshShards(null, false);
+            }
+            ShardQueryGraph cached = shardQueryGraph;
+            if (cached != null && cached.source == shards) {
+                return cached.graph;
+            }
+            CallGraph.ModuleGraph graph = new CallGraph.ModuleGraph();
+            for (GraphShards.Shard shard : shards.shards()) {
+                loadShard(shards, shard, graph);
+            }
+            CallGraph built = new CallGraph.Builder(config).merge(graph).build();
+            shardQueryGraph = new ShardQueryGraph(shards, built);
+            return built;
+        }
+        if ("import".equals(config.graphTier)) {
+            throw new IllegalStateException("CONTEXT_GRAPH_TIER=import 时没有方法级调用图，无法查询");
+        }
+        CallGraph graph = awaitCallGraph(0);
+        if (graph == null) {
+            throw new IllegalStateException("方法级调用图不可用");
+        }
+        return graph;
+    }
+
+    /**
+     * 数据访问类：带 @Repository / @Mapper 注解，继承 Spring Data / MyBatis-Plus 的基础接口，
+     * 或按约定命名为 xxxRepository / xxxDao / xxxMapper 的接口
+     */
+    private static boolean isDataAccess(ClassOrInterfaceDeclaration cls) {
+        for (AnnotationExpr ann : cls.getAnnotations()) {
+            String name = ann.getName().getIdentifier();
+            if (name.equals("Repository") || name.equals("Mapper")) {
+                return true;
+            }
+        }
+        for (ClassOrInterfaceType type : cls.getExtendedTypes()) {
+            if (DATA_ACCESS_BASE_TYPES.contains(type.getNameAsString())) {
+                return true;
+            }
+        }
+        String name = cls.getNameAsString();
+        return cls.isInterface() && (name.endsWith("Repository") || name.endsWith("Dao") || name.endsWith("Mapper"));
+    }
+
+    /**
+     * HTTP 入口方法：带 Spring 的 @GetMapping / @PostMapping / @RequestMapping 等注解
+     */
+    private static boolean isEndpoint(MethodDeclaration method) {
+        for (AnnotationExpr ann : method.getAnnotations()) {
+            if (ann.getNameAsString().endsWith("Mapping")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 基准 / 测试方法：JMH 的 @Benchmark 为 benchmark，JUnit / TestNG 的 @Test 等为 test，其他为 null
+     */
+    private static String testRootKind(MethodDeclaration method) {
+        for (AnnotationExpr ann : method.getAnnotations()) {
+            String name = ann.getNameAsString();
+            if (name.equals("Benchmark") || name.endsWith(".Benchmark")) {
+                return CallGraph.TestReach.BENCHMARK;
+            }
+            if (TEST_ANNOTATIONS.contains(name.substring(name.lastIndexOf('.') + 1))) {
+                return CallGraph.TestReach.TEST;
+            }
+        }
+        return null;
+    }
+
+    // ===== 符号解析 =====
+
+    /**
+     * 每次调用新建 JavaParser：解析器实例不是线程安全的，不使用全局的 StaticJavaParser
+     */
+    private static JavaParser newResolvingParser(CombinedTypeSolver typeSolver) {
+        return new JavaParser(new ParserConfiguration().setSymbolResolver(new JavaSymbolSolver(typeSolver)));
+    }
+
+    /**
+     * JDK / 标准库 + 给定源码目录 + 三方依赖 jar 的组合解析器
+     * 源码类型按声明索引查找（见 IndexedSourceTypeSolver），不在磁盘上逐个探测包路径。
+     *
+     * @param sourceRoots    可见的源码目录，为 null 时全部源码可见
+     * @param parseCacheSize 源码解析缓存上限（LRU 淘汰），-1 表示不限制
+     */
+    private CombinedTypeSolver createTypeSolver(Workspace workspace, List<File> sourceRoots, List<File> jars,
+                                                long parseCacheSize) {
+        CombinedTypeSolver combined = new CombinedTypeSolver();
+        combined.add(new ReflectionTypeSolver(false));
+        combined.add(new IndexedSourceTypeSolver(workspace.declarationIndex(), sourceRoots, parseCacheSize));
+        for (File jar : jars) {
+            try {
+                combined.add(CachedJarTypeSolver.open(jar, config.symbolCacheDir));
+            } catch (IOException e) {
+                System.err.println("警告: 索引依赖 jar 失败: " + jar.getAbsolutePath() + ", 原因: " + e.getMessage());
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * 给定模块需要的三方依赖 jar（target/dependency 与本地 Maven 仓库），CONTEXT_RESOLVE_JARS=false 时不解析 jar
+     */
+    private List<File> dependencyJars(Workspace workspace, List<ProjectLayout.Module> modules) {
+        if (!config.resolveJars) {
+            return Collections.emptyList();
+        }
+        List<String> names = new ArrayList<String>();
+        for (ProjectLayout.Module m : modules) {
+            names.add(m.name);
+        }
+        return workspace.jarsByModules.computeIfAbsent(names, k -> Collections.unmodifiableList(
+                DependencyJars.resolve(workspace.layout, modules, config.mavenRepo, config.includeTestSources,
+                        workspace.guessedVersions)));
+    }
+
+    // ===== 工具方法 =====
+
+    private static List<Path> listJavaFiles(Path root) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(p -> p.toString().endsWith(".java")).sorted().forEach(files::add);
+        }
+        return files;
+    }
+
+    private static String readFile(File file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            return new String(bytes);
+        } catch (IOException e) {
+            return "// 读取文件失败: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 后台线程设为守护线程，命令行模式输出结果后进程可以直接退出，不必等待后台建图结束
+     */
+    static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
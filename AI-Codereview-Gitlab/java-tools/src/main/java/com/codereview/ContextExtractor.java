@@ -1,25 +1,12 @@
 package com.codereview;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.*;
-import com.github.javaparser.ast.expr.AnnotationExpr;
-import com.github.javaparser.ast.expr.MethodCallExpr;
-import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
-import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
-import com.github.javaparser.symbolsolver.JavaSymbolSolver;
-import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -28,29 +15,33 @@ import java.util.*;
  */
 public class ContextExtractor {
     
-    private static final int MAX_RELATED_FILES = 10; // 最多提取10个相关文件
-    private static final int MAX_FILE_SIZE = 500 * 1024; // 最大文件大小500KB
-    private static final int DEFAULT_UP_DEPTH = 2;   // 向上追踪调用链的默认层数
-    private static final int DEFAULT_DOWN_DEPTH = 2; // 向下追踪调用链的默认层数
-
-    // 符号解析 & 调用图（简单缓存）
-    private static CombinedTypeSolver TYPE_SOLVER;
-    private static JavaSymbolSolver SYMBOL_SOLVER;
-    /** from 方法 -> to 方法集合，key 形如 com.example.Foo#bar */
-    private static final Map<String, Set<String>> CALL_GRAPH_DOWN = new HashMap<String, Set<String>>();
-    /** to 方法 -> from 方法集合 */
-    private static final Map<String, Set<String>> CALL_GRAPH_UP = new HashMap<String, Set<String>>();
-    /** 方法 -> 源文件相对路径（例如 src/main/java/com/example/Foo.java） */
-    private static final Map<String, String> METHOD_TO_FILE = new HashMap<String, String>();
-    
     public static void main(String[] args) {
         try {
+            if (hasFlag(args, "--server")) {
+                // 常驻服务模式：逐行读取 JSON 请求，调用图在进程内复用
+                new ContextServer(EngineConfig.fromEnv()).serve(
+                        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("query")) {
+                // 调用图查询：callers / callees / paths
+                query(args);
+                return;
+            }
+
             // 解析命令行参数
             String repoPath = getArg(args, "--repo-path");
             String changedFilesStr = getArg(args, "--changed-files");
             String changedMethodsJson = getArg(args, "--changed-methods");
+            // 生产环境 collapsed stack（async-profiler / JFR 导出），可选
+            String profilePath = getArg(args, "--profile");
+            String profileType = getArg(args, "--profile-type");
+            // 基线版本（例如 MR 的目标分支），用于计算被改方法的开销变化，可选
+            String baseRef = getArg(args, "--base-ref");
+            // 输出格式：json（默认）/ cbor / cbor-gzip
+            String outputFormat = getArg(args, "--output-format");
             
-            if (repoPath == null || changedFilesStr == null) {
+            if (repoPath == null || changedFilesStr == null || !isOutputFormat(outputFormat)) {
                 printUsage();
                 System.exit(1);
             }
@@ -71,11 +62,10 @@ public class ContextExtractor {
             }
 
             // 分析上下文
-            ContextResult result = analyzeContext(repoPath, changedFiles, changedMethodsMap);
+            ContextResult result = new ContextEngine(repoPath, EngineConfig.fromEnv())
+                    .analyze(Arrays.asList(changedFiles), changedMethodsMap, profilePath, profileType, baseRef);
             
-            // 输出JSON格式
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            System.out.println(gson.toJson(result));
+            printResult(result, outputFormat);
             
         } catch (Exception e) {
             System.err.println("错误: " + e.getMessage());
@@ -84,472 +74,80 @@ public class ContextExtractor {
         }
     }
     
-    private static String getArg(String[] args, String flag) {
-        for (int i = 0; i < args.length - 1; i++) {
-            if (args[i].equals(flag)) {
-                return args[i + 1];
-            }
-        }
-        return null;
-    }
-    
-    private static void printUsage() {
-        System.err.println("用法: java ContextExtractor --repo-path <path> --changed-files <file1,file2,...>");
-        System.err.println("示例: java ContextExtractor --repo-path /path/to/repo --changed-files src/main/java/User.java,src/main/java/UserController.java");
-    }
-    
-    private static ContextResult analyzeContext(
-            String repoPath,
-            String[] changedFiles,
-            Map<String, List<String>> changedMethodsMap
-    ) {
-        ContextResult result = new ContextResult();
-
-        // 初始化符号解析和全局调用图（只构建一次，后续复用）
-        initSymbolSolver(repoPath);
-        buildGlobalCallGraph(repoPath);
-
-        int upDepth = getIntEnv("CONTEXT_CALL_DEPTH_UP", DEFAULT_UP_DEPTH);
-        int downDepth = getIntEnv("CONTEXT_CALL_DEPTH_DOWN", DEFAULT_DOWN_DEPTH);
-        
-        for (String relativeFilePath : changedFiles) {
-            relativeFilePath = relativeFilePath.trim();
-            
-            // 跳过非Java文件
-            if (!relativeFilePath.endsWith(".java")) {
-                continue;
-            }
-            
-            File file = new File(repoPath, relativeFilePath);
-            if (!file.exists() || !file.isFile()) {
-                System.err.println("警告: 文件不存在或不是文件: " + file.getAbsolutePath());
-                continue;
-            }
-            
-            try {
-                // 1. 解析修改的文件
-                CompilationUnit cu = StaticJavaParser.parse(file);
-                
-                FileContext fileCtx = new FileContext();
-                fileCtx.path = relativeFilePath;
-                fileCtx.fullContent = readFile(file);
-                fileCtx.methods = new ArrayList<MethodInfo>();
-                fileCtx.annotations = new ArrayList<String>();
-                
-                // 2. 提取类信息
-                List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
-                for (ClassOrInterfaceDeclaration cls : classes) {
-                    fileCtx.className = cls.getNameAsString();
-                    // 提取类注解
-                    for (AnnotationExpr ann : cls.getAnnotations()) {
-                        fileCtx.annotations.add(ann.getNameAsString());
-                    }
-                }
-                
-                // 3. 提取方法信息和注解（文件内全量）
-                cu.accept(new VoidVisitorAdapter<Void>() {
-                    @Override
-                    public void visit(MethodDeclaration method, Void arg) {
-                        super.visit(method, arg);
-                        MethodInfo mi = new MethodInfo();
-                        mi.name = method.getNameAsString();
-                        mi.annotations = new ArrayList<String>();
-                        for (AnnotationExpr ann : method.getAnnotations()) {
-                            mi.annotations.add(ann.getNameAsString());
-                        }
-                        mi.signature = method.getDeclarationAsString(false, false, false);
-                        fileCtx.methods.add(mi);
-                    }
-                }, null);
-                
-                result.changedFiles.add(fileCtx);
-                
-                // 4. 以“被改方法”为中心，按调用链前后各 N 层提取相关文件
-                Set<String> targetMethods = null;
-                if (changedMethodsMap != null && changedMethodsMap.get(relativeFilePath) != null) {
-                    targetMethods = new HashSet<String>(changedMethodsMap.get(relativeFilePath));
-                }
-                
-                // 计算当前文件中“被改方法”的 methodKey 集合
-                Set<String> startMethodKeys = new HashSet<String>();
-                String packageName = cu.getPackageDeclaration()
-                        .map(p -> p.getNameAsString())
-                        .orElse("");
-                for (ClassOrInterfaceDeclaration cls : classes) {
-                    String className = cls.getNameAsString();
-                    String classFqn = packageName.isEmpty() ? className : packageName + "." + className;
-
-                    for (MethodDeclaration method : cls.getMethods()) {
-                        String methodName = method.getNameAsString();
-                        if (targetMethods == null || targetMethods.isEmpty() || targetMethods.contains(methodName)) {
-                            String methodKey = buildMethodKey(classFqn, methodName);
-                            startMethodKeys.add(methodKey);
-                        }
-                    }
-                }
-
-                // 基于调用图向上/向下各追踪 N 层，收集相关方法
-                Set<String> relatedMethodKeys = collectRelatedMethods(startMethodKeys, upDepth, downDepth);
-                
-                // 构建调用链字符串（用于输出给LLM）
-                List<String> chains = buildCallChains(startMethodKeys, relatedMethodKeys, upDepth, downDepth);
-                result.callChains.addAll(chains);
-
-                // 将相关方法所属文件加入 relatedFiles（限制数量）
-                for (String methodKey : relatedMethodKeys) {
-                    if (result.relatedFiles.size() >= MAX_RELATED_FILES) {
-                        break;
-                    }
-
-                    String relatedFilePath = METHOD_TO_FILE.get(methodKey);
-                    if (relatedFilePath == null) {
-                        continue;
-                    }
-
-                    // 避免把当前 changed file 自己再作为 relatedFile 加入
-                    if (relatedFilePath.equals(relativeFilePath)) {
-                        continue;
-                    }
-
-                    // 去重：如果该文件已经作为 relatedFile 加入，则跳过
-                    boolean exists = false;
-                    for (RelatedFile rf : result.relatedFiles) {
-                        if (rf.path.equals(relatedFilePath)) {
-                            exists = true;
-                            break;
-                        }
-                    }
-                    if (exists) {
-                        continue;
-                    }
-
-                    File relatedFile = new File(repoPath, relatedFilePath);
-                    if (relatedFile.exists() && relatedFile.length() < MAX_FILE_SIZE) {
-                        RelatedFile rf = new RelatedFile();
-                        rf.path = relatedFilePath;
-                        rf.fullContent = readFile(relatedFile);
-                        rf.reason = "call-chain related to " + relativeFilePath;
-                        result.relatedFiles.add(rf);
-                    }
-                }
-                
-            } catch (IOException e) {
-                System.err.println("警告: 解析文件失败: " + file.getAbsolutePath() + ", 原因: " + e.getMessage());
-            }
-        }
-        
-        // 去重调用链
-        Set<String> uniqueChains = new LinkedHashSet<String>(result.callChains);
-        result.callChains = new ArrayList<String>(uniqueChains);
-        if (result.callChains.size() > 20) {
-            result.callChains = result.callChains.subList(0, 20);
-        }
-        
-        return result;
-    }
-
-    // ===== 符号解析 & 全局调用图构建 =====
-
-    private static void initSymbolSolver(String repoPath) {
-        if (TYPE_SOLVER != null && SYMBOL_SOLVER != null) {
-            return;
+    private static void query(String[] args) throws IOException {
+        String repoPath = getArg(args, "--repo-path");
+        GraphQuery.Spec spec = new GraphQuery.Spec();
+        spec.kind = getArg(args, "--type");
+        spec.method = getArg(args, "--method");
+        spec.from = getArg(args, "--from");
+        spec.to = getArg(args, "--to");
+        spec.hops = getIntArg(args, "--hops");
+        spec.limit = getIntArg(args, "--limit");
+        spec.offset = getIntArg(args, "--offset");
+        String outputFormat = getArg(args, "--output-format");
+        if (repoPath == null || spec.kind == null || !isOutputFormat(outputFormat)) {
+            printUsage();
+            System.exit(1);
         }
+        QueryResult result;
         try {
-            CombinedTypeSolver combined = new CombinedTypeSolver();
-            // JDK / 标准库
-            combined.add(new ReflectionTypeSolver(false));
-            // 项目源码
-            File srcMainJava = new File(repoPath, "src/main/java");
-            if (srcMainJava.exists() && srcMainJava.isDirectory()) {
-                combined.add(new JavaParserTypeSolver(srcMainJava));
-            }
-            TYPE_SOLVER = combined;
-            SYMBOL_SOLVER = new JavaSymbolSolver(TYPE_SOLVER);
-            StaticJavaParser.getConfiguration().setSymbolResolver(SYMBOL_SOLVER);
-        } catch (Exception e) {
-            // 符号解析失败时，后续调用链相关能力降级，不影响基本功能
-            TYPE_SOLVER = null;
-            SYMBOL_SOLVER = null;
-        }
-    }
-
-    /**
-     * 构建全局调用图：扫描 src/main/java 下的所有 Java 文件，
-     * 为每个方法建立 from->to、to->from 的调用关系，以及方法到文件的映射。
-     */
-    private static void buildGlobalCallGraph(String repoPath) {
-        // 已经构建过则直接返回（简单缓存）
-        if (!CALL_GRAPH_DOWN.isEmpty() || !CALL_GRAPH_UP.isEmpty()) {
+            result = new ContextEngine(repoPath, EngineConfig.fromEnv()).query(spec);
+        } catch (IllegalArgumentException e) {
+            System.err.println("错误: " + e.getMessage());
+            printUsage();
+            System.exit(1);
             return;
         }
-        try {
-            Path srcRoot = Paths.get(repoPath, "src/main/java");
-            if (!Files.exists(srcRoot) || !Files.isDirectory(srcRoot)) {
-                return;
-            }
-
-            Files.walk(srcRoot)
-                    .filter(p -> p.toString().endsWith(".java"))
-                    .forEach(p -> {
-                        File f = p.toFile();
-                        String rel = srcRoot.relativize(p).toString().replace("\\", "/");
-                        String relativePath = "src/main/java/" + rel;
-                        try {
-                            CompilationUnit cu = StaticJavaParser.parse(f);
-                            String packageName = cu.getPackageDeclaration()
-                                    .map(pd -> pd.getNameAsString())
-                                    .orElse("");
-
-                            List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
-                            for (ClassOrInterfaceDeclaration cls : classes) {
-                                String className = cls.getNameAsString();
-                                String classFqn = packageName.isEmpty() ? className : packageName + "." + className;
-
-                                for (MethodDeclaration method : cls.getMethods()) {
-                                    String methodName = method.getNameAsString();
-                                    String methodKey = buildMethodKey(classFqn, methodName);
-
-                                    METHOD_TO_FILE.put(methodKey, relativePath);
-
-                                    // 在方法体内收集调用的其他方法（向下边）
-                                    method.accept(new VoidVisitorAdapter<Void>() {
-                                        @Override
-                                        public void visit(MethodCallExpr call, Void arg) {
-                                            super.visit(call, arg);
-                                            if (TYPE_SOLVER == null || SYMBOL_SOLVER == null) {
-                                                return;
-                                            }
-                                            try {
-                                                ResolvedMethodDeclaration resolved = JavaParserFacade.get(TYPE_SOLVER)
-                                                        .solve(call)
-                                                        .getCorrespondingDeclaration();
-                                                String calledClassFqn = resolved.declaringType().getQualifiedName();
-                                                String calledMethodName = resolved.getName();
-                                                String calledKey = buildMethodKey(calledClassFqn, calledMethodName);
-
-                                                CALL_GRAPH_DOWN
-                                                        .computeIfAbsent(methodKey, k -> new LinkedHashSet<String>())
-                                                        .add(calledKey);
-                                                CALL_GRAPH_UP
-                                                        .computeIfAbsent(calledKey, k -> new LinkedHashSet<String>())
-                                                        .add(methodKey);
-                                            } catch (Exception e) {
-                                                // 单个调用解析失败不影响整体
-                                            }
-                                        }
-                                    }, null);
-                                }
-                            }
-                        } catch (Exception e) {
-                            // 单个文件解析失败不影响整体
-                        }
-                    });
-        } catch (IOException e) {
-            // 构建调用图失败时，调用链相关能力降级
-        }
+        printResult(result, outputFormat);
     }
 
-    /**
-     * 从起始方法集合出发，沿调用图向上/向下分别追踪指定层数，收集相关方法。
-     */
-    private static Set<String> collectRelatedMethods(Set<String> startMethods, int upDepth, int downDepth) {
-        Set<String> related = new LinkedHashSet<String>();
-        if (startMethods == null || startMethods.isEmpty()) {
-            return related;
-        }
-
-        // 向下 BFS
-        if (downDepth > 0) {
-            Deque<MethodDepth> queue = new ArrayDeque<MethodDepth>();
-            Set<String> visited = new HashSet<String>();
-            for (String m : startMethods) {
-                queue.add(new MethodDepth(m, 0));
-                visited.add(m);
-            }
-            while (!queue.isEmpty()) {
-                MethodDepth md = queue.poll();
-                if (md.depth >= downDepth) {
-                    continue;
-                }
-                Set<String> nexts = CALL_GRAPH_DOWN.get(md.methodKey);
-                if (nexts == null) {
-                    continue;
-                }
-                for (String to : nexts) {
-                    if (visited.contains(to)) {
-                        continue;
-                    }
-                    visited.add(to);
-                    related.add(to);
-                    queue.add(new MethodDepth(to, md.depth + 1));
-                }
-            }
-        }
-
-        // 向上 BFS
-        if (upDepth > 0) {
-            Deque<MethodDepth> queue = new ArrayDeque<MethodDepth>();
-            Set<String> visited = new HashSet<String>();
-            for (String m : startMethods) {
-                queue.add(new MethodDepth(m, 0));
-                visited.add(m);
-            }
-            while (!queue.isEmpty()) {
-                MethodDepth md = queue.poll();
-                if (md.depth >= upDepth) {
-                    continue;
-                }
-                Set<String> uppers = CALL_GRAPH_UP.get(md.methodKey);
-                if (uppers == null) {
-                    continue;
-                }
-                for (String up : uppers) {
-                    if (visited.contains(up)) {
-                        continue;
-                    }
-                    visited.add(up);
-                    related.add(up);
-                    queue.add(new MethodDepth(up, md.depth + 1));
-                }
-            }
-        }
-
-        // 不把起始方法本身放进去（起点的方法所在文件已经在 changedFiles 里）
-        related.removeAll(startMethods);
-        return related;
+    private static boolean isOutputFormat(String format) {
+        return format == null || format.equals("json") || format.equals("cbor") || format.equals("cbor-gzip");
     }
 
-    private static String buildMethodKey(String classFqn, String methodName) {
-        return classFqn + "#" + methodName;
+    private static void printResult(Object result, String format) throws IOException {
+        if (format == null || format.equals("json")) {
+            // 输出JSON格式
+            Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            System.out.println(gson.toJson(result));
+        } else {
+            // 二进制格式：字符串表 + 按内容寻址的文件内容，见 ResultCodec
+            ResultCodec.write(result, format.equals("cbor-gzip"), System.out);
+        }
     }
 
-    private static int getIntEnv(String name, int defaultValue) {
-        try {
-            String v = System.getenv(name);
-            if (v == null || v.isEmpty()) {
-                return defaultValue;
+    private static String getArg(String[] args, String flag) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(flag)) {
+                return args[i + 1];
             }
-            return Integer.parseInt(v);
-        } catch (Exception e) {
-            return defaultValue;
         }
+        return null;
     }
     
-    private static String readFile(File file) {
-        try {
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            return new String(bytes);
-        } catch (IOException e) {
-            return "// 读取文件失败: " + e.getMessage();
-        }
+    private static Integer getIntArg(String[] args, String flag) {
+        String value = getArg(args, flag);
+        return value == null ? null : Integer.valueOf(value);
     }
     
-    /**
-     * 构建调用链字符串列表
-     * 从起始方法出发，构建到相关方法的调用链路径
-     */
-    private static List<String> buildCallChains(Set<String> startMethods, Set<String> relatedMethods, int upDepth, int downDepth) {
-        List<String> chains = new ArrayList<String>();
-        if (startMethods == null || startMethods.isEmpty()) {
-            return chains;
-        }
-        
-        // 构建向下调用链（startMethod -> relatedMethod）
-        if (downDepth > 0) {
-            for (String startMethod : startMethods) {
-                Deque<MethodDepth> queue = new ArrayDeque<MethodDepth>();
-                Set<String> visited = new HashSet<String>();
-                queue.add(new MethodDepth(startMethod, 0));
-                visited.add(startMethod);
-                
-                while (!queue.isEmpty()) {
-                    MethodDepth md = queue.poll();
-                    if (md.depth >= downDepth) {
-                        continue;
-                    }
-                    
-                    Set<String> nexts = CALL_GRAPH_DOWN.get(md.methodKey);
-                    if (nexts == null) {
-                        continue;
-                    }
-                    
-                    for (String to : nexts) {
-                        if (visited.contains(to)) {
-                            continue;
-                        }
-                        if (relatedMethods.contains(to)) {
-                            // 找到相关方法，构建调用链字符串
-                            String chain = formatMethodKey(startMethod) + " -> " + formatMethodKey(to);
-                            chains.add(chain);
-                        }
-                        visited.add(to);
-                        queue.add(new MethodDepth(to, md.depth + 1));
-                    }
-                }
-            }
-        }
-        
-        // 构建向上调用链（relatedMethod -> startMethod）
-        if (upDepth > 0) {
-            for (String startMethod : startMethods) {
-                Deque<MethodDepth> queue = new ArrayDeque<MethodDepth>();
-                Set<String> visited = new HashSet<String>();
-                queue.add(new MethodDepth(startMethod, 0));
-                visited.add(startMethod);
-                
-                while (!queue.isEmpty()) {
-                    MethodDepth md = queue.poll();
-                    if (md.depth >= upDepth) {
-                        continue;
-                    }
-                    
-                    Set<String> uppers = CALL_GRAPH_UP.get(md.methodKey);
-                    if (uppers == null) {
-                        continue;
-                    }
-                    
-                    for (String up : uppers) {
-                        if (visited.contains(up)) {
-                            continue;
-                        }
-                        if (relatedMethods.contains(up)) {
-                            // 找到相关方法，构建调用链字符串
-                            String chain = formatMethodKey(up) + " -> " + formatMethodKey(startMethod);
-                            chains.add(chain);
-                        }
-                        visited.add(up);
-                        queue.add(new MethodDepth(up, md.depth + 1));
-                    }
-                }
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String arg : args) {
+            if (arg.equals(flag)) {
+                return true;
             }
         }
-        
-        return chains;
+        return false;
     }
     
-    /**
-     * 格式化方法key为可读字符串
-     * 例如: com.example.Foo#bar -> Foo.bar()
-     */
-    private static String formatMethodKey(String methodKey) {
-        if (methodKey == null || !methodKey.contains("#")) {
-            return methodKey;
-        }
-        String[] parts = methodKey.split("#");
-        if (parts.length != 2) {
-            return methodKey;
-        }
-        String classFqn = parts[0];
-        String methodName = parts[1];
-        
-        // 提取类名（最后一个点后的部分）
-        String className = classFqn;
-        int lastDot = classFqn.lastIndexOf('.');
-        if (lastDot >= 0) {
-            className = classFqn.substring(lastDot + 1);
-        }
-        
-        return className + "." + methodName + "()";
+    private static void printUsage() {
+        System.err.println("用法: java ContextExtractor --repo-path <path> --changed-files <file1,file2,...>");
+        System.err.println("示例: java ContextExtractor --repo-path /path/to/repo --changed-files src/main/java/User.java,src/main/java/UserController.java");
+        System.err.println("可选: --changed-methods <json> --profile <collapsed stack 文件> --profile-type <cpu|alloc> --base-ref <git ref>");
+        System.err.println("     --output-format <json|cbor|cbor-gzip>（默认 json）");
+        System.err.println("常驻服务: java ContextExtractor --server（标准输入逐行读取 JSON 请求）");
+        System.err.println("调用图查询: java ContextExtractor query --repo-path <path> --type callers|callees --method <方法> [--hops N]");
+        System.err.println("           java ContextExtractor query --repo-path <path> --type paths --from <方法> --to <方法> [--hops N]");
+        System.err.println("           可选: --limit N --offset N；方法写法例如 AuthUtil.checkUserAccess、@endpoint");
     }
     
     // 数据类
@@ -557,6 +155,79 @@ public class ContextExtractor {
         List<FileContext> changedFiles = new ArrayList<FileContext>();
         List<RelatedFile> relatedFiles = new ArrayList<RelatedFile>();
         List<String> callChains = new ArrayList<String>();
+        /** 被改方法的影响面，按传递调用方数从大到小排列 */
+        List<BlastRadius> blastRadius = new ArrayList<BlastRadius>();
+        /** 追踪调用链时被截断 / 抽样的中心节点 */
+        List<PrunedHub> prunedHubs = new ArrayList<PrunedHub>();
+        /** 大 MR 分簇模式下各簇的上下文（未开启时为 null） */
+        List<ContextCluster> clusters;
+        /** 能到达各被改方法的基准 / 测试（需 CONTEXT_INCLUDE_TEST_SOURCES） */
+        List<ReachingTests> reachingTests = new ArrayList<ReachingTests>();
+        /** 被改方法可能到达的锁与阻塞调用 */
+        List<ConcurrencyHazard> concurrencyHazards = new ArrayList<ConcurrencyHazard>();
+        /** 被改方法读写的字段，以及读写同一字段的其他方法 */
+        List<FieldRelation> fieldRelations = new ArrayList<FieldRelation>();
+        /** fieldRelations 中其他方法的源码（不含修改文件中的方法，每个方法只出现一次） */
+        List<MethodSnippet> fieldAccessorSources = new ArrayList<MethodSnippet>();
+        /** AST 规则在修改文件（的被改方法）中发现的问题 */
+        List<Finding> findings = new ArrayList<Finding>();
+        AnalysisStats stats;
+    }
+
+    /**
+     * 分析过程统计信息
+     */
+    static class AnalysisStats {
+        /** 实际使用的图层级：full（方法级调用图）或 import（文件级依赖图） */
+        String graphTier;
+        /** 建图耗时 */
+        long graphBuildMillis;
+        /** 按需建图时经词法预筛扫描的文件数 */
+        Integer prefilterScannedFiles;
+        /** 按需建图时实际解析的文件数 */
+        Integer prefilterParsedFiles;
+        /** 分片调用图：本次加载的分片数 */
+        Integer shardsLoaded;
+        /** 分片调用图：分片总数 */
+        Integer shardsTotal;
+        /** 分片调用图：本次因源码变化重建的分片数（没有检查分片时为 null） */
+        Integer shardsRebuilt;
+        /** 内存预算（未开启预算模式时为 null） */
+        Long memoryBudgetBytes;
+        /** 每个类型解析器的源码解析缓存上限（不限制时为 null） */
+        Long parseCacheSize;
+        /** GC 后存活堆大小的峰值 */
+        long peakRetainedHeapBytes;
+        /** 堆已用大小峰值（含未回收的垃圾）；有其他请求并发运行时内存池峰值无法按请求区分，为 null */
+        Long peakUsedHeapBytes;
+        /** 堆峰值的范围：request 只有本请求在运行；shared 有其他请求并发运行，峰值包含它们的内存 */
+        String heapPeakScope;
+        /** pom 与本地仓库中都找不到版本号、按本地仓库最新版本猜测的依赖（groupId:artifactId:version），没有时为 null */
+        List<String> guessedDependencyVersions;
+        /** 调用图中已索引的方法数 */
+        int indexedMethods;
+        /** 源码类型声明索引中的类型数（没有用到符号解析时为 null） */
+        Integer indexedTypes;
+        /** 调用图缩点后的强连通分量数 */
+        Integer sccCount;
+        /** 最大强连通分量（递归环）的方法数 */
+        Integer largestSccSize;
+        /** 被判定为中心节点（扇入 / 扇出过大）的方法数 */
+        Integer hubMethods;
+        /** 调用图中的基准 / 测试方法数 */
+        Integer testRoots;
+        /** 大 MR 分簇数 */
+        Integer clusterCount;
+        /** 各 AST 规则的累计耗时（微秒） */
+        Map<String, Long> ruleTimingsMicros;
+        /** 生产 profile 的类型（cpu / alloc 等），未提供 profile 时为 null */
+        String profileType;
+        /** profile 的全部采样数 */
+        Long profileSamples;
+        /** 至少有一帧映射到调用图的采样数 */
+        Long profileMappedSamples;
+        /** 开销对比的基线版本（--base-ref），未指定时为 null */
+        String baseRef;
     }
     
     static class FileContext {
@@ -571,25 +242,215 @@ public class ContextExtractor {
         String name;
         List<String> annotations;
         String signature;
+        /** 规范化 AST 指纹：只改空白、注释、格式时不变 */
+        String fingerprint;
+        /** 依赖指纹：合并向下 N 层被调方法的指纹，没有方法级调用图时为 null */
+        String dependencyFingerprint;
+        /** 生产 profile 中该方法的采样占比（%，含其调用的方法），没有采样时为 null */
+        Double profileShare;
+        /** 该方法是最深的应用方法的采样占比（%） */
+        Double profileSelfShare;
+        /** 静态开销指标 */
+        MethodCost cost;
+        /** 被改方法相对 --base-ref 的开销变化（当前 - 基线），未指定基线或非被改方法时为 null */
+        MethodCost costDelta;
+        /** 被改方法在基线版本中不存在（新增方法，costDelta 即其全部开销）；未指定基线时为 null */
+        Boolean addedSinceBase;
+    }
+
+    /**
+     * 方法的静态开销指标（只看 AST，按名字识别调用，是信号而非精确度量）
+     */
+    static class MethodCost {
+        /** 最大循环嵌套深度（for / while / do 与 forEach、map 等的 lambda 参数） */
+        int maxLoopDepth;
+        /** 循环内的分配：new、数组创建、Integer.valueOf 等装箱、含字面量的字符串拼接 */
+        int allocationsInLoops;
+        /** 集合拷贝：以集合构造新集合、addAll、toArray、Arrays.copyOf 等 */
+        int collectionCopies;
+        /** 循环内创建的 Stream 流水线 */
+        int streamsInLoops;
+        /** 阻塞调用：Thread.sleep、JDBC、文件 / 网络 I/O */
+        int blockingCalls;
+        /** 圈复杂度 */
+        int cyclomaticComplexity;
+    }
+    
+    /**
+     * 大 MR 中一簇相互关联的被改方法及其上下文。
+     * 修改文件的内容只在顶层 changedFiles 中出现一次，这里只给路径；relatedFiles 不含任何修改文件。
+     */
+    static class ContextCluster {
+        int id;
+        List<String> changedFiles = new ArrayList<String>();
+        List<String> changedMethods = new ArrayList<String>();
+        List<RelatedFile> relatedFiles = new ArrayList<RelatedFile>();
+        List<String> callChains = new ArrayList<String>();
+    }
+    
+    /**
+     * 被改方法的影响面
+     */
+    static class BlastRadius {
+        String method;
+        String file;
+        /** 直接或间接调用该方法的方法数 */
+        int transitiveCallers;
+        /** 受影响的 HTTP 入口数（含方法自身） */
+        int endpoints;
+        /** 所在递归环的方法数（不在环上时为 null） */
+        Integer cycleSize;
+    }
+    
+    /**
+     * 在 CONTEXT_TEST_REACH_HOPS 层调用内到达被改方法的基准 / 测试，由近到远、同层基准在前
+     */
+    static class ReachingTests {
+        String method;
+        String file;
+        List<ReachingTest> tests = new ArrayList<ReachingTest>();
+    }
+
+    static class ReachingTest {
+        String method;
+        String file;
+        /** benchmark（JMH @Benchmark）/ test（@Test 等） */
+        String kind;
+        /** 到被改方法的调用层数 */
+        int hops;
     }
     
+    /**
+     * 被改方法读写的字段（直接访问或经 getter / setter），先写后读
+     */
+    static class FieldRelation {
+        String method;
+        String file;
+        List<FieldUsage> fields = new ArrayList<FieldUsage>();
+    }
+
+    static class FieldUsage {
+        /** 字段，例如 com.example.User.email */
+        String field;
+        /** 实体字段映射的列名，不是实体字段时为 null */
+        String column;
+        /** 被改方法对该字段的访问：read / write / read-write */
+        String access;
+        /** 读写同一字段的其他方法，写在前，最多 CONTEXT_FIELD_ACCESS_LIMIT 个 */
+        List<FieldAccessor> accessors = new ArrayList<FieldAccessor>();
+        /** 未列出的其他读写方法数 */
+        int omitted;
+    }
+
+    static class FieldAccessor {
+        String method;
+        String file;
+        String access;
+    }
+
+    /**
+     * 方法源码片段
+     */
+    static class MethodSnippet {
+        String method;
+        String file;
+        int startLine;
+        int endLine;
+        String source;
+    }
+
+    /**
+     * 被改方法直接或经调用链可能到达的并发隐患
+     */
+    static class ConcurrencyHazard {
+        String method;
+        String file;
+        List<HazardPath> hazards = new ArrayList<HazardPath>();
+    }
+
+    static class HazardPath {
+        /** synchronized / lock / volatile / wait-notify / sleep / blocking */
+        String kind;
+        /** 从被改方法到带有该隐患的方法的最短调用路径（含两端） */
+        List<String> path;
+        /** 基线版本的该方法到达不了该隐患（新引入）；未指定 --base-ref 时为 null */
+        Boolean newSinceBase;
+    }
+    
+    /**
+     * 追踪调用链时被截断 / 抽样的中心节点
+     */
+    static class PrunedHub {
+        String method;
+        /** up：扇入过大，调用方被截断；down：扇出过大，被调方法被截断 */
+        String direction;
+        /** 该方向上的邻居数 */
+        int degree;
+        /** 未纳入结果的邻居数 */
+        int prunedNeighbours;
+        /** 抽样保留的邻居数 */
+        int sampledNeighbours;
+    }
+    
+    /**
+     * AST 规则发现的问题
+     */
+    static class Finding {
+        /** 规则 id，例如 LoopQuery */
+        String rule;
+        /** high / medium / low */
+        String severity;
+        String file;
+        /** 所在方法名（字段初始化等不在方法内时为 null） */
+        String method;
+        int startLine;
+        int endLine;
+        String message;
+    }
+
     static class RelatedFile {
         String path;
         String fullContent;
         String reason;
+        /** 文件中调用链上方法的最大生产采样占比（%），没有 profile 或没有采样时为 null */
+        Double profileShare;
+        /** compact：fullContent 为精简渲染，//@L<n> 表示下一行对应原文第 n 行；原文时为 null */
+        String rendering;
+        /** 文件中调用链上的方法及其开销指标（没有方法级调用图时为 null） */
+        List<MethodInfo> methods;
     }
 
     /**
-     * 简单的 (methodKey, depth) 结构，用于 BFS
+     * 调用图查询结果（query 子命令 / 服务模式 query 请求）
      */
-    static class MethodDepth {
-        String methodKey;
-        int depth;
+    static class QueryResult {
+        /** callers / callees / paths */
+        String kind;
+        /** 按 method（paths 为 from）匹配到的方法 */
+        List<String> matched;
+        /** paths 按 to 匹配到的方法 */
+        List<String> matchedTargets;
+        int offset;
+        int limit;
+        /** callers / callees 的结果总数；paths 不计算总数，为 null */
+        Integer total;
+        /** offset + limit 之后是否还有结果 */
+        boolean hasMore;
+        /** callers / callees 的本页结果，按层数、key 排序 */
+        List<QueryMethod> methods;
+        /** paths 的本页结果，每条路径为方法 key 列表（含两端） */
+        List<List<String>> paths;
+        /** 查询耗时（不含等待建图） */
+        long queryMillis;
+    }
 
-        MethodDepth(String methodKey, int depth) {
-            this.methodKey = methodKey;
-            this.depth = depth;
-        }
+    static class QueryMethod {
+        String method;
+        /** 便于阅读的写法，例如 AuthUtil.checkUserAccess(Long,String) */
+        String display;
+        /** 离查询方法的调用层数 */
+        int hops;
+        /** 没有源码的方法（JDK / 三方库）为 null */
+        String file;
     }
 }
-
@@ -0,0 +1,191 @@
+package com.codereview;
+
+import com.codereview.ContextExtractor.ContextResult;
+import com.codereview.ContextExtractor.QueryResult;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常驻服务模式（--server）
+ * 从标准输入逐行读取 JSON 请求，在线程池中并发处理，每个请求在标准输出写一行 JSON 响应（顺序不保证，按 id 对应）。
+ * 每个仓库对应一个 ContextEngine，调用图只建一次，后续请求直接复用已发布的快照。
+ * 默认分支合入后发送 repoMoved 通知，由 PrewarmScheduler 在后台重建，MR 到来时不必等待建图。
+ *
+ * 请求：{"id":"1","type":"analyze","repoPath":"/path/to/repo","changedFiles":["a/Foo.java"],"changedMethods":{...}}
+ *      {"id":"2","type":"rebuild","repoPath":"/path/to/repo"}
+ *      {"id":"3","type":"repoMoved","repoPath":"/path/to/repo","commit":"&lt;sha&gt;"}
+ *      {"id":"4","type":"query","repoPath":"/path/to/repo","query":{"kind":"callers","method":"AuthUtil.checkUserAccess"}}
+ * 响应：{"id":"1","ok":true,"result":{...}} / {"id":"2","ok":false,"error":"..."} / {"id":"3","ok":true,"queued":true}
+ *      / {"id":"4","ok":true,"queryResult":{...}}
+ */
+class ContextServer {
+
+    private final EngineConfig config;
+    private final Gson gson = new Gson();
+    /** 仓库规范路径 -> 分析引擎 */
+    private final Map<String, ContextEngine> engines = new ConcurrentHashMap<String, ContextEngine>();
+    private final ExecutorService workers;
+    private final PrewarmScheduler prewarm;
+    private final Object outputLock = new Object();
+    private PrintStream out;
+
+    ContextServer(EngineConfig config) {
+        this.config = config;
+        int threads = Math.max(1, EngineConfig.getIntEnv("CONTEXT_SERVER_THREADS",
+                Runtime.getRuntime().availableProcessors()));
+        this.workers = Executors.newFixedThreadPool(threads, ContextEngine.daemonThreads("context-server"));
+        this.prewarm = new PrewarmScheduler(this::engineFor,
+                Math.max(1, EngineConfig.getIntEnv("CONTEXT_PREWARM_THREADS", 1)),
+                EngineConfig.getIntEnv("CONTEXT_PREWARM_HALF_LIFE_MINUTES", 60));
+    }
+
+    /**
+     * 处理请求直到输入结束，返回前等待所有进行中的请求写完响应
+     */
+    void serve(BufferedReader in, PrintStream out) throws IOException, InterruptedException {
+        this.out = out;
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final Request request;
+            try {
+                request = gson.fromJson(line, Request.class);
+            } catch (JsonSyntaxException e) {
+                write(Response.error(null, "请求不是合法的 JSON: " + e.getMessage()));
+                continue;
+            }
+            workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    write(handle(request));
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        prewarm.shutdown();
+    }
+
+    private Response handle(Request request) {
+        if (request == null || request.repoPath == null) {
+            return Response.error(request == null ? null : request.id, "缺少 repoPath");
+        }
+        try {
+            String key = new File(request.repoPath).getCanonicalPath();
+            String type = request.type == null ? "analyze" : request.type;
+            if ("repoMoved".equals(type)) {
+                Response response = new Response(request.id);
+                response.queued = prewarm.repoMoved(key, request.commit);
+                return response;
+            }
+            ContextEngine engine = engineFor(key);
+            if ("analyze".equals(type)) {
+                if (request.changedFiles == null) {
+                    return Response.error(request.id, "缺少 changedFiles");
+                }
+                prewarm.recordRequest(key);
+                Response response = new Response(request.id);
+                response.result = engine.analyze(request.changedFiles, request.changedMethods, request.profile,
+                        request.profileType, request.baseRef);
+                return response;
+            }
+            if ("rebuild".equals(type)) {
+                long start = System.currentTimeMillis();
+                Response response = new Response(request.id);
+                // 分片调用图只重建源码有变化的目录
+                response.indexedMethods = engine.usesGraphShards() ? engine.refreshGraphShards()
+                        : engine.rebuild().get().methodCount();
+                response.graphBuildMillis = System.currentTimeMillis() - start;
+                return response;
+            }
+            if ("query".equals(type)) {
+                if (request.query == null) {
+                    return Response.error(request.id, "缺少 query");
+                }
+                Response response = new Response(request.id);
+                try {
+                    response.queryResult = engine.query(request.query);
+                } catch (IllegalArgumentException e) {
+                    return Response.error(request.id, e.getMessage());
+                }
+                return response;
+            }
+            return Response.error(request.id, "未知的请求类型: " + type);
+        } catch (Exception e) {
+            return Response.error(request.id, e.toString());
+        }
+    }
+
+    /**
+     * @param key 仓库规范路径
+     */
+    private ContextEngine engineFor(String key) {
+        return engines.computeIfAbsent(key, k -> new ContextEngine(k, config));
+    }
+
+    private void write(Response response) {
+        String json = gson.toJson(response);
+        synchronized (outputLock) {
+            out.println(json);
+            out.flush();
+        }
+    }
+
+    static class Request {
+        String id;
+        /** analyze（默认）/ rebuild / repoMoved / query */
+        String type;
+        String repoPath;
+        List<String> changedFiles;
+        Map<String, List<String>> changedMethods;
+        /** 生产环境 collapsed stack 文件（可选） */
+        String profile;
+        String profileType;
+        /** 开销对比的基线版本（可选） */
+        String baseRef;
+        /** repoMoved：仓库移动到的提交（可选），与最近一次预热的提交相同时不重建 */
+        String commit;
+        /** query：查询参数，见 GraphQuery.Spec */
+        GraphQuery.Spec query;
+    }
+
+    static class Response {
+        String id;
+        boolean ok = true;
+        String error;
+        ContextResult result;
+        /** rebuild 完成后调用图中的方法数 */
+        Integer indexedMethods;
+        /** rebuild 耗时 */
+        Long graphBuildMillis;
+        /** repoMoved 是否排入后台重建 */
+        Boolean queued;
+        /** query 的结果 */
+        QueryResult queryResult;
+
+        Response(String id) {
+            this.id = id;
+        }
+
+        static Response error(String id, String message) {
+            Response response = new Response(id);
+            response.ok = false;
+            response.error = message;
+            return response;
+        }
+    }
+}
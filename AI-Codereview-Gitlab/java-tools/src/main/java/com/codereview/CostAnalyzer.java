@@ -0,0 +1,291 @@
+package com.codereview;
+
+import com.codereview.ContextExtractor.MethodCost;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.*;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.types.ResolvedReferenceType;
+
+import java.util.*;
+
+/**
+ * 方法的静态开销指标，一次遍历方法体得到：
+ * 循环嵌套深度、循环内的对象分配（new、装箱、字符串拼接）、集合拷贝、循环内的 Stream 流水线、阻塞调用与圈复杂度。
+ * 只看 AST，调用按方法名 / 接收者名字识别（阻塞调用在有符号解析器时按接收者类型识别）；结果是确定性的信号，不保证精确。
+ */
+final class CostAnalyzer {
+
+    /** 集合类型：以另一个集合为参数构造时视为拷贝 */
+    private static final Set<String> COLLECTION_TYPES = new HashSet<String>(Arrays.asList(
+            "ArrayList", "LinkedList", "HashSet", "LinkedHashSet", "TreeSet", "HashMap", "LinkedHashMap", "TreeMap",
+            "ArrayDeque", "PriorityQueue", "CopyOnWriteArrayList", "ConcurrentHashMap", "Vector"));
+    /** 拷贝集合 / 数组的方法 */
+    private static final Set<String> COPY_METHODS = new HashSet<String>(Arrays.asList(
+            "addAll", "putAll", "toArray", "copyOf", "copyOfRange", "arraycopy"));
+    /** 产生 Stream 的方法 */
+    private static final Set<String> STREAM_SOURCES = new HashSet<String>(Arrays.asList(
+            "stream", "parallelStream", "range", "rangeClosed"));
+    /** 装箱：Integer.valueOf 等 */
+    private static final Set<String> WRAPPER_TYPES = new HashSet<String>(Arrays.asList(
+            "Integer", "Long", "Double", "Float", "Short", "Byte", "Character", "Boolean"));
+    /** 阻塞调用：线程等待、JDBC、文件与网络 I/O，按方法名索引 */
+    private static final Map<String, BlockingCall> BLOCKING_CALLS = new HashMap<String, BlockingCall>();
+
+    static {
+        blocking("join", 0, 2, false, "java.lang.Thread");
+        blocking("await", 0, 2, false, "java.util.concurrent.locks.Condition",
+                "java.util.concurrent.CountDownLatch", "java.util.concurrent.CyclicBarrier");
+        blocking("take", 0, 0, false, "java.util.concurrent.BlockingQueue",
+                "java.util.concurrent.CompletionService");
+        // Future.get 只在解析出接收者类型时识别，名字太常见
+        blocking("get", 0, 2, true, "java.util.concurrent.Future");
+        blocking("executeQuery", 0, 1, false, "java.sql.Statement");
+        blocking("executeUpdate", 0, 2, false, "java.sql.Statement");
+        blocking("executeBatch", 0, 0, false, "java.sql.Statement");
+        blocking("prepareStatement", 1, 3, false, "java.sql.Connection");
+        blocking("getConnection", 0, 3, false, "javax.sql.DataSource", "static:java.sql.DriverManager");
+        for (String name : Arrays.asList("readAllBytes", "readAllLines", "newBufferedReader", "newBufferedWriter",
+                "newInputStream", "newOutputStream")) {
+            blocking(name, 1, 3, false, "static:java.nio.file.Files");
+        }
+        blocking("getInputStream", 0, 0, false, "java.net.URLConnection", "java.net.Socket");
+        blocking("getOutputStream", 0, 0, false, "java.net.URLConnection", "java.net.Socket");
+        blocking("connect", 0, 2, false, "java.net.URLConnection", "java.net.Socket",
+                "java.nio.channels.SocketChannel");
+    }
+
+    /**
+     * 一种阻塞调用：接收者类型（实例方法）或声明类型（"static:" 前缀，静态方法）及参数个数范围
+     */
+    private static final class BlockingCall {
+        final int minArgs;
+        final int maxArgs;
+        /** 只在解析出类型时识别，不按名字回退 */
+        final boolean requiresType;
+        final Set<String> instanceOwners = new HashSet<String>();
+        final Set<String> staticOwners = new HashSet<String>();
+
+        BlockingCall(int minArgs, int maxArgs, boolean requiresType) {
+            this.minArgs = minArgs;
+            this.maxArgs = maxArgs;
+            this.requiresType = requiresType;
+        }
+    }
+
+    private static void blocking(String name, int minArgs, int maxArgs, boolean requiresType, String... owners) {
+        BlockingCall call = new BlockingCall(minArgs, maxArgs, requiresType);
+        for (String owner : owners) {
+            if (owner.startsWith("static:")) {
+                call.staticOwners.add(owner.substring("static:".length()));
+            } else {
+                call.instanceOwners.add(owner);
+            }
+        }
+        BLOCKING_CALLS.put(name, call);
+    }
+
+    /** 构造即打开文件 / 网络连接的类型 */
+    private static final Set<String> BLOCKING_TYPES = new HashSet<String>(Arrays.asList(
+            "FileInputStream", "FileOutputStream", "FileReader", "FileWriter", "RandomAccessFile", "Socket"));
+
+    private CostAnalyzer() {
+    }
+
+    static MethodCost of(MethodDeclaration method) {
+        MethodCost cost = new MethodCost();
+        cost.cyclomaticComplexity = 1;
+        if (method.getBody().isPresent()) {
+            walk(method.getBody().get(), 0, cost);
+        }
+        return cost;
+    }
+
+    /**
+     * after - before；before 为 null（基线版本中没有该方法）时与全零比较
+     */
+    static MethodCost delta(MethodCost after, MethodCost before) {
+        MethodCost base = before == null ? new MethodCost() : before;
+        MethodCost delta = new MethodCost();
+        delta.maxLoopDepth = after.maxLoopDepth - base.maxLoopDepth;
+        delta.allocationsInLoops = after.allocationsInLoops - base.allocationsInLoops;
+        delta.collectionCopies = after.collectionCopies - base.collectionCopies;
+        delta.streamsInLoops = after.streamsInLoops - base.streamsInLoops;
+        delta.blockingCalls = after.blockingCalls - base.blockingCalls;
+        delta.cyclomaticComplexity = after.cyclomaticComplexity - base.cyclomaticComplexity;
+        return delta;
+    }
+
+    private static void walk(Node node, int loopDepth, MethodCost cost) {
+        count(node, loopDepth, cost);
+        for (Node child : node.getChildNodes()) {
+            int depth = RuleEngine.isLoopPart(node, child) ? loopDepth + 1 : loopDepth;
+            cost.maxLoopDepth = Math.max(cost.maxLoopDepth, depth);
+            walk(child, depth, cost);
+        }
+    }
+
+    private static void count(Node node, int loopDepth, MethodCost cost) {
+        boolean inLoop = loopDepth > 0;
+        // 圈复杂度：每个分支点加一
+        if (node instanceof IfStmt || node instanceof ForStmt || node instanceof ForEachStmt
+                || node instanceof WhileStmt || node instanceof DoStmt || node instanceof CatchClause
+                || node instanceof ConditionalExpr) {
+            cost.cyclomaticComplexity++;
+        } else if (node instanceof SwitchEntry && !((SwitchEntry) node).getLabels().isEmpty()) {
+            cost.cyclomaticComplexity++;
+        } else if (node instanceof BinaryExpr) {
+            BinaryExpr.Operator op = ((BinaryExpr) node).getOperator();
+            if (op == BinaryExpr.Operator.AND || op == BinaryExpr.Operator.OR) {
+                cost.cyclomaticComplexity++;
+            }
+        }
+
+        if (node instanceof ObjectCreationExpr) {
+            ObjectCreationExpr creation = (ObjectCreationExpr) node;
+            String type = creation.getType().getNameAsString();
+            if (inLoop) {
+                cost.allocationsInLoops++;
+            }
+            if (COLLECTION_TYPES.contains(type) && creation.getArguments().size() == 1
+                    && !creation.getArgument(0).isIntegerLiteralExpr()) {
+                cost.collectionCopies++;
+            }
+            if (isBlocking(creation)) {
+                cost.blockingCalls++;
+            }
+        } else if (node instanceof ArrayCreationExpr) {
+            if (inLoop) {
+                cost.allocationsInLoops++;
+            }
+        } else if (node instanceof MethodCallExpr) {
+            MethodCallExpr call = (MethodCallExpr) node;
+            String name = call.getNameAsString();
+            String scope = call.getScope().map(Expression::toString).orElse("");
+            if (COPY_METHODS.contains(name)) {
+                cost.collectionCopies++;
+            }
+            if (inLoop && (STREAM_SOURCES.contains(name) || (name.equals("of") && scope.endsWith("Stream")))) {
+                cost.streamsInLoops++;
+            }
+            if (inLoop && name.equals("valueOf") && WRAPPER_TYPES.contains(scope)) {
+                cost.allocationsInLoops++;
+            }
+            if (isBlocking(call)) {
+                cost.blockingCalls++;
+            }
+        } else if (inLoop && isStringConcat(node)) {
+            cost.allocationsInLoops++;
+        }
+    }
+
+    /**
+     * 阻塞调用：线程等待（Thread.sleep、join、await 等）、JDBC、文件 / 网络 I/O。
+     * 有符号解析器时按被调方法的声明类型及其父类型识别（String.join、Map.get 等同名方法不算）；
+     * 解析不了时退回按方法名、参数个数与接收者识别：静态方法要求接收者是已知的类名，
+     * 实例方法要求接收者不像类名（首字母小写的变量、字段或方法调用）。
+     */
+    static boolean isBlocking(MethodCallExpr call) {
+        String name = call.getNameAsString();
+        if (name.equals("sleep")) {
+            return isSleep(call);
+        }
+        BlockingCall blocking = BLOCKING_CALLS.get(name);
+        int arity = call.getArguments().size();
+        if (blocking == null || arity < blocking.minArgs || arity > blocking.maxArgs || !call.getScope().isPresent()) {
+            return false;
+        }
+        try {
+            ResolvedMethodDeclaration method = call.resolve();
+            return matchesOwner(method.declaringType(),
+                    method.isStatic() ? blocking.staticOwners : blocking.instanceOwners);
+        } catch (RuntimeException | StackOverflowError e) {
+            // 没有符号解析器或解析失败
+        }
+        if (blocking.requiresType) {
+            return false;
+        }
+        Expression scope = call.getScope().get();
+        if (scope.isNameExpr() || scope.isFieldAccessExpr()) {
+            String scopeName = scope.isNameExpr() ? scope.asNameExpr().getNameAsString()
+                    : scope.asFieldAccessExpr().getNameAsString();
+            if (Character.isUpperCase(scopeName.charAt(0))) {
+                for (String owner : blocking.staticOwners) {
+                    if (owner.endsWith("." + scopeName)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return !blocking.instanceOwners.isEmpty();
+    }
+
+    private static boolean matchesOwner(ResolvedReferenceTypeDeclaration type, Set<String> owners) {
+        if (owners.contains(type.getQualifiedName())) {
+            return true;
+        }
+        for (ResolvedReferenceType ancestor : type.getAllAncestors()) {
+            if (owners.contains(ancestor.getQualifiedName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 打开文件 / 网络连接的构造
+     */
+    static boolean isBlocking(ObjectCreationExpr creation) {
+        return BLOCKING_TYPES.contains(creation.getType().getNameAsString());
+    }
+
+    /**
+     * Thread.sleep / TimeUnit.XXX.sleep
+     */
+    static boolean isSleep(MethodCallExpr call) {
+        if (!call.getNameAsString().equals("sleep")) {
+            return false;
+        }
+        String scope = call.getScope().map(Expression::toString).orElse("");
+        return scope.equals("Thread") || scope.startsWith("TimeUnit.");
+    }
+
+    /**
+     * 字符串拼接：最外层的 a + "..." 或 s += "..."（含字符串字面量时才能在不解析类型的情况下确定是字符串）
+     */
+    private static boolean isStringConcat(Node node) {
+        if (node instanceof BinaryExpr && ((BinaryExpr) node).getOperator() == BinaryExpr.Operator.PLUS) {
+            Node parent = node.getParentNode().orElse(null);
+            if (parent instanceof BinaryExpr && ((BinaryExpr) parent).getOperator() == BinaryExpr.Operator.PLUS) {
+                return false;
+            }
+            if (parent instanceof AssignExpr && ((AssignExpr) parent).getOperator() == AssignExpr.Operator.PLUS) {
+                // s += a + "..." 只算一次，由 AssignExpr 计数
+                return false;
+            }
+            return containsStringLiteral((BinaryExpr) node);
+        }
+        if (node instanceof AssignExpr && ((AssignExpr) node).getOperator() == AssignExpr.Operator.PLUS) {
+            Expression value = ((AssignExpr) node).getValue();
+            return value.isStringLiteralExpr()
+                    || (value.isBinaryExpr() && containsStringLiteral(value.asBinaryExpr()));
+        }
+        return false;
+    }
+
+    private static boolean containsStringLiteral(BinaryExpr expr) {
+        for (Expression side : Arrays.asList(expr.getLeft(), expr.getRight())) {
+            if (side.isStringLiteralExpr()) {
+                return true;
+            }
+            if (side.isBinaryExpr() && side.asBinaryExpr().getOperator() == BinaryExpr.Operator.PLUS
+                    && containsStringLiteral(side.asBinaryExpr())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
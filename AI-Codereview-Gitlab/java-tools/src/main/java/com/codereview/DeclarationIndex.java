@@ -0,0 +1,194 @@
+package com.codereview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 源码类型声明索引：类型全限定名（含嵌套类型 a.b.Outer.Inner）-> 声明它的文件
+ * 建图前对全部源码目录做一次词法扫描（跳过注释与字面量、按花括号层级识别成员类型），不做 JavaParser 解析；
+ * 同一文件中的非 public 顶层类型也能找到。构建后只读，可被多个解析器、多个线程共用。
+ */
+final class DeclarationIndex {
+
+    /**
+     * 一个类型声明
+     */
+    static final class Declaration {
+        final Path file;
+        /** 文件内的类型路径，例如 Outer.Inner（不含包名） */
+        final String typePath;
+
+        Declaration(Path file, String typePath) {
+            this.file = file;
+            this.typePath = typePath;
+        }
+    }
+
+    private static final Set<String> TYPE_KEYWORDS = new HashSet<String>(Arrays.asList(
+            "class", "interface", "enum", "record"));
+
+    /** 全限定名 -> 声明（多模块中可能重名，按源码目录顺序） */
+    private final Map<String, List<Declaration>> byName;
+
+    private DeclarationIndex(Map<String, List<Declaration>> byName) {
+        this.byName = byName;
+    }
+
+    static DeclarationIndex build(List<File> sourceRoots) {
+        Map<String, List<Declaration>> byName = new HashMap<String, List<Declaration>>();
+        for (File root : sourceRoots) {
+            List<Path> javaFiles = new ArrayList<Path>();
+            try (Stream<Path> walk = Files.walk(root.toPath())) {
+                walk.filter(p -> p.toString().endsWith(".java")).sorted().forEach(javaFiles::add);
+            } catch (IOException e) {
+                // 单个源码目录扫描失败不影响整体
+                continue;
+            }
+            for (Path p : javaFiles) {
+                String source;
+                try {
+                    source = new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    continue;
+                }
+                scan(tokens(source), p, byName);
+            }
+        }
+        return new DeclarationIndex(byName);
+    }
+
+    /**
+     * 全限定名对应的声明，只在给定源码目录内查找；visibleRoots 为 null 时不限制
+     */
+    Declaration find(String name, List<Path> visibleRoots) {
+        List<Declaration> declarations = byName.get(name);
+        if (declarations == null) {
+            return null;
+        }
+        for (Declaration declaration : declarations) {
+            if (visibleRoots == null) {
+                return declaration;
+            }
+            for (Path root : visibleRoots) {
+                if (declaration.file.startsWith(root)) {
+                    return declaration;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** 索引的类型数 */
+    int size() {
+        return byName.size();
+    }
+
+    // ===== 词法扫描 =====
+
+    /**
+     * 识别包名与成员类型：顶层类型，以及直接声明在类型体内的嵌套类型；方法体内的局部类与匿名类不可按名字引用，不记录
+     */
+    private static void scan(List<String> tokens, Path file, Map<String, List<Declaration>> byName) {
+        String packageName = "";
+        int depth = 0;
+        // 已打开的类型：类型路径与类型体所在的花括号层级
+        Deque<String> openTypes = new ArrayDeque<String>();
+        Deque<Integer> bodyDepths = new ArrayDeque<Integer>();
+        String pending = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("{")) {
+                depth++;
+                if (pending != null) {
+                    openTypes.push(pending);
+                    bodyDepths.push(depth);
+                    pending = null;
+                }
+            } else if (token.equals("}")) {
+                if (!bodyDepths.isEmpty() && bodyDepths.peek() == depth) {
+                    openTypes.pop();
+                    bodyDepths.pop();
+                }
+                depth--;
+            } else if (token.equals("package") && depth == 0 && openTypes.isEmpty()) {
+                StringBuilder name = new StringBuilder();
+                for (i++; i < tokens.size() && !tokens.get(i).equals(";"); i++) {
+                    name.append(tokens.get(i));
+                }
+                packageName = name.toString();
+            } else if (TYPE_KEYWORDS.contains(token) && i + 1 < tokens.size() && isIdentifier(tokens.get(i + 1))
+                    && (i == 0 || !tokens.get(i - 1).equals("."))) {
+                // record 是上下文关键字，后面必须是 Name( 或 Name<
+                if (token.equals("record") && (i + 2 >= tokens.size()
+                        || !(tokens.get(i + 2).equals("(") || tokens.get(i + 2).equals("<")))) {
+                    continue;
+                }
+                boolean member = bodyDepths.isEmpty() ? depth == 0 : bodyDepths.peek() == depth;
+                if (!member) {
+                    continue;
+                }
+                String name = tokens.get(++i);
+                pending = openTypes.isEmpty() ? name : openTypes.peek() + "." + name;
+                String fqn = packageName.isEmpty() ? pending : packageName + "." + pending;
+                byName.computeIfAbsent(fqn, k -> new ArrayList<Declaration>(1)).add(new Declaration(file, pending));
+            }
+        }
+    }
+
+    /**
+     * 切分为标识符与单字符符号，丢弃空白、注释、字符串 / 字符 / 文本块字面量与数字
+     */
+    private static List<String> tokens(String source) {
+        List<String> tokens = new ArrayList<String>();
+        int n = source.length();
+        int i = 0;
+        while (i < n) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < n && source.charAt(i + 1) == '/') {
+                while (i < n && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '"' && source.startsWith("\"\"\"", i)) {
+                int end = source.indexOf("\"\"\"", i + 3);
+                while (end > 0 && source.charAt(end - 1) == '\\') {
+                    end = source.indexOf("\"\"\"", end + 1);
+                }
+                i = end < 0 ? n : end + 3;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < n && source.charAt(i) != c && source.charAt(i) != '\n') {
+                    i += source.charAt(i) == '\\' ? 2 : 1;
+                }
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < n && Character.isJavaIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                tokens.add(source.substring(start, i));
+            } else if (Character.isDigit(c)) {
+                while (i < n && (Character.isJavaIdentifierPart(source.charAt(i)) || source.charAt(i) == '.')) {
+                    i++;
+                }
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifier(String token) {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+}
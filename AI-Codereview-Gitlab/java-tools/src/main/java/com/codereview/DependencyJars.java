@@ -0,0 +1,228 @@
+package com.codereview;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 定位被分析仓库的三方依赖 jar，供 jar 类型解析使用：
+ * 1. 模块（及仓库根目录）下的 target/dependency（mvn dependency:copy-dependencies 的产物）
+ * 2. 本地 Maven 仓库中 pom 声明的依赖，沿依赖 pom 追踪有限层数的传递依赖
+ * 没有写版本号的依赖先查 dependencyManagement（含 parent 链、仓库外的 parent 与 import 的 BOM，都从本地仓库读取），
+ * 仍然查不到时才猜测为本地仓库中最新的版本，并记录下来。
+ */
+class DependencyJars {
+
+    private static final int MAX_TRANSITIVE_DEPTH = 3;
+    /** 查受管版本时沿 parent / BOM 追溯的最大 pom 数 */
+    private static final int MAX_POM_DEPTH = 10;
+
+    /** groupId:artifactId:version -> 本地仓库中的 pom 信息（进程内共享，不存在时为空 Optional） */
+    private static final Map<String, Optional<ProjectLayout.PomInfo>> REPO_POMS =
+            new ConcurrentHashMap<String, Optional<ProjectLayout.PomInfo>>();
+
+    private DependencyJars() {
+    }
+
+    /**
+     * @param modules          需要解析依赖的模块（通常是某模块的依赖闭包）
+     * @param mavenRepo        本地 Maven 仓库目录，不存在时只使用 target/dependency
+     * @param includeTestScope 是否包含 test scope 依赖
+     * @param guessedVersions  记录按本地最新版本猜测的依赖（groupId:artifactId:version）
+     */
+    static List<File> resolve(ProjectLayout layout, List<ProjectLayout.Module> modules,
+                              File mavenRepo, boolean includeTestScope, Set<String> guessedVersions) {
+        Set<File> jars = new LinkedHashSet<File>();
+        addDependencyDir(jars, new File(layout.repoRoot, "target/dependency"));
+        for (ProjectLayout.Module module : modules) {
+            addDependencyDir(jars, new File(module.dir, "target/dependency"));
+        }
+        if (mavenRepo == null || !mavenRepo.isDirectory()) {
+            return new ArrayList<File>(jars);
+        }
+
+        // 仓库内模块是源码，不从本地仓库取 jar
+        Set<String> inRepoArtifacts = new HashSet<String>();
+        for (ProjectLayout.Module module : layout.modules) {
+            inRepoArtifacts.add(module.name);
+        }
+        Set<String> visited = new HashSet<String>();
+        for (ProjectLayout.Module module : modules) {
+            if (module.pom == null) {
+                continue;
+            }
+            for (String[] dependency : module.pom.dependencies) {
+                if (inRepoArtifacts.contains(dependency[1])) {
+                    continue;
+                }
+                if ("test".equals(dependency[3]) && !includeTestScope) {
+                    continue;
+                }
+                collect(jars, visited, guessedVersions, mavenRepo, module.pom, dependency[0], dependency[1],
+                        dependency[2], 0);
+            }
+        }
+        return new ArrayList<File>(jars);
+    }
+
+    private static void addDependencyDir(Set<File> jars, File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isFile() && f.getName().endsWith(".jar")) {
+                jars.add(f);
+            }
+        }
+    }
+
+    /**
+     * @param owner 声明该依赖的 pom，依赖没有写版本号时从它的 dependencyManagement 查找
+     */
+    private static void collect(Set<File> jars, Set<String> visited, Set<String> guessedVersions, File mavenRepo,
+                                ProjectLayout.PomInfo owner, String groupId, String artifactId, String version,
+                                int depth) {
+        if (groupId == null || artifactId == null) {
+            return;
+        }
+        if (version == null) {
+            version = managedVersion(mavenRepo, owner, groupId, artifactId, 0);
+        }
+        if (version == null) {
+            // 本地仓库中也找不到受管版本，退化为本地仓库里最新的版本
+            version = latestLocalVersion(mavenRepo, groupId, artifactId);
+            if (version == null) {
+                return;
+            }
+            guessedVersions.add(groupId + ":" + artifactId + ":" + version);
+        }
+        if (!visited.add(groupId + ":" + artifactId)) {
+            return;
+        }
+        File jar = artifactFile(mavenRepo, groupId, artifactId, version, "jar");
+        if (jar.isFile()) {
+            jars.add(jar);
+        }
+        if (depth >= MAX_TRANSITIVE_DEPTH) {
+            return;
+        }
+        ProjectLayout.PomInfo pom = readRepoPom(mavenRepo, groupId, artifactId, version, 0);
+        if (pom == null) {
+            return;
+        }
+        for (String[] dependency : pom.dependencies) {
+            String scope = dependency[3];
+            if (!"compile".equals(scope) && !"runtime".equals(scope)) {
+                continue;
+            }
+            if (Boolean.parseBoolean(dependency[4])) {
+                continue;
+            }
+            collect(jars, visited, guessedVersions, mavenRepo, pom, dependency[0], dependency[1], dependency[2],
+                    depth + 1);
+        }
+    }
+
+    /**
+     * 受管版本：pom 及调用方给出的 parent 的 dependencyManagement 已合并在 managedVersions 中；
+     * 没有时沿 parent 链依次查 import 的 BOM 与仓库外的 parent（从本地仓库读取）
+     */
+    private static String managedVersion(File mavenRepo, ProjectLayout.PomInfo pom, String groupId,
+                                         String artifactId, int depth) {
+        String key = groupId + ":" + artifactId;
+        ProjectLayout.PomInfo current = pom;
+        while (current != null && depth++ < MAX_POM_DEPTH) {
+            String version = current.managedVersions.get(key);
+            if (version != null) {
+                return version;
+            }
+            for (String[] bom : current.importedBoms) {
+                ProjectLayout.PomInfo bomPom = readRepoPom(mavenRepo, bom[0], bom[1], bom[2], 0);
+                version = bomPom == null ? null : managedVersion(mavenRepo, bomPom, groupId, artifactId, depth);
+                if (version != null) {
+                    return version;
+                }
+            }
+            if (current.parent != null) {
+                current = current.parent;
+            } else if (current.parentCoordinates != null) {
+                String[] gav = current.parentCoordinates;
+                current = readRepoPom(mavenRepo, gav[0], gav[1], gav[2], 0);
+            } else {
+                current = null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取本地仓库中的 pom，并沿 parent 链继承属性与 dependencyManagement
+     */
+    private static ProjectLayout.PomInfo readRepoPom(File mavenRepo, String groupId, String artifactId,
+                                                     String version, int parentDepth) {
+        String gav = groupId + ":" + artifactId + ":" + version;
+        Optional<ProjectLayout.PomInfo> cached = REPO_POMS.get(gav);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        File pomFile = artifactFile(mavenRepo, groupId, artifactId, version, "pom");
+        ProjectLayout.PomInfo parent = null;
+        if (pomFile.isFile() && parentDepth < 5) {
+            String[] parentGav = ProjectLayout.readParentCoordinates(pomFile);
+            if (parentGav != null) {
+                parent = readRepoPom(mavenRepo, parentGav[0], parentGav[1], parentGav[2], parentDepth + 1);
+            }
+        }
+        ProjectLayout.PomInfo info = pomFile.isFile() ? ProjectLayout.readPom(pomFile, parent) : null;
+        REPO_POMS.put(gav, Optional.ofNullable(info));
+        return info;
+    }
+
+    private static File artifactFile(File mavenRepo, String groupId, String artifactId, String version, String ext) {
+        File dir = new File(mavenRepo, groupId.replace('.', File.separatorChar)
+                + File.separator + artifactId + File.separator + version);
+        return new File(dir, artifactId + "-" + version + "." + ext);
+    }
+
+    private static String latestLocalVersion(File mavenRepo, String groupId, String artifactId) {
+        File dir = new File(mavenRepo, groupId.replace('.', File.separatorChar) + File.separator + artifactId);
+        File[] versions = dir.listFiles();
+        if (versions == null) {
+            return null;
+        }
+        String best = null;
+        for (File v : versions) {
+            if (!artifactFile(mavenRepo, groupId, artifactId, v.getName(), "jar").isFile()) {
+                continue;
+            }
+            if (best == null || compareVersions(v.getName(), best) > 0) {
+                best = v.getName();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按 . 和 - 分段比较版本号，数字段按数值比较
+     */
+    static int compareVersions(String a, String b) {
+        String[] pa = a.split("[.-]");
+        String[] pb = b.split("[.-]");
+        for (int i = 0; i < Math.max(pa.length, pb.length); i++) {
+            String x = i < pa.length ? pa[i] : "0";
+            String y = i < pb.length ? pb[i] : "0";
+            int c;
+            if (x.matches("\\d+") && y.matches("\\d+")) {
+                c = Long.compare(Long.parseLong(x), Long.parseLong(y));
+            } else {
+                c = x.compareTo(y);
+            }
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+}
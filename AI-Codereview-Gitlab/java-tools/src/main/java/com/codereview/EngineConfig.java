@@ -0,0 +1,203 @@
+package com.codereview;
+
+import java.io.File;
+
+/**
+ * 分析引擎配置（不可变），由环境变量一次性读取，命令行模式与常驻服务模式共用
+ */
+final class EngineConfig {
+
+    static final int DEFAULT_UP_DEPTH = 2;   // 向上追踪调用链的默认层数
+    static final int DEFAULT_DOWN_DEPTH = 2; // 向下追踪调用链的默认层数
+    static final int DEFAULT_FULL_GRAPH_TIMEOUT_MS = 40000; // auto 模式下等待方法级调用图的默认时长
+    static final int DEFAULT_REACH_SUMMARY_HOPS = 3; // 可达摘要默认层数，覆盖默认的调用链追踪深度
+    static final int DEFAULT_REACH_SUMMARY_CAP = 256; // 单个分量可达摘要的默认上限
+    static final int DEFAULT_HUB_PERCENTILE = 99; // 扇入 / 扇出超过 99 分位的方法视为中心节点
+    static final int DEFAULT_HUB_MIN_DEGREE = 20; // 中心节点的最小扇入 / 扇出
+    static final int DEFAULT_HUB_SAMPLE_SIZE = 5; // 每个中心节点抽样保留的邻居数
+    static final int DEFAULT_TEST_REACH_HOPS = 6; // 基准 / 测试到被改方法的默认最大调用层数
+    static final int DEFAULT_TEST_REACH_LIMIT = 20; // 每个被改方法最多列出的基准 / 测试数
+    static final int DEFAULT_FIELD_ACCESS_LIMIT = 10; // 每个字段最多列出的其他读写方法数
+    static final long ESTIMATED_CU_BYTES = 256 * 1024L; // 单个 CompilationUnit 的估算保留大小，用于把内存预算换算为解析缓存条数
+
+    /** 图的层级：full / import / auto */
+    final String graphTier;
+    /** auto 模式下等待方法级调用图的时长，0 表示一直等待 */
+    final long fullGraphTimeoutMs;
+    final int upDepth;
+    final int downDepth;
+    /** 按需建图：只解析被改方法上下 N 层可能涉及的文件 */
+    final boolean demandDriven;
+    /** 是否同时索引 src/test/java 与 src/jmh/java（基准 / 测试反查依赖于此） */
+    final boolean includeTestSources;
+    final boolean includeGeneratedSources;
+    /** 并行建图的线程数 */
+    final int indexThreads;
+    /** 是否解析三方依赖 jar */
+    final boolean resolveJars;
+    /** 本地 Maven 仓库 */
+    final File mavenRepo;
+    /** jar 类名索引的磁盘缓存目录，按 jar 校验和存放，所有仓库共享 */
+    final File symbolCacheDir;
+    /** 内存预算（字节），0 表示不限制 */
+    final long memoryBudgetBytes;
+    /** 每个类型解析器的源码解析缓存上限（CompilationUnit 个数），-1 表示不限制 */
+    final long parseCacheSize;
+    /** 调用图缩点后每个分量预先记录的可达层数 */
+    final int reachSummaryHops;
+    /** 单个分量可达摘要的分量数上限，超过时不存摘要、查询时现算 */
+    final int reachSummaryCap;
+    /** 扇入 / 扇出超过该分位数的方法视为中心节点，不在 (0, 100) 内时不启用 */
+    final int hubPercentile;
+    /** 中心节点的最小扇入 / 扇出，小仓库里分位数很低时避免把普通方法当作中心节点 */
+    final int hubMinDegree;
+    /** 中心节点的处理策略：sample（按相关度抽样邻居）/ stop（不展开） */
+    final String hubPolicy;
+    /** sample 策略下每个中心节点保留的邻居数 */
+    final int hubSampleSize;
+    /** 修改的 Java 文件数达到该值时按调用图把被改方法分簇输出，0 表示不分簇 */
+    final int partitionMinFiles;
+    /** 相关文件的渲染方式：full（原文）/ compact（精简，见 CompactRenderer） */
+    final String renderMode;
+    /** compact 模式下是否保留注解 */
+    final boolean compactKeepAnnotations;
+    /** compact 模式下是否保留 Javadoc 中的 @throws */
+    final boolean compactKeepThrows;
+    /** 依赖指纹覆盖的被调方法层数 */
+    final int fingerprintDepth;
+    /** 启用的 AST 规则：all / none / 逗号分隔的规则 id */
+    final String rules;
+    /** 基准 / 测试方法到被改方法的最大调用层数，0 表示不反查 */
+    final int testReachHops;
+    /** 每个被改方法最多列出的基准 / 测试数 */
+    final int testReachLimit;
+    /** 被改方法读写的每个字段最多列出的其他读写方法数，0 表示不输出 */
+    final int fieldAccessLimit;
+    /** 分片持久化调用图的存储目录，为 null 时不启用（见 GraphShards） */
+    final File graphShardDir;
+    /** 并行分析修改文件的线程数，1 表示逐个分析 */
+    final int analysisThreads;
+
+    private EngineConfig(String graphTier, long fullGraphTimeoutMs, int upDepth, int downDepth,
+                         boolean demandDriven, boolean includeTestSources, boolean includeGeneratedSources,
+                         int indexThreads, boolean resolveJars, File mavenRepo, File symbolCacheDir,
+                         long memoryBudgetBytes, long parseCacheSize, int reachSummaryHops,
+                         int reachSummaryCap, int hubPercentile, int hubMinDegree, String hubPolicy,
+                         int hubSampleSize, int partitionMinFiles, String renderMode,
+                         boolean compactKeepAnnotations, boolean compactKeepThrows, int fingerprintDepth,
+                         String rules, int testReachHops, int testReachLimit,
+                         int fieldAccessLimit, File graphShardDir, int analysisThreads) {
+        this.graphTier = graphTier;
+        this.fullGraphTimeoutMs = fullGraphTimeoutMs;
+        this.upDepth = upDepth;
+        this.downDepth = downDepth;
+        this.demandDriven = demandDriven;
+        this.includeTestSources = includeTestSources;
+        this.includeGeneratedSources = includeGeneratedSources;
+        this.indexThreads = indexThreads;
+        this.resolveJars = resolveJars;
+        this.mavenRepo = mavenRepo;
+        this.symbolCacheDir = symbolCacheDir;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.parseCacheSize = parseCacheSize;
+        this.reachSummaryHops = reachSummaryHops;
+        this.reachSummaryCap = reachSummaryCap;
+        this.hubPercentile = hubPercentile;
+        this.hubMinDegree = hubMinDegree;
+        this.hubPolicy = hubPolicy;
+        this.hubSampleSize = hubSampleSize;
+        this.partitionMinFiles = partitionMinFiles;
+        this.renderMode = renderMode;
+        this.compactKeepAnnotations = compactKeepAnnotations;
+        this.compactKeepThrows = compactKeepThrows;
+        this.fingerprintDepth = fingerprintDepth;
+        this.rules = rules;
+        this.testReachHops = testReachHops;
+        this.testReachLimit = testReachLimit;
+        this.fieldAccessLimit = fieldAccessLimit;
+        this.graphShardDir = graphShardDir;
+        this.analysisThreads = analysisThreads;
+    }
+
+    static EngineConfig fromEnv() {
+        // 图的层级：full 只用方法级调用图；import 只用文件级依赖图；
+        // auto（默认）在限定时间内构建方法级调用图，超时或失败时退化为文件级依赖图
+        String tier = getEnv("CONTEXT_GRAPH_TIER", "auto");
+        long timeoutMs = "auto".equals(tier)
+                ? getIntEnv("CONTEXT_FULL_GRAPH_TIMEOUT_MS", DEFAULT_FULL_GRAPH_TIMEOUT_MS) : 0;
+
+        String mavenRepo = getEnv("CONTEXT_MAVEN_REPO", System.getProperty("user.home") + "/.m2/repository");
+        String cacheDir = getEnv("CONTEXT_SYMBOL_CACHE_DIR",
+                System.getProperty("user.home") + "/.cache/codereview-context/jar-index");
+        String shardDir = getEnv("CONTEXT_GRAPH_SHARD_DIR", "");
+
+        // 内存预算模式：CONTEXT_MEMORY_BUDGET_MB 指定整个进程的分析内存预算，
+        // 据此限制类型解析器缓存的 CompilationUnit 个数（也可用 CONTEXT_PARSE_CACHE_SIZE 直接指定）
+        long budgetBytes = Math.max(0, getIntEnv("CONTEXT_MEMORY_BUDGET_MB", 0)) * 1024L * 1024L;
+        long cacheSize = getIntEnv("CONTEXT_PARSE_CACHE_SIZE", -1);
+        if (cacheSize <= 0 && budgetBytes > 0) {
+            // 预留一半给调用图与其他对象
+            cacheSize = Math.max(16, budgetBytes / 2 / ESTIMATED_CU_BYTES);
+        }
+
+        int downDepth = getIntEnv("CONTEXT_CALL_DEPTH_DOWN", DEFAULT_DOWN_DEPTH);
+
+        return new EngineConfig(
+                tier,
+                timeoutMs,
+                getIntEnv("CONTEXT_CALL_DEPTH_UP", DEFAULT_UP_DEPTH),
+                downDepth,
+                getBoolEnv("CONTEXT_DEMAND_DRIVEN", false),
+                getBoolEnv("CONTEXT_INCLUDE_TEST_SOURCES", false),
+                getBoolEnv("CONTEXT_INCLUDE_GENERATED_SOURCES", false),
+                Math.max(1, getIntEnv("CONTEXT_INDEX_THREADS", Runtime.getRuntime().availableProcessors())),
+                getBoolEnv("CONTEXT_RESOLVE_JARS", true),
+                new File(mavenRepo),
+                new File(cacheDir),
+                budgetBytes,
+                cacheSize > 0 ? cacheSize : -1,
+                Math.max(0, getIntEnv("CONTEXT_REACH_SUMMARY_HOPS", DEFAULT_REACH_SUMMARY_HOPS)),
+                Math.max(1, getIntEnv("CONTEXT_REACH_SUMMARY_CAP", DEFAULT_REACH_SUMMARY_CAP)),
+                getIntEnv("CONTEXT_HUB_PERCENTILE", DEFAULT_HUB_PERCENTILE),
+                Math.max(1, getIntEnv("CONTEXT_HUB_MIN_DEGREE", DEFAULT_HUB_MIN_DEGREE)),
+                "stop".equalsIgnoreCase(getEnv("CONTEXT_HUB_POLICY", "sample")) ? "stop" : "sample",
+                Math.max(0, getIntEnv("CONTEXT_HUB_SAMPLE_SIZE", DEFAULT_HUB_SAMPLE_SIZE)),
+                Math.max(0, getIntEnv("CONTEXT_PARTITION_MIN_FILES", 0)),
+                "compact".equalsIgnoreCase(getEnv("CONTEXT_RENDER_MODE", "full")) ? "compact" : "full",
+                getBoolEnv("CONTEXT_COMPACT_KEEP_ANNOTATIONS", true),
+                getBoolEnv("CONTEXT_COMPACT_KEEP_THROWS", true),
+                Math.max(0, getIntEnv("CONTEXT_FINGERPRINT_DEPTH", downDepth)),
+                getEnv("CONTEXT_RULES", "all"),
+                Math.max(0, getIntEnv("CONTEXT_TEST_REACH_HOPS", DEFAULT_TEST_REACH_HOPS)),
+                Math.max(1, getIntEnv("CONTEXT_TEST_REACH_LIMIT", DEFAULT_TEST_REACH_LIMIT)),
+                Math.max(0, getIntEnv("CONTEXT_FIELD_ACCESS_LIMIT", DEFAULT_FIELD_ACCESS_LIMIT)),
+                shardDir.isEmpty() ? null : new File(shardDir),
+                Math.max(1, getIntEnv("CONTEXT_ANALYSIS_THREADS", Runtime.getRuntime().availableProcessors()))
+        );
+    }
+
+    static int getIntEnv(String name, int defaultValue) {
+        try {
+            String v = System.getenv(name);
+            if (v == null || v.isEmpty()) {
+                return defaultValue;
+            }
+            return Integer.parseInt(v);
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    static String getEnv(String name, String defaultValue) {
+        String v = System.getenv(name);
+        return v == null || v.isEmpty() ? defaultValue : v;
+    }
+
+    static boolean getBoolEnv(String name, boolean defaultValue) {
+        String v = System.getenv(name);
+        if (v == null || v.isEmpty()) {
+            return defaultValue;
+        }
+        return "true".equalsIgnoreCase(v) || "1".equals(v);
+    }
+}
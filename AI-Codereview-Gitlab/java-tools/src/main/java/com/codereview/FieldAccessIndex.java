@@ -0,0 +1,284 @@
+package com.codereview;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.resolution.declarations.ResolvedFieldDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+
+import java.util.*;
+
+/**
+ * 字段读写索引：方法直接读写的字段、经 JavaBean getter / setter 读写的字段，以及实体字段对应的列
+ * 字段 key 形如 com.example.User.email。建图时每个方法记录一次，由 CallGraph 倒排为“字段 -> 读写它的方法”。
+ * 只记录可变状态：final 字段（常量、构造器注入的依赖）与 @Autowired 等注入的字段不记录；
+ * 实体类中 getter / setter 自身对字段的访问不记录，调用它们即视为读写字段。
+ */
+final class FieldAccessIndex {
+
+    static final int READ = 1;
+    static final int WRITE = 1 << 1;
+
+    /** 实体类注解（JPA / MyBatis-Plus） */
+    private static final Set<String> ENTITY_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+            "Entity", "Table", "TableName", "Document", "MappedSuperclass", "Embeddable"));
+    /** 依赖注入注解：注入的字段是依赖而不是状态 */
+    private static final Set<String> INJECT_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+            "Autowired", "Resource", "Inject", "Value", "PersistenceContext"));
+    /** 映射到列的字段注解 */
+    private static final Set<String> COLUMN_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+            "Column", "Id", "TableField", "TableId", "JoinColumn", "Field"));
+
+    private FieldAccessIndex() {
+    }
+
+    /**
+     * getter / setter 调用读写的字段
+     */
+    static final class FieldAccess {
+        /** 字段 key */
+        final String field;
+        /** READ / WRITE */
+        final int flags;
+
+        FieldAccess(String field, int flags) {
+            this.field = field;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * 类中表示可变状态的字段名：非 final、非注入（含 static 非 final 字段）
+     */
+    static Set<String> stateFields(ClassOrInterfaceDeclaration cls) {
+        Set<String> names = new HashSet<String>();
+        for (FieldDeclaration field : cls.getFields()) {
+            if (field.isFinal() || field.getAnnotations().stream()
+                    .anyMatch(a -> INJECT_ANNOTATIONS.contains(simpleName(a)))) {
+                continue;
+            }
+            for (VariableDeclarator variable : field.getVariables()) {
+                names.add(variable.getNameAsString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 实体字段 -> 列名：实体类的所有非 static 字段（未指定列名时为字段名），以及其他类中带 @Column 等注解的字段
+     */
+    static Map<String, String> columns(ClassOrInterfaceDeclaration cls, String classFqn) {
+        Map<String, String> columns = new HashMap<String, String>();
+        boolean entity = false;
+        for (AnnotationExpr ann : cls.getAnnotations()) {
+            entity |= ENTITY_ANNOTATIONS.contains(simpleName(ann));
+        }
+        for (FieldDeclaration field : cls.getFields()) {
+            if (field.isStatic() || field.hasModifier(Modifier.Keyword.TRANSIENT)) {
+                continue;
+            }
+            String column = null;
+            boolean mapped = entity;
+            for (AnnotationExpr ann : field.getAnnotations()) {
+                String name = simpleName(ann);
+                if (name.equals("Transient")) {
+                    mapped = false;
+                    break;
+                }
+                if (COLUMN_ANNOTATIONS.contains(name)) {
+                    mapped = true;
+                    column = column == null ? columnName(ann) : column;
+                }
+            }
+            if (!mapped) {
+                continue;
+            }
+            for (VariableDeclarator variable : field.getVariables()) {
+                String fieldName = variable.getNameAsString();
+                columns.put(classFqn + "." + fieldName, column != null ? column : fieldName);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 方法体内直接读写的字段：本类字段（x / this.x）按名字识别，其他对象的字段（o.x）经符号解析
+     *
+     * @param ownFields 本类表示状态的字段（见 stateFields）
+     * @return 字段 key -> READ / WRITE 位
+     */
+    static Map<String, Integer> directAccesses(MethodDeclaration method, String classFqn, Set<String> ownFields,
+                                               CombinedTypeSolver typeSolver) {
+        Map<String, Integer> accesses = new HashMap<String, Integer>();
+        if (!method.getBody().isPresent()) {
+            return accesses;
+        }
+        // 实体 / DTO 中的 getter / setter 自身不记录，调用方经 accessorField 记到字段上
+        String accessorField = accessorFieldName(method.getNameAsString(), method.getParameters().size());
+        Set<String> locals = localNames(method);
+        for (Node node : method.getBody().get().findAll(Node.class)) {
+            String fieldKey = null;
+            if (node instanceof NameExpr) {
+                String name = ((NameExpr) node).getNameAsString();
+                if (ownFields.contains(name) && !locals.contains(name)) {
+                    fieldKey = classFqn + "." + name;
+                }
+            } else if (node instanceof FieldAccessExpr) {
+                FieldAccessExpr access = (FieldAccessExpr) node;
+                if (access.getScope().isThisExpr()) {
+                    if (ownFields.contains(access.getNameAsString())) {
+                        fieldKey = classFqn + "." + access.getNameAsString();
+                    }
+                } else if (!(access.getParentNode().orElse(null) instanceof FieldAccessExpr)
+                        && Character.isLowerCase(access.getNameAsString().charAt(0))) {
+                    fieldKey = resolveField(access, typeSolver);
+                }
+            }
+            if (fieldKey == null) {
+                continue;
+            }
+            if (accessorField != null && fieldKey.equals(classFqn + "." + accessorField)) {
+                continue;
+            }
+            accesses.merge(fieldKey, accessFlags((Expression) node), (a, b) -> a | b);
+        }
+        return accesses;
+    }
+
+    /**
+     * getter / setter 调用对应的字段：getX() / isX() 为读，setX(v) 为写；不是访问器时为 null
+     *
+     * @param classFqn 被调方法所在类
+     */
+    static FieldAccess accessorField(String classFqn, String methodName, int arity) {
+        String field = accessorFieldName(methodName, arity);
+        if (field == null) {
+            return null;
+        }
+        return new FieldAccess(classFqn + "." + field, methodName.startsWith("set") ? WRITE : READ);
+    }
+
+    /**
+     * 符号解析失败的 getter / setter 调用（例如 Lombok 生成的访问器没有源码）按接收者的类型推断字段
+     */
+    static FieldAccess unresolvedAccessorField(MethodCallExpr call, CombinedTypeSolver typeSolver) {
+        if (!call.getScope().isPresent()
+                || accessorFieldName(call.getNameAsString(), call.getArguments().size()) == null) {
+            return null;
+        }
+        try {
+            String type = JavaParserFacade.get(typeSolver).getType(call.getScope().get()).describe();
+            int generic = type.indexOf('<');
+            return accessorField(generic > 0 ? type.substring(0, generic) : type, call.getNameAsString(),
+                    call.getArguments().size());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static String accessName(int flags) {
+        if (flags == (READ | WRITE)) {
+            return "read-write";
+        }
+        return flags == WRITE ? "write" : "read";
+    }
+
+    private static String accessorFieldName(String methodName, int arity) {
+        String property = null;
+        if (arity == 0 && methodName.startsWith("get") && methodName.length() > 3) {
+            property = methodName.substring(3);
+        } else if (arity == 0 && methodName.startsWith("is") && methodName.length() > 2) {
+            property = methodName.substring(2);
+        } else if (arity == 1 && methodName.startsWith("set") && methodName.length() > 3) {
+            property = methodName.substring(3);
+        }
+        if (property == null || !Character.isUpperCase(property.charAt(0))) {
+            return null;
+        }
+        // JavaBean 规则：URL -> URL，Email -> email
+        if (property.length() > 1 && Character.isUpperCase(property.charAt(1))) {
+            return property;
+        }
+        return Character.toLowerCase(property.charAt(0)) + property.substring(1);
+    }
+
+    private static String resolveField(FieldAccessExpr access, CombinedTypeSolver typeSolver) {
+        try {
+            ResolvedValueDeclaration value = JavaParserFacade.get(typeSolver).solve(access)
+                    .getCorrespondingDeclaration();
+            if (!value.isField()) {
+                return null;
+            }
+            ResolvedFieldDeclaration field = value.asField();
+            Node declaration = field.toAst().orElse(null);
+            if (declaration instanceof FieldDeclaration ? ((FieldDeclaration) declaration).isFinal()
+                    : field.isStatic()) {
+                // final 字段不是可变状态；没有源码的字段只能看到 static，按常量处理
+                return null;
+            }
+            return field.declaringType().getQualifiedName() + "." + field.getName();
+        } catch (Exception e) {
+            // 解析失败（包名、类名、数组 length 等）不记录
+            return null;
+        }
+    }
+
+    /**
+     * 方法的参数、局部变量与 lambda 参数名：与字段同名时按遮蔽处理（不区分作用域，宁可漏记）
+     */
+    private static Set<String> localNames(MethodDeclaration method) {
+        Set<String> names = new HashSet<String>();
+        for (Parameter parameter : method.findAll(Parameter.class)) {
+            names.add(parameter.getNameAsString());
+        }
+        for (VariableDeclarator variable : method.findAll(VariableDeclarator.class)) {
+            names.add(variable.getNameAsString());
+        }
+        return names;
+    }
+
+    /**
+     * 赋值目标为写，x += 1、x++ 既读又写，其余为读
+     */
+    private static int accessFlags(Expression expr) {
+        Node parent = expr.getParentNode().orElse(null);
+        if (parent instanceof AssignExpr && ((AssignExpr) parent).getTarget() == expr) {
+            return ((AssignExpr) parent).getOperator() == AssignExpr.Operator.ASSIGN ? WRITE : READ | WRITE;
+        }
+        if (parent instanceof UnaryExpr) {
+            UnaryExpr.Operator op = ((UnaryExpr) parent).getOperator();
+            if (op == UnaryExpr.Operator.PREFIX_INCREMENT || op == UnaryExpr.Operator.PREFIX_DECREMENT
+                    || op == UnaryExpr.Operator.POSTFIX_INCREMENT || op == UnaryExpr.Operator.POSTFIX_DECREMENT) {
+                return READ | WRITE;
+            }
+        }
+        return READ;
+    }
+
+    private static String columnName(AnnotationExpr ann) {
+        if (ann instanceof NormalAnnotationExpr) {
+            for (MemberValuePair pair : ((NormalAnnotationExpr) ann).getPairs()) {
+                if ((pair.getNameAsString().equals("name") || pair.getNameAsString().equals("value"))
+                        && pair.getValue().isStringLiteralExpr()) {
+                    return pair.getValue().asStringLiteralExpr().asString();
+                }
+            }
+        } else if (ann instanceof SingleMemberAnnotationExpr
+                && ((SingleMemberAnnotationExpr) ann).getMemberValue().isStringLiteralExpr()) {
+            return ((SingleMemberAnnotationExpr) ann).getMemberValue().asStringLiteralExpr().asString();
+        }
+        return null;
+    }
+
+    private static String simpleName(AnnotationExpr ann) {
+        String name = ann.getNameAsString();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
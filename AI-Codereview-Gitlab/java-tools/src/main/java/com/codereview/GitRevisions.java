@@ -0,0 +1,164 @@
+package com.codereview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 读取仓库中文件的历史版本（git show &lt;ref&gt;:./&lt;path&gt;），用于与基线版本对比
+ */
+final class GitRevisions {
+
+    private static final long TIMEOUT_SECONDS = 30;
+    /** 读取 git 的标准输出与标准错误，主线程只等待进程结束，卡住的 git 能按超时结束 */
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(
+            ContextEngine.daemonThreads("git-output"));
+
+    private GitRevisions() {
+    }
+
+    /**
+     * 一次 git 命令的结果，标准输出与标准错误分开
+     */
+    private static final class Result {
+        final int exitValue;
+        final byte[] out;
+        final String err;
+
+        Result(int exitValue, byte[] out, String err) {
+            this.exitValue = exitValue;
+            this.out = out;
+            this.err = err;
+        }
+    }
+
+    /**
+     * 文件在 ref 上的内容；文件在该版本中不存在时为 null，git 不可用或 ref 无效时打印警告并返回 null
+     *
+     * @param path 相对仓库根目录（repo）的路径
+     */
+    static String show(File repo, String ref, String path) {
+        // ./ 前缀让路径相对于工作目录（repo）解析，repo 是 git 顶层目录的子目录时也正确
+        String spec = ref + ":./" + path.replace('\\', '/');
+        try {
+            Result result = git(repo, "show", spec);
+            if (result == null) {
+                System.err.println("警告: 读取基线版本超时: " + spec);
+                return null;
+            }
+            if (result.exitValue == 0) {
+                return new String(result.out, StandardCharsets.UTF_8);
+            }
+            // 文件在基线版本中不存在（新增文件）与 ref 无效都会返回非零，由调用方按“基线中没有”处理；
+            // 前者是正常情况，其他错误带上 git 的报错打印警告
+            if (!result.err.contains("does not exist") && !result.err.contains("exists on disk")) {
+                System.err.println("警告: 读取基线版本失败: " + spec + ", 原因: " + result.err.trim());
+            }
+            return null;
+        } catch (IOException e) {
+            System.err.println("警告: 读取基线版本失败: " + spec + ", 原因: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 当前 HEAD 的提交 id，不是 git 仓库或 git 不可用时为 null
+     */
+    static String head(File repo) {
+        try {
+            Result result = git(repo, "rev-parse", "--verify", "--quiet", "HEAD");
+            return result != null && result.exitValue == 0
+                    ? new String(result.out, StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * ref 是否能解析为提交
+     */
+    static boolean isValidRef(File repo, String ref) {
+        try {
+            Result result = git(repo, "rev-parse", "--verify", "--quiet", ref + "^{commit}");
+            return result != null && result.exitValue == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 在 repo 目录下运行 git；超时未结束时结束进程并返回 null
+     */
+    private static Result git(File repo, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        final Process process = new ProcessBuilder(command).directory(repo).start();
+        try {
+            process.getOutputStream().close();
+            Future<byte[]> out = READERS.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return readAll(process.getInputStream());
+                }
+            });
+            // 标准错误单独读掉，既不混进输出，也不会因管道写满卡住 git
+            Future<byte[]> err = READERS.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return readAll(process.getErrorStream());
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                return null;
+            }
+            return new Result(process.exitValue(), await(out, deadline),
+                    new String(await(err, deadline), StandardCharsets.UTF_8));
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future, long deadline) throws IOException, InterruptedException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("读取 git 输出超时");
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,242 @@
+package com.codereview;
+
+import com.codereview.ContextExtractor.QueryMethod;
+import com.codereview.ContextExtractor.QueryResult;
+
+import java.util.*;
+
+/**
+ * 调用图即席查询：callers（谁调用了某方法）、callees（某方法调用了谁）、paths（两组方法之间的调用路径）
+ * 直接在已建好的调用图上执行，不重新解析源码；结果按固定顺序排列，用 limit / offset 分页。
+ *
+ * 方法写法：
+ * - 完整 key：com.example.AuthUtil#checkUserAccess(Long,String)，省略参数时匹配所有重载
+ * - 类名 + 方法名：AuthUtil.checkUserAccess、com.example.AuthUtil.checkUserAccess，可带参数 AuthUtil.checkUserAccess(Long,String)
+ * - 只写方法名：checkUserAccess
+ * - @endpoint（HTTP 入口方法）、@test、@benchmark（需索引测试源码）
+ * 类名按调用解析到的声明类匹配：继承自框架接口、未在源码中声明的方法（如 JpaRepository.delete）要用声明它的类名。
+ */
+final class GraphQuery {
+
+    static final String CALLERS = "callers";
+    static final String CALLEES = "callees";
+    static final String PATHS = "paths";
+
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    private static final int DEFAULT_PATH_HOPS = 6;
+    private static final int MAX_HOPS = 12;
+
+    /**
+     * 查询参数，命令行与服务模式共用
+     */
+    static class Spec {
+        /** callers / callees / paths */
+        String kind;
+        /** callers / callees 的方法 */
+        String method;
+        /** paths 的起点与终点方法 */
+        String from;
+        String to;
+        /** callers / callees 的层数（默认 1），paths 的最大路径长度（默认 6） */
+        Integer hops;
+        /** 每页条数，默认 50，最多 1000 */
+        Integer limit;
+        /** 跳过的条数，默认 0 */
+        Integer offset;
+    }
+
+    private GraphQuery() {
+    }
+
+    static QueryResult run(CallGraph graph, Spec spec) {
+        if (spec == null || spec.kind == null) {
+            throw new IllegalArgumentException("缺少查询类型 kind（callers / callees / paths）");
+        }
+        QueryResult result = new QueryResult();
+        result.kind = spec.kind;
+        result.limit = Math.max(1, Math.min(MAX_LIMIT, spec.limit == null ? DEFAULT_LIMIT : spec.limit));
+        result.offset = Math.max(0, spec.offset == null ? 0 : spec.offset);
+        if (CALLERS.equals(spec.kind) || CALLEES.equals(spec.kind)) {
+            if (spec.method == null) {
+                throw new IllegalArgumentException("缺少 method");
+            }
+            result.matched = match(graph, spec.method);
+            neighbours(graph, result, CALLERS.equals(spec.kind), clampHops(spec.hops, 1));
+        } else if (PATHS.equals(spec.kind)) {
+            if (spec.from == null || spec.to == null) {
+                throw new IllegalArgumentException("缺少 from / to");
+            }
+            result.matched = match(graph, spec.from);
+            result.matchedTargets = match(graph, spec.to);
+            paths(graph, result, clampHops(spec.hops, DEFAULT_PATH_HOPS));
+        } else {
+            throw new IllegalArgumentException("未知的查询类型: " + spec.kind);
+        }
+        return result;
+    }
+
+    /**
+     * 按写法匹配图中的方法，按 key 排序
+     */
+    static List<String> match(CallGraph graph, String pattern) {
+        String p = pattern.replace(" ", "");
+        if (p.equals("@endpoint") || p.equals("@test") || p.equals("@benchmark")) {
+            String kind = p.substring(1);
+            List<String> roots = new ArrayList<String>();
+            for (String key : graph.methodKeys()) {
+                if (kind.equals("endpoint") ? graph.isEndpoint(key) : kind.equals(graph.testRootKind(key))) {
+                    roots.add(key);
+                }
+            }
+            Collections.sort(roots);
+            return roots;
+        }
+
+        String classPart;
+        String name;
+        String params = null;
+        int paren = p.indexOf('(');
+        String head = paren < 0 ? p : p.substring(0, paren);
+        if (paren >= 0) {
+            params = p.substring(paren);
+        }
+        int hash = head.indexOf('#');
+        int dot = head.lastIndexOf('.');
+        if (hash >= 0) {
+            classPart = head.substring(0, hash);
+            name = head.substring(hash + 1);
+        } else if (dot >= 0) {
+            classPart = head.substring(0, dot);
+            name = head.substring(dot + 1);
+        } else {
+            classPart = null;
+            name = head;
+        }
+
+        List<String> matched = new ArrayList<String>();
+        for (String key : graph.allMethodKeys()) {
+            if (!MethodKeys.nameOf(key).equals(name)) {
+                continue;
+            }
+            String cls = MethodKeys.classOf(key);
+            if (classPart != null && !cls.equals(classPart) && !(hash < 0 && cls.endsWith("." + classPart))) {
+                continue;
+            }
+            if (params != null && !MethodKeys.signatureOf(key).equals(name + params)) {
+                continue;
+            }
+            matched.add(key);
+        }
+        Collections.sort(matched);
+        return matched;
+    }
+
+    /**
+     * 逐层 BFS，层内按 key 排序；起点本身不计入结果
+     */
+    private static void neighbours(CallGraph graph, QueryResult result, boolean upward, int hops) {
+        Set<String> visited = new HashSet<String>(result.matched);
+        List<QueryMethod> found = new ArrayList<QueryMethod>();
+        List<String> frontier = result.matched;
+        for (int d = 1; d <= hops && !frontier.isEmpty(); d++) {
+            SortedSet<String> next = new TreeSet<String>();
+            for (String key : frontier) {
+                for (String n : upward ? graph.callers(key) : graph.callees(key)) {
+                    if (visited.add(n)) {
+                        next.add(n);
+                    }
+                }
+            }
+            for (String key : next) {
+                found.add(method(graph, key, d));
+            }
+            frontier = new ArrayList<String>(next);
+        }
+        result.total = found.size();
+        int from = Math.min(result.offset, found.size());
+        int to = Math.min(from + result.limit, found.size());
+        result.methods = new ArrayList<QueryMethod>(found.subList(from, to));
+        result.hasMore = to < found.size();
+    }
+
+    /**
+     * 枚举起点到终点、长度不超过 maxHops 的简单路径（路径在到达终点时结束，起点本身是终点时不算一条路径）。
+     * 先从终点反向 BFS 求出各方法到终点的最短距离，DFS 只走还能在剩余层数内到达终点的方法，
+     * 因此每一步都会产生路径；枚举到 offset + limit + 1 条即停止，不计算总数。
+     */
+    private static void paths(CallGraph graph, QueryResult result, int maxHops) {
+        Set<String> targets = new HashSet<String>(result.matchedTargets);
+        Map<String, Integer> distance = new HashMap<String, Integer>();
+        List<String> frontier = new ArrayList<String>(targets);
+        for (String target : targets) {
+            distance.put(target, 0);
+        }
+        for (int d = 1; d <= maxHops && !frontier.isEmpty(); d++) {
+            List<String> next = new ArrayList<String>();
+            for (String key : frontier) {
+                for (String caller : graph.callers(key)) {
+                    if (!distance.containsKey(caller)) {
+                        distance.put(caller, d);
+                        next.add(caller);
+                    }
+                }
+            }
+            frontier = next;
+        }
+
+        List<List<String>> found = new ArrayList<List<String>>();
+        int wanted = result.offset + result.limit + 1;
+        Deque<String> path = new ArrayDeque<String>();
+        for (String source : result.matched) {
+            Integer d = distance.get(source);
+            if (d == null || found.size() >= wanted) {
+                continue;
+            }
+            path.addLast(source);
+            dfs(graph, source, targets, distance, maxHops, path, new HashSet<String>(path), found, wanted);
+            path.removeLast();
+        }
+        int from = Math.min(result.offset, found.size());
+        int to = Math.min(from + result.limit, found.size());
+        result.paths = new ArrayList<List<String>>(found.subList(from, to));
+        result.hasMore = found.size() > to;
+    }
+
+    private static void dfs(CallGraph graph, String node, Set<String> targets, Map<String, Integer> distance,
+                            int maxHops, Deque<String> path, Set<String> onPath, List<List<String>> found,
+                            int wanted) {
+        int length = path.size() - 1;
+        for (String callee : new TreeSet<String>(graph.callees(node))) {
+            if (found.size() >= wanted) {
+                return;
+            }
+            Integer d = distance.get(callee);
+            if (d == null || onPath.contains(callee) || length + 1 + d > maxHops) {
+                continue;
+            }
+            path.addLast(callee);
+            if (targets.contains(callee)) {
+                found.add(new ArrayList<String>(path));
+            } else {
+                onPath.add(callee);
+                dfs(graph, callee, targets, distance, maxHops, path, onPath, found, wanted);
+                onPath.remove(callee);
+            }
+            path.removeLast();
+        }
+    }
+
+    private static QueryMethod method(CallGraph graph, String key, int hops) {
+        QueryMethod method = new QueryMethod();
+        method.method = key;
+        method.display = MethodKeys.format(key);
+        method.hops = hops;
+        method.file = graph.fileOf(key);
+        return method;
+    }
+
+    private static int clampHops(Integer hops, int defaultHops) {
+        return Math.max(1, Math.min(MAX_HOPS, hops == null ? defaultHops : hops));
+    }
+}
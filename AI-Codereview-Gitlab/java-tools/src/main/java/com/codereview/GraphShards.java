@@ -0,0 +1,348 @@
+package com.codereview;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 按源码目录（约等于包）分片持久化的方法级调用图
+ * 每个分片保存一个目录中源文件的调用图片段（调用边、指纹、隐患、字段读写等，见 CallGraph.ModuleGraph），
+ * 清单（manifest）中为每个分片保存源文件签名与两个 Bloom filter：定义的方法 / 字段 key，以及引用的方法 / 字段 key。
+ * 查询时只加载 filter 命中 BFS 边界的分片，内存与评审涉及的部分成正比而不是与仓库大小成正比。
+ * 实例不可变：重建分片后由 update 得到新实例，正在使用旧实例的请求不受影响。
+ */
+final class GraphShards {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String MANIFEST = "manifest.gz";
+
+    /**
+     * 单个分片的清单项
+     */
+    static final class Shard {
+        /** 源码目录，相对仓库根目录 */
+        final String dir;
+        final String module;
+        /** 目录中源文件的签名（文件名、大小、修改时间），变化时重建分片 */
+        final long signature;
+        final int methodCount;
+        /** 分片中定义的方法、状态字段与实体字段 */
+        final BloomFilter defines;
+        /** 分片中的方法调用的方法、读写的字段 */
+        final BloomFilter references;
+
+        Shard(String dir, String module, long signature, int methodCount, BloomFilter defines,
+              BloomFilter references) {
+            this.dir = dir;
+            this.module = module;
+            this.signature = signature;
+            this.methodCount = methodCount;
+            this.defines = defines;
+            this.references = references;
+        }
+    }
+
+    private final File storeDir;
+    /** 目录 -> 分片 */
+    private final Map<String, Shard> shards;
+
+    private GraphShards(File storeDir, Map<String, Shard> shards) {
+        this.storeDir = storeDir;
+        this.shards = shards;
+    }
+
+    /**
+     * 打开分片存储；清单不存在、版本不一致或已损坏时返回空存储（全部分片按过期重建）
+     */
+    static GraphShards open(File storeDir) {
+        Map<String, Shard> shards = new TreeMap<String, Shard>();
+        File manifest = new File(storeDir, MANIFEST);
+        if (manifest.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(manifest))))) {
+                if (in.readInt() == FORMAT_VERSION) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String dir = in.readUTF();
+                        shards.put(dir, new Shard(dir, in.readUTF(), in.readLong(), in.readInt(),
+                                BloomFilter.read(in), BloomFilter.read(in)));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("警告: 读取调用图分片清单失败，全部重建: " + manifest.getAbsolutePath()
+                        + ", 原因: " + e.getMessage());
+                shards.clear();
+            }
+        }
+        return new GraphShards(storeDir, shards);
+    }
+
+    Shard shard(String dir) {
+        return shards.get(dir);
+    }
+
+    Collection<Shard> shards() {
+        return shards.values();
+    }
+
+    int methodCount() {
+        int total = 0;
+        for (Shard shard : shards.values()) {
+            total += shard.methodCount;
+        }
+        return total;
+    }
+
+    /**
+     * 合并重建的分片、去掉已删除目录的分片，写入新清单
+     */
+    GraphShards update(Map<String, Shard> rebuilt, Set<String> removedDirs) {
+        Map<String, Shard> merged = new TreeMap<String, Shard>(shards);
+        merged.putAll(rebuilt);
+        for (String dir : removedDirs) {
+            merged.remove(dir);
+            new File(storeDir, fileName(dir)).delete();
+        }
+        try {
+            writeAtomically(new File(storeDir, MANIFEST), out -> {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(merged.size());
+                for (Shard shard : merged.values()) {
+                    out.writeUTF(shard.dir);
+                    out.writeUTF(shard.module);
+                    out.writeLong(shard.signature);
+                    out.writeInt(shard.methodCount);
+                    shard.defines.write(out);
+                    shard.references.write(out);
+                }
+            });
+        } catch (IOException e) {
+            // 清单没写成功时下次打开会重建这些分片，本进程内照常使用
+            System.err.println("警告: 写入调用图分片清单失败: " + storeDir.getAbsolutePath() + ", 原因: " + e.getMessage());
+        }
+        return new GraphShards(storeDir, merged);
+    }
+
+    /**
+     * 写入一个目录的分片文件（不同目录可以并发写），返回其清单项
+     */
+    static Shard write(File storeDir, String dir, String module, long signature, CallGraph.ModuleGraph graph)
+            throws IOException {
+        Set<String> defined = definedKeys(graph);
+        BloomFilter defines = BloomFilter.forCapacity(defined.size());
+        for (String key : defined) {
+            defines.add(key);
+        }
+        Set<String> referenced = new HashSet<String>();
+        for (Set<String> callees : graph.down.values()) {
+            referenced.addAll(callees);
+        }
+        for (Map<String, Integer> fields : graph.fieldAccesses.values()) {
+            referenced.addAll(fields.keySet());
+        }
+        BloomFilter references = BloomFilter.forCapacity(referenced.size());
+        for (String key : referenced) {
+            references.add(key);
+        }
+
+        // 字符串表 + 按下标引用的正文：方法 key 在各部分中反复出现，只写一次
+        final Map<String, Integer> table = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(graph.methodToFile.size());
+        for (Map.Entry<String, String> e : graph.methodToFile.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeInt(id(table, e.getValue()));
+        }
+        out.writeInt(graph.down.size());
+        for (Map.Entry<String, Set<String>> e : graph.down.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeInt(e.getValue().size());
+            for (String callee : e.getValue()) {
+                out.writeInt(id(table, callee));
+            }
+        }
+        out.writeInt(graph.fingerprints.size());
+        for (Map.Entry<String, Long> e : graph.fingerprints.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeLong(e.getValue());
+        }
+        writeKeys(out, table, graph.endpoints);
+        writeKeys(out, table, graph.dataAccessClasses);
+        out.writeInt(graph.testRoots.size());
+        for (Map.Entry<String, String> e : graph.testRoots.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeInt(id(table, e.getValue()));
+        }
+        out.writeInt(graph.hazards.size());
+        for (Map.Entry<String, Integer> e : graph.hazards.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeInt(e.getValue());
+        }
+        out.writeInt(graph.fieldAccesses.size());
+        for (Map.Entry<String, Map<String, Integer>> e : graph.fieldAccesses.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeInt(e.getValue().size());
+            for (Map.Entry<String, Integer> access : e.getValue().entrySet()) {
+                out.writeInt(id(table, access.getKey()));
+                out.writeInt(access.getValue());
+            }
+        }
+        out.writeInt(graph.stateFields.size());
+        for (Map.Entry<String, Set<String>> e : graph.stateFields.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            writeKeys(out, table, e.getValue());
+        }
+        out.writeInt(graph.fieldColumns.size());
+        for (Map.Entry<String, String> e : graph.fieldColumns.entrySet()) {
+            out.writeInt(id(table, e.getKey()));
+            out.writeInt(id(table, e.getValue()));
+        }
+        out.flush();
+
+        writeAtomically(new File(storeDir, fileName(dir)), file -> {
+            file.writeInt(FORMAT_VERSION);
+            file.writeUTF(dir);
+            file.writeInt(table.size());
+            for (String s : table.keySet()) {
+                file.writeUTF(s);
+            }
+            body.writeTo(file);
+        });
+        return new Shard(dir, module, signature, graph.methodToFile.size(), defines, references);
+    }
+
+    /**
+     * 图片段中定义的方法、状态字段与实体字段，即清单中 defines filter 的内容
+     */
+    static Set<String> definedKeys(CallGraph.ModuleGraph graph) {
+        Set<String> keys = new HashSet<String>(graph.methodToFile.keySet());
+        for (Map.Entry<String, Set<String>> e : graph.stateFields.entrySet()) {
+            for (String field : e.getValue()) {
+                keys.add(e.getKey() + "." + field);
+            }
+        }
+        keys.addAll(graph.fieldColumns.keySet());
+        return keys;
+    }
+
+    /**
+     * 把分片的内容合并进 target
+     */
+    void load(Shard shard, CallGraph.ModuleGraph target) throws IOException {
+        File file = new File(storeDir, fileName(shard.dir));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(shard.dir)) {
+                throw new IOException("分片文件与清单不一致: " + file.getAbsolutePath());
+            }
+            String[] table = new String[in.readInt()];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = in.readUTF();
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                target.methodToFile.put(table[in.readInt()], table[in.readInt()]);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String from = table[in.readInt()];
+                for (int j = in.readInt(); j > 0; j--) {
+                    target.addEdge(from, table[in.readInt()]);
+                }
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                target.fingerprints.put(table[in.readInt()], in.readLong());
+            }
+            readKeys(in, table, target.endpoints);
+            readKeys(in, table, target.dataAccessClasses);
+            for (int i = in.readInt(); i > 0; i--) {
+                target.testRoots.put(table[in.readInt()], table[in.readInt()]);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                target.hazards.put(table[in.readInt()], in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String method = table[in.readInt()];
+                for (int j = in.readInt(); j > 0; j--) {
+                    target.addFieldAccess(method, table[in.readInt()], in.readInt());
+                }
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                Set<String> fields = new HashSet<String>();
+                target.stateFields.put(table[in.readInt()], fields);
+                readKeys(in, table, fields);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                target.fieldColumns.put(table[in.readInt()], table[in.readInt()]);
+            }
+        }
+    }
+
+    /**
+     * 目录中源文件的签名：文件名、大小与修改时间（git checkout 会更新被改文件的修改时间）
+     */
+    static long signature(List<Path> files) throws IOException {
+        long h = FORMAT_VERSION;
+        for (Path file : files) {
+            h = h * 31 + BloomFilter.hash64(file.getFileName().toString());
+            h = h * 31 + Files.size(file);
+            h = h * 31 + Files.getLastModifiedTime(file).toMillis();
+        }
+        return h;
+    }
+
+    private static String fileName(String dir) {
+        return Long.toHexString(BloomFilter.hash64(dir)) + ".shard.gz";
+    }
+
+    private static int id(Map<String, Integer> table, String s) {
+        Integer id = table.get(s);
+        if (id == null) {
+            id = table.size();
+            table.put(s, id);
+        }
+        return id;
+    }
+
+    private static void writeKeys(DataOutputStream out, Map<String, Integer> table, Collection<String> keys)
+            throws IOException {
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            out.writeInt(id(table, key));
+        }
+    }
+
+    private static void readKeys(DataInputStream in, String[] table, Collection<String> keys) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            keys.add(table[in.readInt()]);
+        }
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 先写临时文件再原子改名，多个进程共用存储目录时不会读到半截文件
+     */
+    private static void writeAtomically(File target, Writer writer) throws IOException {
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建目录: " + dir.getAbsolutePath());
+        }
+        File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                writer.write(out);
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
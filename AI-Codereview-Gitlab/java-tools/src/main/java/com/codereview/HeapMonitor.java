@@ -0,0 +1,155 @@
+package com.codereview;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆内存监控：监听 GC 通知，记录每次 GC 后堆上仍存活的字节数的峰值（近似“峰值保留大小”）
+ * 内存池的峰值计数是 JVM 全局的：只有当前没有其他监控在运行时才重置；
+ * 监控期间有其他监控（并发的请求）开始时，双方都标记为共享，峰值包含对方的内存。
+ */
+class HeapMonitor implements NotificationListener {
+
+    /** 正在运行的监控 */
+    private static final Set<HeapMonitor> RUNNING = new HashSet<HeapMonitor>();
+
+    private final AtomicLong peakRetained = new AtomicLong();
+    /** 监控期间有其他监控在运行 */
+    private volatile boolean shared;
+    private final Set<String> heapPools = new HashSet<String>();
+    private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+    private HeapMonitor() {
+    }
+
+    static HeapMonitor start() {
+        HeapMonitor monitor = new HeapMonitor();
+        boolean alone;
+        synchronized (RUNNING) {
+            alone = RUNNING.isEmpty();
+            for (HeapMonitor other : RUNNING) {
+                other.shared = true;
+            }
+            monitor.shared = !alone;
+            RUNNING.add(monitor);
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                monitor.heapPools.add(pool.getName());
+                if (alone) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(monitor, null, null);
+                monitor.emitters.add((NotificationEmitter) gc);
+            }
+        }
+        return monitor;
+    }
+
+    void stop() {
+        synchronized (RUNNING) {
+            RUNNING.remove(this);
+        }
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // 已经移除
+            }
+        }
+        emitters.clear();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long retained = 0;
+        for (Map.Entry<String, MemoryUsage> e : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            if (heapPools.contains(e.getKey())) {
+                retained += e.getValue().getUsed();
+            }
+        }
+        updatePeak(retained);
+    }
+
+    /**
+     * 监控期间有其他监控（并发的请求）在运行：峰值包含它们的内存，已用峰值也没有在本次开始时重置
+     */
+    boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * GC 后存活字节数的峰值；还没有发生过 GC 时用当前已用堆大小代替
+     */
+    long getPeakRetainedBytes() {
+        if (peakRetained.get() == 0) {
+            return currentUsedBytes();
+        }
+        return peakRetained.get();
+    }
+
+    /**
+     * 各堆内存池已用大小峰值之和（含尚未回收的垃圾，是保留大小的上界）
+     */
+    long getPeakUsedBytes() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                used += pool.getPeakUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * 最近一次 GC 后各堆内存池存活字节数之和
+     */
+    static long lastRetainedBytes() {
+        long retained = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                retained += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return retained;
+    }
+
+    private static long currentUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void updatePeak(long retained) {
+        long current;
+        do {
+            current = peakRetained.get();
+            if (retained <= current) {
+                return;
+            }
+        } while (!peakRetained.compareAndSet(current, retained));
+    }
+}
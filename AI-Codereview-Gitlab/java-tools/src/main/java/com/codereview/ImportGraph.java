@@ -0,0 +1,244 @@
+package com.codereview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 文件级依赖图（轻量层）
+ * 只根据 import 语句、同包类型引用以及 extends / implements 建立文件之间的依赖关系，
+ * 纯文本扫描，不做 JavaParser 解析和符号解析，大仓库也能在毫秒级给出相关文件。
+ */
+class ImportGraph {
+
+    private static final Pattern PACKAGE = Pattern.compile("\\bpackage\\s+([\\w.]+)\\s*;");
+    private static final Pattern IMPORT = Pattern.compile("\\bimport\\s+(static\\s+)?([\\w.]+?)(\\.\\*)?\\s*;");
+    private static final Pattern TYPE_DECL = Pattern.compile("\\b(?:class|interface|enum|record)\\s+([A-Za-z_$][\\w$]*)");
+    private static final Pattern TYPE_REF = Pattern.compile("\\b[A-Z][\\w$]*\\b");
+
+    /** 类型全限定名 -> 文件（相对仓库根目录） */
+    private final Map<String, String> typeToFile = new HashMap<String, String>();
+    /** 包名 -> 包内声明的类型简单名 */
+    private final Map<String, Set<String>> packageTypes = new HashMap<String, Set<String>>();
+    /** 文件 -> 依赖的文件 */
+    private final Map<String, Set<String>> dependsOn = new HashMap<String, Set<String>>();
+    /** 文件 -> 依赖它的文件 */
+    private final Map<String, Set<String>> dependedBy = new HashMap<String, Set<String>>();
+
+    private ImportGraph() {
+    }
+
+    /**
+     * 扫描布局中的全部源码目录建图
+     */
+    static ImportGraph build(ProjectLayout layout) {
+        ImportGraph graph = new ImportGraph();
+        Path repoRoot = layout.repoRoot.toPath();
+        List<FileFacts> files = new ArrayList<FileFacts>();
+
+        // 第一遍：收集每个文件的包名、声明的类型、import 与引用的类型名
+        for (File root : layout.allSourceRoots()) {
+            try (Stream<Path> walk = Files.walk(root.toPath())) {
+                walk.filter(p -> p.toString().endsWith(".java")).sorted().forEach(p -> {
+                    FileFacts facts = scan(p, repoRoot.relativize(p).toString().replace("\\", "/"));
+                    if (facts != null) {
+                        files.add(facts);
+                    }
+                });
+            } catch (IOException e) {
+                // 单个源码目录扫描失败不影响整体
+            }
+        }
+        for (FileFacts facts : files) {
+            Set<String> types = graph.packageTypes.computeIfAbsent(facts.packageName, k -> new HashSet<String>());
+            for (String type : facts.declaredTypes) {
+                types.add(type);
+                graph.typeToFile.putIfAbsent(qualify(facts.packageName, type), facts.path);
+            }
+        }
+
+        // 第二遍：把 import / 同包引用映射到文件
+        for (FileFacts facts : files) {
+            Set<String> targets = new LinkedHashSet<String>();
+            Set<String> explicitlyImported = new HashSet<String>();
+            for (String imported : facts.singleImports) {
+                String file = graph.findTypeFile(imported);
+                if (file != null) {
+                    targets.add(file);
+                }
+                explicitlyImported.add(imported.substring(imported.lastIndexOf('.') + 1));
+            }
+            for (String ref : facts.referencedTypes) {
+                if (explicitlyImported.contains(ref) || facts.declaredTypes.contains(ref)) {
+                    continue;
+                }
+                // 同包引用（extends / implements 也在此列）
+                Set<String> samePackage = graph.packageTypes.get(facts.packageName);
+                if (samePackage != null && samePackage.contains(ref)) {
+                    targets.add(graph.typeToFile.get(qualify(facts.packageName, ref)));
+                    continue;
+                }
+                // 通配符 import 的包
+                for (String pkg : facts.wildcardImports) {
+                    String file = graph.typeToFile.get(qualify(pkg, ref));
+                    if (file != null) {
+                        targets.add(file);
+                        break;
+                    }
+                }
+            }
+            targets.remove(facts.path);
+            targets.remove(null);
+            graph.dependsOn.put(facts.path, targets);
+            for (String target : targets) {
+                graph.dependedBy.computeIfAbsent(target, k -> new LinkedHashSet<String>()).add(facts.path);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * 从给定文件出发，沿依赖 / 被依赖两个方向各追踪 depth 层，按层数由近到远返回相关文件
+     */
+    List<String> relatedFiles(String path, int depth) {
+        List<String> related = new ArrayList<String>();
+        Set<String> visited = new HashSet<String>();
+        visited.add(path);
+        List<String> frontier = Collections.singletonList(path);
+        for (int d = 0; d < depth && !frontier.isEmpty(); d++) {
+            List<String> next = new ArrayList<String>();
+            for (String file : frontier) {
+                for (Map<String, Set<String>> edges : Arrays.asList(dependsOn, dependedBy)) {
+                    Set<String> neighbours = edges.get(file);
+                    if (neighbours == null) {
+                        continue;
+                    }
+                    for (String n : neighbours) {
+                        if (visited.add(n)) {
+                            next.add(n);
+                            related.add(n);
+                        }
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return related;
+    }
+
+    int fileCount() {
+        return dependsOn.size();
+    }
+
+    /**
+     * import 的可能是内部类（a.b.Outer.Inner）或静态成员（a.b.Util.method），逐级去掉末段查找
+     */
+    private String findTypeFile(String name) {
+        String candidate = name;
+        while (candidate.contains(".")) {
+            String file = typeToFile.get(candidate);
+            if (file != null) {
+                return file;
+            }
+            candidate = candidate.substring(0, candidate.lastIndexOf('.'));
+        }
+        return null;
+    }
+
+    private static String qualify(String packageName, String type) {
+        return packageName.isEmpty() ? type : packageName + "." + type;
+    }
+
+    private static FileFacts scan(Path file, String relativePath) {
+        String text;
+        try {
+            text = stripCommentsAndLiterals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return null;
+        }
+        FileFacts facts = new FileFacts();
+        facts.path = relativePath;
+        Matcher pkg = PACKAGE.matcher(text);
+        facts.packageName = pkg.find() ? pkg.group(1) : "";
+
+        Matcher imports = IMPORT.matcher(text);
+        int bodyStart = 0;
+        while (imports.find()) {
+            if (imports.group(3) != null && imports.group(1) == null) {
+                facts.wildcardImports.add(imports.group(2));
+            } else {
+                facts.singleImports.add(imports.group(2));
+            }
+            bodyStart = imports.end();
+        }
+        Matcher decls = TYPE_DECL.matcher(text);
+        while (decls.find()) {
+            facts.declaredTypes.add(decls.group(1));
+        }
+        Matcher refs = TYPE_REF.matcher(text);
+        refs.region(bodyStart, text.length());
+        while (refs.find()) {
+            facts.referencedTypes.add(refs.group());
+        }
+        return facts;
+    }
+
+    /**
+     * 去掉注释、字符串与字符字面量，避免其中的单词被误当成类型引用
+     */
+    static String stripCommentsAndLiterals(String src) {
+        StringBuilder sb = new StringBuilder(src.length());
+        int i = 0;
+        int n = src.length();
+        while (i < n) {
+            char c = src.charAt(i);
+            if (c == '/' && i + 1 < n && src.charAt(i + 1) == '/') {
+                while (i < n && src.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && src.charAt(i + 1) == '*') {
+                int end = src.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                sb.append(' ');
+            } else if (c == '"' || c == '\'') {
+                // 文本块 """ ... """
+                if (c == '"' && src.startsWith("\"\"\"", i)) {
+                    int end = src.indexOf("\"\"\"", i + 3);
+                    i = end < 0 ? n : end + 3;
+                } else {
+                    i++;
+                    while (i < n && src.charAt(i) != c && src.charAt(i) != '\n') {
+                        if (src.charAt(i) == '\\') {
+                            i++;
+                        }
+                        i++;
+                    }
+                    i++;
+                }
+                sb.append(' ');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单个文件的文本扫描结果
+     */
+    private static class FileFacts {
+        String path;
+        String packageName;
+        Set<String> declaredTypes = new LinkedHashSet<String>();
+        List<String> singleImports = new ArrayList<String>();
+        List<String> wildcardImports = new ArrayList<String>();
+        Set<String> referencedTypes = new LinkedHashSet<String>();
+    }
+}
@@ -0,0 +1,119 @@
+package com.codereview;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.resolution.Navigator;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 基于 DeclarationIndex 的源码类型解析器，替代按目录逐个源码根探测的 JavaParserTypeSolver
+ * JavaParserTypeSolver 对每个候选名字按包路径探测文件，找不到时还会解析整个目录里的文件；
+ * 这里先查索引，未命中直接返回 unsolved，不访问磁盘。命中时才解析声明所在的文件（LRU 缓存），
+ * 同一文件里的多个类型共用一次解析。与 JavaParserTypeSolver 一样不是线程安全的，每个线程各用一个。
+ */
+class IndexedSourceTypeSolver implements TypeSolver {
+
+    private final DeclarationIndex index;
+    /** 可见的源码目录（模块自身及其依赖模块），为 null 时索引中的全部类型可见 */
+    private final List<Path> visibleRoots;
+    private final JavaParser parser = new JavaParser(new ParserConfiguration());
+    private final Map<Path, Optional<CompilationUnit>> parsedFiles;
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> foundTypes;
+    private TypeSolver parent;
+
+    /**
+     * @param sourceRoots 可见的源码目录，为 null 时不限制
+     * @param cacheSize   解析缓存的文件数上限（LRU 淘汰），-1 表示不限制
+     */
+    IndexedSourceTypeSolver(DeclarationIndex index, List<File> sourceRoots, long cacheSize) {
+        this.index = index;
+        if (sourceRoots == null) {
+            this.visibleRoots = null;
+        } else {
+            this.visibleRoots = new ArrayList<Path>();
+            for (File root : sourceRoots) {
+                visibleRoots.add(root.toPath());
+            }
+        }
+        this.parsedFiles = lruCache(cacheSize);
+        this.foundTypes = lruCache(cacheSize);
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        SymbolReference<ResolvedReferenceTypeDeclaration> found = foundTypes.get(name);
+        if (found != null) {
+            return found;
+        }
+        DeclarationIndex.Declaration declaration = index.find(name, visibleRoots);
+        if (declaration == null) {
+            // 未命中不缓存：查索引本身就是一次哈希查找
+            return SymbolReference.unsolved();
+        }
+        Optional<CompilationUnit> cu = parse(declaration.file);
+        Optional<TypeDeclaration<?>> type = cu.isPresent()
+                ? Navigator.findType(cu.get(), declaration.typePath) : Optional.<TypeDeclaration<?>>empty();
+        found = type.isPresent()
+                ? SymbolReference.solved(JavaParserFacade.get(this).getTypeDeclaration(type.get()))
+                : SymbolReference.<ResolvedReferenceTypeDeclaration>unsolved();
+        foundTypes.put(name, found);
+        return found;
+    }
+
+    private Optional<CompilationUnit> parse(Path file) {
+        Optional<CompilationUnit> cu = parsedFiles.get(file);
+        if (cu == null) {
+            try {
+                // parse(Path) 会记录 storage，调用图据此得到被调方法的源文件
+                cu = parser.parse(file).getResult();
+            } catch (IOException e) {
+                cu = Optional.empty();
+            }
+            parsedFiles.put(file, cu);
+        }
+        return cu;
+    }
+
+    private static <K, V> Map<K, V> lruCache(final long maxSize) {
+        if (maxSize <= 0) {
+            return new HashMap<K, V>();
+        }
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedSourceTypeSolver{" + (visibleRoots == null ? "all" : visibleRoots.size()) + " roots}";
+    }
+}
@@ -0,0 +1,143 @@
+package com.codereview;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 文件内容的词法预筛：用 Aho-Corasick 自动机在文件字节上一次扫描匹配一组标识符，
+ * 只有出现了某个完整标识符（前后不是标识符字符）的文件才值得交给 JavaParser 解析。
+ * 标识符只含 ASCII 字符，直接按 UTF-8 字节匹配，无需解码。
+ */
+class LexicalPrefilter {
+
+    /** 超过该大小的文件用内存映射读取，小文件直接读入堆内更快 */
+    private static final int MMAP_THRESHOLD = 16 * 1024;
+
+    /** 状态转移表：goTo[state][byte] -> next state（已按失败链补全为 DFA） */
+    private final int[][] goTo;
+    /** 状态 -> 在该状态结束的所有标识符长度（含失败链上的），空数组表示非终止状态 */
+    private final int[][] outputs;
+
+    private LexicalPrefilter(int[][] goTo, int[][] outputs) {
+        this.goTo = goTo;
+        this.outputs = outputs;
+    }
+
+    static LexicalPrefilter of(Collection<String> identifiers) {
+        List<int[]> trie = new ArrayList<int[]>();
+        List<Set<Integer>> lengths = new ArrayList<Set<Integer>>();
+        trie.add(newState());
+        lengths.add(new HashSet<Integer>());
+        for (String id : identifiers) {
+            byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length == 0) {
+                continue;
+            }
+            int state = 0;
+            for (byte b : bytes) {
+                int c = b & 0xff;
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    lengths.add(new HashSet<Integer>());
+                }
+                state = trie.get(state)[c];
+            }
+            lengths.get(state).add(bytes.length);
+        }
+
+        // BFS 计算失败链，并把缺失的转移补成 DFA
+        int[] fail = new int[trie.size()];
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int c = 0; c < 256; c++) {
+            int next = trie.get(0)[c];
+            if (next < 0) {
+                trie.get(0)[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            lengths.get(state).addAll(lengths.get(fail[state]));
+            for (int c = 0; c < 256; c++) {
+                int next = trie.get(state)[c];
+                if (next < 0) {
+                    trie.get(state)[c] = trie.get(fail[state])[c];
+                } else {
+                    fail[next] = trie.get(fail[state])[c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        int[][] goTo = trie.toArray(new int[trie.size()][]);
+        int[][] outputs = new int[trie.size()][];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = new int[lengths.get(i).size()];
+            int j = 0;
+            for (int len : lengths.get(i)) {
+                outputs[i][j++] = len;
+            }
+        }
+        return new LexicalPrefilter(goTo, outputs);
+    }
+
+    private static int[] newState() {
+        int[] state = new int[256];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    boolean matches(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return false;
+            }
+            ByteBuffer buffer;
+            if (size > MMAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                    // 读满为止
+                }
+                buffer.flip();
+            }
+            return matches(buffer);
+        }
+    }
+
+    /**
+     * 是否包含任一完整标识符（前后字节都不是标识符字符）
+     */
+    boolean matches(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int state = 0;
+        for (int i = buffer.position(); i < limit; i++) {
+            state = goTo[state][buffer.get(i) & 0xff];
+            for (int len : outputs[state]) {
+                int start = i - len + 1;
+                boolean startOk = start == 0 || !isIdentifierByte(buffer.get(start - 1));
+                boolean endOk = i + 1 >= limit || !isIdentifierByte(buffer.get(i + 1));
+                if (startOk && endOk) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierByte(byte b) {
+        int c = b & 0xff;
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '$' || c >= 0x80;
+    }
+}
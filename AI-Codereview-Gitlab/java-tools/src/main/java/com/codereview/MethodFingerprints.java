@@ -0,0 +1,67 @@
+package com.codereview;
+
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.printer.DefaultPrettyPrinter;
+import com.github.javaparser.printer.configuration.DefaultConfigurationOption;
+import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration;
+import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration.ConfigOption;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * 方法指纹，供上层按指纹缓存审查结果、跳过未变化方法的重复审查
+ * - 方法指纹：不含注释的 AST 按统一格式打印后取哈希，只改空白、注释、换行缩进时不变
+ * - 依赖指纹：方法指纹与向下 N 层被调方法的指纹合并后取哈希，被调方法有实质改动时随之变化
+ * 指纹为 SHA-256 的前 64 位，输出为 16 位十六进制字符串。
+ */
+final class MethodFingerprints {
+
+    private MethodFingerprints() {
+    }
+
+    /**
+     * 方法的规范化 AST 指纹（含注解、修饰符、签名与方法体，不含注释）
+     */
+    static long of(MethodDeclaration method) {
+        DefaultPrinterConfiguration configuration = new DefaultPrinterConfiguration();
+        configuration.removeOption(new DefaultConfigurationOption(ConfigOption.PRINT_COMMENTS));
+        configuration.removeOption(new DefaultConfigurationOption(ConfigOption.PRINT_JAVADOC));
+        String normalized = new DefaultPrettyPrinter(configuration).print(method);
+        return hash(normalized);
+    }
+
+    /**
+     * 依赖指纹：own 与各被调方法（key -> 指纹，没有源码的方法为 null，只按 key 参与）合并后的哈希
+     *
+     * @param callees 向下 N 层内的被调方法，需按 key 排序，保证结果稳定
+     */
+    static long combine(long own, Map<String, Long> callees) {
+        StringBuilder sb = new StringBuilder(hex(own));
+        for (Map.Entry<String, Long> e : callees.entrySet()) {
+            sb.append('\n').append(e.getKey()).append('=');
+            sb.append(e.getValue() == null ? "-" : hex(e.getValue()));
+        }
+        return hash(sb.toString());
+    }
+
+    static String hex(long fingerprint) {
+        return String.format("%016x", fingerprint);
+    }
+
+    private static long hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xff);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 JRE 都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
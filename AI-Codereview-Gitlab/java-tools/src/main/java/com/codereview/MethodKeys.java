@@ -0,0 +1,174 @@
+package com.codereview;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.types.ResolvedType;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 调用图方法 key 的构建与格式化
+ * key 形如 com.example.Foo#bar(Long,String)，参数为擦除后的简单类型名
+ */
+final class MethodKeys {
+
+    private MethodKeys() {
+    }
+
+    static String build(String classFqn, String signature) {
+        return classFqn + "#" + signature;
+    }
+
+    /**
+     * 类的全限定名；内部类形如 com.example.Outer.Inner，与符号解析得到的 declaringType 保持一致
+     */
+    static String classFqn(ClassOrInterfaceDeclaration cls, String packageName) {
+        if (cls.getFullyQualifiedName().isPresent()) {
+            return cls.getFullyQualifiedName().get();
+        }
+        String className = cls.getNameAsString();
+        return packageName.isEmpty() ? className : packageName + "." + className;
+    }
+
+    /**
+     * 方法的擦除签名，例如 save(Long,String)、of(T[])
+     * 参数类型只保留简单类名，去掉泛型实参，可变参数按数组处理
+     */
+    static String erasedSignature(MethodDeclaration method) {
+        StringBuilder sb = new StringBuilder(method.getNameAsString()).append('(');
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            Parameter param = method.getParameter(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(eraseType(param.getType()));
+            if (param.isVarArgs()) {
+                sb.append("[]");
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * 被调方法的擦除签名：源码内的方法直接取声明处的 AST，保证与建图时的 key 完全一致；
+     * 三方库 / JDK 方法则从解析出的参数类型推导
+     */
+    static String erasedSignature(ResolvedMethodDeclaration resolved) {
+        Optional<Node> ast = resolved.toAst();
+        if (ast.isPresent() && ast.get() instanceof MethodDeclaration) {
+            return erasedSignature((MethodDeclaration) ast.get());
+        }
+        StringBuilder sb = new StringBuilder(resolved.getName()).append('(');
+        for (int i = 0; i < resolved.getNumberOfParams(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String erased;
+            try {
+                erased = eraseType(resolved.getParam(i).getType());
+            } catch (Exception e) {
+                // 参数类型无法解析时退化为 ?，同名同参数个数的重载会合并到一个节点
+                erased = "?";
+            }
+            sb.append(erased);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * 已解析方法的完整 key
+     */
+    static String of(ResolvedMethodDeclaration resolved) {
+        return build(resolved.declaringType().getQualifiedName(), erasedSignature(resolved));
+    }
+
+    private static String eraseType(Type type) {
+        if (type instanceof ArrayType) {
+            return eraseType(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type instanceof ClassOrInterfaceType) {
+            return ((ClassOrInterfaceType) type).getNameAsString();
+        }
+        return type.asString();
+    }
+
+    private static String eraseType(ResolvedType type) {
+        if (type.isArray()) {
+            return eraseType(type.asArrayType().getComponentType()) + "[]";
+        }
+        if (type.isReferenceType()) {
+            String qualifiedName = type.asReferenceType().getQualifiedName();
+            return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+        }
+        if (type.isTypeVariable()) {
+            return type.asTypeParameter().getName();
+        }
+        return type.describe();
+    }
+
+    /**
+     * --changed-methods 既可以给方法名（save，命中所有重载），也可以给擦除签名（save(Long,String)，只命中该重载）
+     */
+    static boolean matchesChangedMethod(Set<String> targetMethods, String methodName, String signature) {
+        if (targetMethods == null || targetMethods.isEmpty()) {
+            return true;
+        }
+        return targetMethods.contains(methodName) || targetMethods.contains(signature);
+    }
+
+    /**
+     * key 中的类全限定名部分
+     */
+    static String classOf(String methodKey) {
+        int hash = methodKey.indexOf('#');
+        return hash < 0 ? methodKey : methodKey.substring(0, hash);
+    }
+
+    /**
+     * key 中的擦除签名部分，例如 save(Long,String)
+     */
+    static String signatureOf(String methodKey) {
+        return methodKey.substring(methodKey.indexOf('#') + 1);
+    }
+
+    /**
+     * key 中的方法名部分，例如 save
+     */
+    static String nameOf(String methodKey) {
+        String signature = signatureOf(methodKey);
+        int paren = signature.indexOf('(');
+        return paren < 0 ? signature : signature.substring(0, paren);
+    }
+
+    /**
+     * 格式化方法key为可读字符串
+     * 例如: com.example.Foo#bar(Long,String) -> Foo.bar(Long,String)
+     */
+    static String format(String methodKey) {
+        if (methodKey == null || !methodKey.contains("#")) {
+            return methodKey;
+        }
+        String[] parts = methodKey.split("#");
+        if (parts.length != 2) {
+            return methodKey;
+        }
+        String classFqn = parts[0];
+        String signature = parts[1];
+
+        // 提取类名（最后一个点后的部分）
+        String className = classFqn;
+        int lastDot = classFqn.lastIndexOf('.');
+        if (lastDot >= 0) {
+            className = classFqn.substring(lastDot + 1);
+        }
+
+        return className + "." + signature;
+    }
+}
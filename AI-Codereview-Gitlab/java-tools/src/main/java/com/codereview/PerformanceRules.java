@@ -0,0 +1,505 @@
+package com.codereview;
+
+import com.codereview.RuleEngine.Rule;
+import com.codereview.RuleEngine.Scope;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.*;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 内置的性能规则（对应 tests/Q04_Performance 中的用例）
+ * 除 NPlusOneQuery 借助方法级调用图外，规则只看单个文件的 AST，不做符号解析：
+ * 变量类型、字段修饰符都在本文件内按名字查找，查不到时不报。
+ */
+final class PerformanceRules {
+
+    /** 数据访问对象的变量名：xxxRepo / xxxRepository / xxxDao / xxxMapper / jdbcTemplate / entityManager */
+    private static final Pattern DATA_ACCESS_RECEIVER = Pattern.compile(
+            "(?i).*(repo|repository|dao|mapper|jdbctemplate|entitymanager)");
+    /** sleep 时长来自这些名字的变量 / 调用时视为有意的限流 / 退避等待，不报 Thread.sleep */
+    private static final Pattern BACKOFF_NAME = Pattern.compile("(?i).*(ratelimit|limiter|throttl|backoff|jitter).*");
+    /** 重试次数计数器的变量名 */
+    private static final Pattern ATTEMPT_NAME = Pattern.compile("(?i).*(attempt|retr|tries|tried).*");
+
+    private PerformanceRules() {
+    }
+
+    static List<Rule> all() {
+        return Arrays.<Rule>asList(new LoopQuery(), new NPlusOneQuery(), new StringConcatInLoop(),
+                new ThreadSleep(), new DoubleCheckLock());
+    }
+
+    /**
+     * 循环内调用 Repository / DAO / Mapper：每个元素一次查询（N+1）
+     */
+    static final class LoopQuery implements Rule {
+        @Override
+        public String id() {
+            return "LoopQuery";
+        }
+
+        @Override
+        public void visit(Node node, Scope scope) {
+            if (!(node instanceof MethodCallExpr) || !scope.inLoop()) {
+                return;
+            }
+            MethodCallExpr call = (MethodCallExpr) node;
+            String receiver = call.getScope().map(PerformanceRules::receiverName).orElse(null);
+            if (receiver != null && DATA_ACCESS_RECEIVER.matcher(receiver).matches()) {
+                scope.report(this, call, "high", "循环中调用 " + receiver + "." + call.getNameAsString()
+                        + "，每个元素一次查询（N+1），建议改为批量查询");
+            }
+        }
+    }
+
+    /**
+     * 跨方法的 N+1：循环（含 forEach / stream lambda）中调用的方法经调用图若干层后到达数据访问方法。
+     * 调用处不做符号解析，按方法名与参数个数在调用图中当前方法的被调方法里匹配；
+     * 变量名已能看出是数据访问对象的直接调用由 LoopQuery 报告，这里不重复。
+     */
+    static final class NPlusOneQuery implements Rule {
+        @Override
+        public String id() {
+            return "NPlusOneQuery";
+        }
+
+        @Override
+        public void visit(Node node, Scope scope) {
+            if (!(node instanceof MethodCallExpr) || !scope.inLoop() || scope.graph == null
+                    || scope.methodKey() == null) {
+                return;
+            }
+            MethodCallExpr call = (MethodCallExpr) node;
+            String receiver = call.getScope().map(PerformanceRules::receiverName).orElse(null);
+            boolean lexicallyReported = receiver != null && DATA_ACCESS_RECEIVER.matcher(receiver).matches();
+            String target = null;
+            int targetHops = Integer.MAX_VALUE;
+            for (String callee : new TreeSet<String>(scope.graph.callees(scope.methodKey()))) {
+                if (!MethodKeys.nameOf(callee).equals(call.getNameAsString())
+                        || parameterCount(callee) != call.getArguments().size()) {
+                    continue;
+                }
+                int hops = scope.graph.dataAccessHops(callee);
+                if (hops >= 0 && hops < targetHops && !(hops == 0 && lexicallyReported)) {
+                    target = callee;
+                    targetHops = hops;
+                }
+            }
+            if (target == null) {
+                return;
+            }
+            List<String> path = scope.graph.dataAccessPath(target);
+            StringBuilder chain = new StringBuilder();
+            for (String key : path) {
+                chain.append(chain.length() == 0 ? "" : " -> ").append(MethodKeys.format(key));
+            }
+            scope.report(this, call, "high", "循环中调用 " + MethodKeys.format(target) + "，经 " + targetHops
+                    + " 层调用到达数据访问方法（" + chain + "），每个元素一次查询（N+1），建议改为批量查询");
+        }
+
+        private static int parameterCount(String methodKey) {
+            String signature = MethodKeys.signatureOf(methodKey);
+            String params = signature.substring(signature.indexOf('(') + 1, signature.lastIndexOf(')'));
+            return params.isEmpty() ? 0 : params.split(",").length;
+        }
+    }
+
+    /**
+     * 循环内用 += 或 s = s + x 拼接循环外声明的 String
+     */
+    static final class StringConcatInLoop implements Rule {
+        @Override
+        public String id() {
+            return "StringConcatInLoop";
+        }
+
+        @Override
+        public void visit(Node node, Scope scope) {
+            if (!(node instanceof AssignExpr) || !scope.inLoop()) {
+                return;
+            }
+            AssignExpr assign = (AssignExpr) node;
+            String target = receiverName(assign.getTarget());
+            if (target == null) {
+                return;
+            }
+            boolean concat = assign.getOperator() == AssignExpr.Operator.PLUS
+                    || (assign.getOperator() == AssignExpr.Operator.ASSIGN && assign.getValue().isBinaryExpr()
+                    && leftmostOperandIs(assign.getValue().asBinaryExpr(), target));
+            if (!concat) {
+                return;
+            }
+            Node declaration = declarationOf(target, assign);
+            Type type = typeOf(declaration);
+            if (type == null || !isString(type)) {
+                return;
+            }
+            // 循环体内声明的变量每轮都是新串，不是累积拼接
+            Node loop = scope.innermostLoop();
+            if (declaration != null && loop != null && isAncestor(loop, declaration)) {
+                return;
+            }
+            scope.report(this, assign, "medium", "循环中拼接字符串 " + target
+                    + "，每轮复制整个字符串（O(n²)），建议改用 StringBuilder");
+        }
+
+        private static boolean leftmostOperandIs(BinaryExpr expr, String name) {
+            if (expr.getOperator() != BinaryExpr.Operator.PLUS) {
+                return false;
+            }
+            Expression left = expr.getLeft();
+            while (left.isBinaryExpr() && left.asBinaryExpr().getOperator() == BinaryExpr.Operator.PLUS) {
+                left = left.asBinaryExpr().getLeft();
+            }
+            return name.equals(receiverName(left));
+        }
+    }
+
+    /**
+     * Thread.sleep / TimeUnit.X.sleep 阻塞线程；以下有意的等待不报：
+     * - 时长来自退避 / 限流变量或调用（backoff、rateLimiter.acquire() 等，局部变量看其初始化与赋值）
+     * - 外层 if / while / for 的条件调用了限流器（if (!rateLimiter.tryAcquire()) 等），sleep 是限流等待
+     * - 在由重试计数器限定次数的重试循环中（循环条件或循环内 if 比较一个在循环中递增 / 递减的计数器，
+     *   且计数器名像 attempt / retries，或循环内捕获异常）
+     */
+    static final class ThreadSleep implements Rule {
+        @Override
+        public String id() {
+            return "ThreadSleep";
+        }
+
+        @Override
+        public void visit(Node node, Scope scope) {
+            if (!(node instanceof MethodCallExpr) || !((MethodCallExpr) node).getNameAsString().equals("sleep")) {
+                return;
+            }
+            MethodCallExpr call = (MethodCallExpr) node;
+            Expression target = call.getScope().orElse(null);
+            boolean sleep = target != null && (target.toString().equals("Thread")
+                    || target.toString().startsWith("TimeUnit."));
+            if (!sleep || isBackoffDelay(call, scope.method()) || underThrottleCheck(call) || inRetryLoop(call)) {
+                return;
+            }
+            if (scope.inLoop()) {
+                scope.report(this, call, "medium", "循环中 sleep 轮询，长时间占用线程，建议改用定时调度或等待 / 通知机制");
+            } else {
+                scope.report(this, call, "low", "sleep 阻塞当前线程，请确认不在请求处理线程或事务中");
+            }
+        }
+
+        /**
+         * sleep 的时长是否来自退避 / 限流：参数中的名字，或参数引用的局部变量的初始化、赋值中的名字
+         */
+        private static boolean isBackoffDelay(MethodCallExpr call, MethodDeclaration method) {
+            for (Expression arg : call.getArguments()) {
+                if (mentionsBackoff(arg)) {
+                    return true;
+                }
+                if (method == null) {
+                    continue;
+                }
+                for (NameExpr name : arg.findAll(NameExpr.class)) {
+                    String variable = name.getNameAsString();
+                    for (VariableDeclarator v : method.findAll(VariableDeclarator.class)) {
+                        if (v.getNameAsString().equals(variable) && v.getInitializer().isPresent()
+                                && mentionsBackoff(v.getInitializer().get())) {
+                            return true;
+                        }
+                    }
+                    for (AssignExpr assign : method.findAll(AssignExpr.class)) {
+                        if (assign.getTarget().isNameExpr()
+                                && assign.getTarget().asNameExpr().getNameAsString().equals(variable)
+                                && mentionsBackoff(assign.getValue())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * sleep 外层某个 if / while / for 的条件是否调用了限流器
+         */
+        private static boolean underThrottleCheck(MethodCallExpr call) {
+            Node node = call.getParentNode().orElse(null);
+            while (node != null && !(node instanceof MethodDeclaration)) {
+                Expression condition = null;
+                if (node instanceof IfStmt) {
+                    condition = ((IfStmt) node).getCondition();
+                } else if (node instanceof WhileStmt) {
+                    condition = ((WhileStmt) node).getCondition();
+                } else if (node instanceof ForStmt) {
+                    condition = ((ForStmt) node).getCompare().orElse(null);
+                }
+                if (condition != null) {
+                    for (MethodCallExpr check : condition.findAll(MethodCallExpr.class)) {
+                        if (mentionsBackoff(check)) {
+                            return true;
+                        }
+                    }
+                }
+                node = node.getParentNode().orElse(null);
+            }
+            return false;
+        }
+
+        private static boolean mentionsBackoff(Expression expr) {
+            for (SimpleName name : expr.findAll(SimpleName.class)) {
+                if (BACKOFF_NAME.matcher(name.getIdentifier()).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * sleep 所在的某层循环是否是限定次数的重试循环
+         */
+        private static boolean inRetryLoop(MethodCallExpr call) {
+            Node node = call.getParentNode().orElse(null);
+            while (node != null && !(node instanceof MethodDeclaration)) {
+                if ((node instanceof ForStmt || node instanceof WhileStmt || node instanceof DoStmt)
+                        && isRetryLoop((Statement) node)) {
+                    return true;
+                }
+                node = node.getParentNode().orElse(null);
+            }
+            return false;
+        }
+
+        private static boolean isRetryLoop(Statement loop) {
+            // 在循环中递增 / 递减的变量
+            Set<String> counters = new HashSet<String>();
+            for (UnaryExpr unary : loop.findAll(UnaryExpr.class)) {
+                if (unary.getExpression().isNameExpr() && (unary.getOperator() == UnaryExpr.Operator.PREFIX_INCREMENT
+                        || unary.getOperator() == UnaryExpr.Operator.POSTFIX_INCREMENT
+                        || unary.getOperator() == UnaryExpr.Operator.PREFIX_DECREMENT
+                        || unary.getOperator() == UnaryExpr.Operator.POSTFIX_DECREMENT)) {
+                    counters.add(unary.getExpression().asNameExpr().getNameAsString());
+                }
+            }
+            for (AssignExpr assign : loop.findAll(AssignExpr.class)) {
+                if (assign.getTarget().isNameExpr() && (assign.getOperator() == AssignExpr.Operator.PLUS
+                        || assign.getOperator() == AssignExpr.Operator.MINUS)) {
+                    counters.add(assign.getTarget().asNameExpr().getNameAsString());
+                }
+            }
+            if (counters.isEmpty()) {
+                return false;
+            }
+            // 比较计数器的条件：循环条件，或循环内以 throw / break / return 结束重试的 if
+            List<Expression> guards = new ArrayList<Expression>();
+            if (loop instanceof ForStmt) {
+                ((ForStmt) loop).getCompare().ifPresent(guards::add);
+            } else if (loop instanceof WhileStmt) {
+                guards.add(((WhileStmt) loop).getCondition());
+            } else {
+                guards.add(((DoStmt) loop).getCondition());
+            }
+            for (IfStmt ifStmt : loop.findAll(IfStmt.class)) {
+                Statement then = ifStmt.getThenStmt();
+                if (then.isThrowStmt() || then.isBreakStmt() || then.isReturnStmt()
+                        || !then.findAll(ThrowStmt.class).isEmpty() || !then.findAll(BreakStmt.class).isEmpty()
+                        || !then.findAll(ReturnStmt.class).isEmpty()) {
+                    guards.add(ifStmt.getCondition());
+                }
+            }
+            boolean catches = !loop.findAll(CatchClause.class).isEmpty();
+            for (Expression guard : guards) {
+                for (BinaryExpr compare : guard.findAll(BinaryExpr.class)) {
+                    if (!isRelational(compare.getOperator())) {
+                        continue;
+                    }
+                    for (NameExpr name : compare.findAll(NameExpr.class)) {
+                        String counter = name.getNameAsString();
+                        if (counters.contains(counter) && (catches || ATTEMPT_NAME.matcher(counter).matches())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean isRelational(BinaryExpr.Operator op) {
+            return op == BinaryExpr.Operator.LESS || op == BinaryExpr.Operator.LESS_EQUALS
+                    || op == BinaryExpr.Operator.GREATER || op == BinaryExpr.Operator.GREATER_EQUALS;
+        }
+    }
+
+    /**
+     * 双重检查锁定：if (f == null) { synchronized (..) { if (f == null) { f = ... } } }，
+     * 字段 f 未声明为 volatile 时其他线程可能拿到未初始化完成的对象
+     */
+    static final class DoubleCheckLock implements Rule {
+        @Override
+        public String id() {
+            return "DoubleCheckLock";
+        }
+
+        @Override
+        public void visit(Node node, Scope scope) {
+            if (!(node instanceof IfStmt)) {
+                return;
+            }
+            IfStmt outer = (IfStmt) node;
+            String field = nullCheckedName(outer.getCondition());
+            if (field == null) {
+                return;
+            }
+            SynchronizedStmt sync = firstSynchronized(outer.getThenStmt());
+            if (sync == null) {
+                return;
+            }
+            boolean doubleChecked = false;
+            for (IfStmt inner : sync.getBody().findAll(IfStmt.class)) {
+                if (field.equals(nullCheckedName(inner.getCondition()))) {
+                    doubleChecked = true;
+                    break;
+                }
+            }
+            if (!doubleChecked) {
+                return;
+            }
+            FieldDeclaration declaration = fieldOf(field, outer);
+            if (declaration != null && !declaration.isVolatile()) {
+                scope.report(this, outer, "high", "双重检查锁定的字段 " + field
+                        + " 未声明为 volatile，其他线程可能看到未初始化完成的对象");
+            }
+        }
+
+        /**
+         * x == null / null == x / this.x == null 中的 x
+         */
+        private static String nullCheckedName(Expression condition) {
+            condition = unwrap(condition);
+            if (!condition.isBinaryExpr() || condition.asBinaryExpr().getOperator() != BinaryExpr.Operator.EQUALS) {
+                return null;
+            }
+            BinaryExpr eq = condition.asBinaryExpr();
+            if (eq.getRight().isNullLiteralExpr()) {
+                return receiverName(eq.getLeft());
+            }
+            if (eq.getLeft().isNullLiteralExpr()) {
+                return receiverName(eq.getRight());
+            }
+            return null;
+        }
+
+        private static SynchronizedStmt firstSynchronized(Statement stmt) {
+            if (stmt.isSynchronizedStmt()) {
+                return stmt.asSynchronizedStmt();
+            }
+            if (stmt.isBlockStmt()) {
+                for (Statement s : ((BlockStmt) stmt).getStatements()) {
+                    if (s.isSynchronizedStmt()) {
+                        return s.asSynchronizedStmt();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    // ===== 本文件内的名字查找 =====
+
+    /**
+     * 变量 / 字段访问的名字：foo、this.foo、a.b.foo 取 foo；其他表达式为 null
+     */
+    private static String receiverName(Expression expr) {
+        expr = unwrap(expr);
+        if (expr.isNameExpr()) {
+            return expr.asNameExpr().getNameAsString();
+        }
+        if (expr.isFieldAccessExpr()) {
+            return expr.asFieldAccessExpr().getNameAsString();
+        }
+        return null;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (expr.isEnclosedExpr()) {
+            expr = expr.asEnclosedExpr().getInner();
+        }
+        return expr;
+    }
+
+    /**
+     * 从 at 向外查找名为 name 的局部变量、参数或字段声明（不区分作用域遮蔽，取最近的方法内声明）
+     */
+    @SuppressWarnings("unchecked")
+    private static Node declarationOf(String name, Node at) {
+        Optional<MethodDeclaration> method = at.findAncestor(MethodDeclaration.class);
+        if (method.isPresent()) {
+            for (VariableDeclarator v : method.get().findAll(VariableDeclarator.class)) {
+                if (v.getNameAsString().equals(name)) {
+                    return v;
+                }
+            }
+            for (Parameter p : method.get().getParameters()) {
+                if (p.getNameAsString().equals(name)) {
+                    return p;
+                }
+            }
+        }
+        FieldDeclaration field = fieldOf(name, at);
+        if (field != null) {
+            for (VariableDeclarator v : field.getVariables()) {
+                if (v.getNameAsString().equals(name)) {
+                    return v;
+                }
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FieldDeclaration fieldOf(String name, Node at) {
+        Optional<ClassOrInterfaceDeclaration> cls = at.findAncestor(ClassOrInterfaceDeclaration.class);
+        if (!cls.isPresent()) {
+            return null;
+        }
+        for (FieldDeclaration field : cls.get().getFields()) {
+            for (VariableDeclarator v : field.getVariables()) {
+                if (v.getNameAsString().equals(name)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Type typeOf(Node declaration) {
+        if (declaration instanceof VariableDeclarator) {
+            return ((VariableDeclarator) declaration).getType();
+        }
+        if (declaration instanceof Parameter) {
+            return ((Parameter) declaration).getType();
+        }
+        return null;
+    }
+
+    private static boolean isString(Type type) {
+        String name = type.asString();
+        return name.equals("String") || name.equals("java.lang.String");
+    }
+
+    private static boolean isAncestor(Node ancestor, Node node) {
+        for (Node n = node; n != null; n = n.getParentNode().orElse(null)) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
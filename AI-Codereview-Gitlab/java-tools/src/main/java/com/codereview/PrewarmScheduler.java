@@ -0,0 +1,170 @@
+package com.codereview;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * 预热调度器（服务模式）：收到“仓库 X 移动到提交 Y”的通知后在后台重建该仓库的调用图，
+ * MR 到来时直接使用已建好的图，而不是由第一个 MR 同步承担建图开销。
+ * - 同一仓库只保留一个待处理通知（以最新的为准），正在重建的仓库不会被两个线程同时处理
+ * - 待处理的仓库按近期 MR 频率排序（按半衰期指数衰减的请求计数），最常评审的仓库先重建
+ * - 线程数固定；重建期间旧快照继续服务，新图建好后才替换（见 ContextEngine.rebuild / refreshGraphShards）
+ */
+class PrewarmScheduler {
+
+    /**
+     * 待处理的通知
+     */
+    private static final class Pending {
+        final String repoKey;
+        /** 通知中的提交，可能为 null */
+        final String commit;
+
+        Pending(String repoKey, String commit) {
+            this.repoKey = repoKey;
+            this.commit = commit;
+        }
+    }
+
+    /**
+     * 按半衰期衰减的请求计数
+     */
+    private static final class Frequency {
+        double score;
+        long updatedAt;
+    }
+
+    private final Function<String, ContextEngine> engines;
+    private final double halfLifeMillis;
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    // 以下字段由 this 保护
+    /** 仓库 -> 待处理的通知 */
+    private final Map<String, Pending> pending = new HashMap<String, Pending>();
+    /** 正在重建的仓库 */
+    private final Set<String> running = new HashSet<String>();
+    /** 仓库 -> 近期 MR 频率 */
+    private final Map<String, Frequency> frequencies = new HashMap<String, Frequency>();
+    /** 仓库 -> 最近一次预热完成时的提交 */
+    private final Map<String, String> indexedCommits = new HashMap<String, String>();
+
+    /**
+     * @param engines      仓库规范路径 -> 分析引擎（不存在时创建）
+     * @param threads      同时重建的仓库数
+     * @param halfLifeMins MR 频率的半衰期（分钟）
+     */
+    PrewarmScheduler(Function<String, ContextEngine> engines, int threads, int halfLifeMins) {
+        this.engines = engines;
+        this.halfLifeMillis = Math.max(1, halfLifeMins) * 60_000.0;
+        ThreadFactory threadFactory = ContextEngine.daemonThreads("context-prewarm");
+        for (int i = 0; i < threads; i++) {
+            Thread worker = threadFactory.newThread(this::runWorker);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * 记录一次分析请求，用于排序
+     */
+    synchronized void recordRequest(String repoKey) {
+        long now = System.currentTimeMillis();
+        Frequency frequency = frequencies.computeIfAbsent(repoKey, k -> new Frequency());
+        frequency.score = decayed(frequency, now) + 1;
+        frequency.updatedAt = now;
+    }
+
+    /**
+     * 仓库移动到新提交：排入后台重建，立即返回
+     *
+     * @param commit 新提交，可能为 null；与最近一次预热的提交相同时不重建
+     * @return 是否排入队列
+     */
+    synchronized boolean repoMoved(String repoKey, String commit) {
+        if (commit != null && commit.equals(indexedCommits.get(repoKey)) && !pending.containsKey(repoKey)) {
+            return false;
+        }
+        pending.put(repoKey, new Pending(repoKey, commit));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * 停止后台线程（正在进行的重建会被中断）
+     */
+    void shutdown() {
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Pending next;
+            try {
+                next = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            String indexed = null;
+            try {
+                ContextEngine engine = engines.apply(next.repoKey);
+                if (engine.usesGraphShards()) {
+                    engine.refreshGraphShards();
+                } else {
+                    engine.rebuild().get();
+                }
+                indexed = next.commit != null ? next.commit : GitRevisions.head(new File(next.repoKey));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("警告: 预热调用图失败: " + next.repoKey + ", 原因: " + e);
+            } finally {
+                finished(next.repoKey, indexed);
+            }
+        }
+    }
+
+    /**
+     * 取频率最高、且没有正在重建的待处理仓库
+     */
+    private synchronized Pending take() throws InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            Pending best = null;
+            double bestScore = -1;
+            for (Pending p : pending.values()) {
+                if (running.contains(p.repoKey)) {
+                    continue;
+                }
+                Frequency frequency = frequencies.get(p.repoKey);
+                double score = frequency == null ? 0 : decayed(frequency, now);
+                if (score > bestScore) {
+                    best = p;
+                    bestScore = score;
+                }
+            }
+            if (best != null) {
+                pending.remove(best.repoKey);
+                running.add(best.repoKey);
+                return best;
+            }
+            wait();
+        }
+    }
+
+    private synchronized void finished(String repoKey, String indexedCommit) {
+        running.remove(repoKey);
+        if (indexedCommit != null) {
+            indexedCommits.put(repoKey, indexedCommit);
+        }
+        // 重建期间到达的通知可能在等这个仓库
+        notifyAll();
+    }
+
+    private double decayed(Frequency frequency, long now) {
+        return frequency.score * Math.pow(0.5, (now - frequency.updatedAt) / halfLifeMillis);
+    }
+}
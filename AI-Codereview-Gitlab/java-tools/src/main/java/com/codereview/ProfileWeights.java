@@ -0,0 +1,201 @@
+package com.codereview;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 生产环境 profile 映射到调用图上的采样权重
+ * 输入为 async-profiler / JFR 导出的 collapsed stack（每行 "根帧;...;叶帧 采样数"，可为 .gz），逐行流式读取，
+ * 只为调用图中有源码的方法累计权重，内存占用与调用图大小成正比，与 profile 大小无关。
+ *
+ * 帧按“类名 + 方法名”匹配方法 key（profile 中没有参数类型，同名重载共享权重）：
+ * - total：栈中出现该方法的采样数（递归时每个栈只算一次）
+ * - self：该方法是栈中最深的应用方法的采样数（含其调用的 JDK / 三方库代码）
+ * - 边：栈中相邻的两个应用方法（中间可隔着代理、JDK 帧）在调用图中有调用边时，累计到该边
+ */
+final class ProfileWeights {
+
+    /** 映射不到调用图的帧（JDK、三方库、代理）只缓存最近用到的这么多个，缓存大小不随 profile 增长 */
+    private static final int UNMAPPED_FRAME_CACHE_SIZE = 4096;
+
+    /** cpu / alloc 等，仅用于输出标注 */
+    final String type;
+    /** 全部采样数 */
+    final long totalSamples;
+    /** 至少有一帧映射到调用图的采样数 */
+    final long mappedSamples;
+    private final Map<String, long[]> weights;
+    private final Map<String, Long> edgeWeights;
+
+    private ProfileWeights(String type, long totalSamples, long mappedSamples, Map<String, long[]> weights,
+                           Map<String, Long> edgeWeights) {
+        this.type = type;
+        this.totalSamples = totalSamples;
+        this.mappedSamples = mappedSamples;
+        this.weights = weights;
+        this.edgeWeights = edgeWeights;
+    }
+
+    /**
+     * 流式读取 collapsed stack 文件并映射到调用图
+     */
+    static ProfileWeights load(File file, String type, CallGraph graph) throws IOException {
+        // 类全限定名#方法名 -> 方法 key（各重载）
+        Map<String, List<String>> byName = new HashMap<String, List<String>>();
+        for (String key : graph.methodKeys()) {
+            byName.computeIfAbsent(MethodKeys.classOf(key) + "#" + MethodKeys.nameOf(key),
+                    k -> new ArrayList<String>()).add(key);
+        }
+        // 映射到方法 key 的帧全部缓存（种类受调用图大小限制），其余帧只保留一个小的 LRU
+        Map<String, List<String>> mappedFrames = new HashMap<String, List<String>>();
+        Map<String, Boolean> unmappedFrames = new LinkedHashMap<String, Boolean>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > UNMAPPED_FRAME_CACHE_SIZE;
+            }
+        };
+        Map<String, long[]> weights = new HashMap<String, long[]>();
+        Map<String, Long> edgeWeights = new HashMap<String, Long>();
+        long total = 0;
+        long mapped = 0;
+
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            Set<String> seen = new HashSet<String>();
+            while ((line = reader.readLine()) != null) {
+                int space = line.lastIndexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                long count;
+                try {
+                    count = Long.parseLong(line.substring(space + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                total += count;
+                seen.clear();
+                List<String> previous = null;
+                List<String> deepest = null;
+                for (String frame : line.substring(0, space).split(";")) {
+                    List<String> keys = mappedFrames.get(frame);
+                    if (keys == null) {
+                        if (unmappedFrames.get(frame) != null) {
+                            continue;
+                        }
+                        keys = byName.get(frameName(frame));
+                        if (keys == null) {
+                            unmappedFrames.put(frame, Boolean.TRUE);
+                            continue;
+                        }
+                        mappedFrames.put(frame, keys);
+                    }
+                    for (String key : keys) {
+                        if (seen.add(key)) {
+                            weights.computeIfAbsent(key, k -> new long[2])[1] += count;
+                        }
+                    }
+                    if (previous != null) {
+                        for (String from : previous) {
+                            Set<String> callees = graph.callees(from);
+                            for (String to : keys) {
+                                if (callees.contains(to)) {
+                                    edgeWeights.merge(edgeKey(from, to), count, Long::sum);
+                                }
+                            }
+                        }
+                    }
+                    previous = keys;
+                    deepest = keys;
+                }
+                if (deepest != null) {
+                    mapped += count;
+                    for (String key : deepest) {
+                        weights.get(key)[0] += count;
+                    }
+                }
+            }
+        }
+        return new ProfileWeights(type, total, mapped, weights, edgeWeights);
+    }
+
+    /**
+     * 帧名规范化为 “类全限定名#方法名”，无法识别时为 null
+     * 支持 com/foo/Bar.baz、com.foo.Bar.baz(Ljava/lang/String;)V、async-profiler 的 _[j] / _[i] 后缀、
+     * 内部类 Outer$Inner、lambda$baz$0（归到 baz）与 CGLIB / lambda 生成类（Bar$$EnhancerBySpringCGLIB$$1）
+     */
+    static String frameName(String frame) {
+        String f = frame.trim();
+        int suffix = f.lastIndexOf("_[");
+        if (suffix > 0 && f.endsWith("]")) {
+            f = f.substring(0, suffix);
+        }
+        int paren = f.indexOf('(');
+        if (paren >= 0) {
+            f = f.substring(0, paren);
+        }
+        f = f.replace('/', '.');
+        int dot = f.lastIndexOf('.');
+        if (dot <= 0 || dot == f.length() - 1) {
+            return null;
+        }
+        String cls = f.substring(0, dot);
+        String name = f.substring(dot + 1);
+        int generated = cls.indexOf("$$");
+        if (generated >= 0) {
+            cls = cls.substring(0, generated);
+        }
+        cls = cls.replace('$', '.');
+        if (name.startsWith("lambda$")) {
+            String[] parts = name.split("\\$");
+            if (parts.length < 2 || parts[1].isEmpty()) {
+                return null;
+            }
+            name = parts[1];
+        }
+        return cls + "#" + name;
+    }
+
+    /**
+     * 方法的采样占比（total / 全部采样）
+     */
+    double share(String methodKey) {
+        long[] w = weights.get(methodKey);
+        return w == null || totalSamples == 0 ? 0 : (double) w[1] / totalSamples;
+    }
+
+    double selfShare(String methodKey) {
+        long[] w = weights.get(methodKey);
+        return w == null || totalSamples == 0 ? 0 : (double) w[0] / totalSamples;
+    }
+
+    /**
+     * 调用边 from -> to 的采样占比
+     */
+    double edgeShare(String from, String to) {
+        Long w = edgeWeights.get(edgeKey(from, to));
+        return w == null || totalSamples == 0 ? 0 : (double) w / totalSamples;
+    }
+
+    /**
+     * 占比格式化为百分比，保留两位小数，例如 12.35
+     */
+    static double percent(double share) {
+        return Math.round(share * 10000) / 100.0;
+    }
+
+    private static String edgeKey(String from, String to) {
+        return from + "->" + to;
+    }
+}
@@ -0,0 +1,455 @@
+package com.codereview;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 仓库的模块 / 源码目录布局
+ * 支持 Maven（pom.xml 的 modules）与 Gradle（settings.gradle 的 include）多模块工程，
+ * 单模块工程退化为仓库根目录一个模块
+ */
+class ProjectLayout {
+
+    private static final Pattern GRADLE_INCLUDE = Pattern.compile("(?m)^\\s*include\\b([^\\n]*)");
+    private static final Pattern QUOTED = Pattern.compile("['\"]([^'\"]+)['\"]");
+    private static final Pattern GRADLE_PROJECT_DEP = Pattern.compile(
+            "project\\s*\\(\\s*(?:path\\s*[:=]\\s*)?['\"](:[^'\"]+)['\"]");
+
+    /** 仓库根目录 */
+    final File repoRoot;
+    /** 按发现顺序排列的模块（只包含有源码目录的模块） */
+    final List<Module> modules = new ArrayList<Module>();
+
+    private ProjectLayout(File repoRoot) {
+        this.repoRoot = repoRoot;
+    }
+
+    /**
+     * 扫描仓库布局
+     *
+     * @param repoDir          仓库根目录
+     * @param includeTests     是否包含 src/test/java 与 src/jmh/java（JMH 基准）
+     * @param includeGenerated 是否包含 target/generated-sources、build/generated 下的生成代码
+     */
+    static ProjectLayout discover(File repoDir, boolean includeTests, boolean includeGenerated) {
+        File repoRoot = canonical(repoDir);
+        ProjectLayout layout = new ProjectLayout(repoRoot);
+        Map<File, Module> byDir = new LinkedHashMap<File, Module>();
+
+        if (new File(repoRoot, "pom.xml").isFile()) {
+            collectMavenModules(repoRoot, byDir, new HashSet<File>());
+        } else if (gradleSettings(repoRoot) != null) {
+            collectGradleModules(repoRoot, byDir);
+        }
+        if (!byDir.containsKey(repoRoot)) {
+            Module root = new Module();
+            root.name = repoRoot.getName();
+            root.dir = repoRoot;
+            byDir.put(repoRoot, root);
+        }
+
+        for (Module module : byDir.values()) {
+            module.sourceRoots = findSourceRoots(module.dir, includeTests, includeGenerated);
+            if (!module.sourceRoots.isEmpty()) {
+                layout.modules.add(module);
+            }
+        }
+        // 只保留仓库内、且有源码的模块之间的依赖
+        Set<String> names = new HashSet<String>();
+        for (Module module : layout.modules) {
+            names.add(module.name);
+        }
+        for (Module module : layout.modules) {
+            module.dependsOn.retainAll(names);
+            module.dependsOn.remove(module.name);
+        }
+        return layout;
+    }
+
+    /**
+     * 模块自身加上（传递）依赖的仓库内模块，自身排在第一个
+     */
+    List<Module> dependencyClosure(Module module) {
+        Map<String, Module> byName = new HashMap<String, Module>();
+        for (Module m : modules) {
+            byName.put(m.name, m);
+        }
+        List<Module> closure = new ArrayList<Module>();
+        Set<String> visited = new HashSet<String>();
+        Deque<Module> queue = new ArrayDeque<Module>();
+        queue.add(module);
+        visited.add(module.name);
+        while (!queue.isEmpty()) {
+            Module m = queue.poll();
+            closure.add(m);
+            for (String dep : m.dependsOn) {
+                Module depModule = byName.get(dep);
+                if (depModule != null && visited.add(dep)) {
+                    queue.add(depModule);
+                }
+            }
+        }
+        return closure;
+    }
+
+    List<File> allSourceRoots() {
+        List<File> roots = new ArrayList<File>();
+        for (Module module : modules) {
+            roots.addAll(module.sourceRoots);
+        }
+        return roots;
+    }
+
+    // ===== Maven =====
+
+    private static void collectMavenModules(File dir, Map<File, Module> byDir, Set<File> visited) {
+        collectMavenModules(dir, byDir, visited, null);
+    }
+
+    private static void collectMavenModules(File dir, Map<File, Module> byDir, Set<File> visited, PomInfo parent) {
+        File pom = new File(dir, "pom.xml");
+        if (!pom.isFile() || !visited.add(dir)) {
+            return;
+        }
+        PomInfo info = readPom(pom, parent);
+        if (info == null) {
+            return;
+        }
+
+        Module module = new Module();
+        module.dir = dir;
+        module.name = info.artifactId != null ? info.artifactId : dir.getName();
+        module.pom = info;
+        for (String[] dependency : info.dependencies) {
+            module.dependsOn.add(dependency[1]);
+        }
+        byDir.put(dir, module);
+
+        for (String rel : info.modules) {
+            collectMavenModules(canonical(new File(dir, rel)), byDir, visited, info);
+        }
+    }
+
+    /**
+     * 读取 pom 的坐标、属性、dependencyManagement、直接依赖与子模块。
+     * 属性与 dependencyManagement 从 parent 继承（只支持调用方给出的 parent，不做远程解析）；
+     * 仓库外的 parent 与 import 的 BOM 只记下坐标，由 DependencyJars 从本地仓库读取。
+     *
+     * @return 解析失败时返回 null
+     */
+    static PomInfo readPom(File pom, PomInfo parent) {
+        Document doc = parseXml(pom);
+        if (doc == null) {
+            return null;
+        }
+        Element project = doc.getDocumentElement();
+        PomInfo info = new PomInfo();
+        info.parent = parent;
+        if (parent != null) {
+            info.properties.putAll(parent.properties);
+            info.managedVersions.putAll(parent.managedVersions);
+        }
+        Element parentElement = child(project, "parent");
+        String parentVersion = parentElement == null ? null : childText(parentElement, "version");
+        String parentGroupId = parentElement == null ? null : childText(parentElement, "groupId");
+        String parentArtifactId = parentElement == null ? null : childText(parentElement, "artifactId");
+        if (parentGroupId != null && parentArtifactId != null && parentVersion != null) {
+            info.parentCoordinates = new String[]{parentGroupId, parentArtifactId, parentVersion};
+        }
+
+        info.artifactId = childText(project, "artifactId");
+        info.groupId = childText(project, "groupId") != null ? childText(project, "groupId") : parentGroupId;
+        info.version = childText(project, "version") != null ? childText(project, "version") : parentVersion;
+        Element properties = child(project, "properties");
+        if (properties != null) {
+            NodeList nodes = properties.getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                if (nodes.item(i) instanceof Element) {
+                    Element prop = (Element) nodes.item(i);
+                    info.properties.put(prop.getTagName(), prop.getTextContent().trim());
+                }
+            }
+        }
+        if (info.version != null) {
+            info.properties.put("project.version", info.version);
+        }
+        if (parentVersion != null) {
+            info.properties.put("project.parent.version", parentVersion);
+        }
+        if (info.groupId != null) {
+            info.properties.put("project.groupId", info.groupId);
+        }
+
+        Element management = child(project, "dependencyManagement");
+        Element managed = management == null ? null : child(management, "dependencies");
+        if (managed != null) {
+            for (Element dependency : children(managed, "dependency")) {
+                String groupId = info.interpolate(childText(dependency, "groupId"));
+                String artifactId = info.interpolate(childText(dependency, "artifactId"));
+                String version = info.interpolate(childText(dependency, "version"));
+                if (groupId == null || artifactId == null || version == null) {
+                    continue;
+                }
+                if ("import".equals(childText(dependency, "scope")) && "pom".equals(childText(dependency, "type"))) {
+                    info.importedBoms.add(new String[]{groupId, artifactId, version});
+                } else {
+                    info.managedVersions.put(groupId + ":" + artifactId, version);
+                }
+            }
+        }
+
+        Element dependencies = child(project, "dependencies");
+        if (dependencies != null) {
+            for (Element dependency : children(dependencies, "dependency")) {
+                String groupId = info.interpolate(childText(dependency, "groupId"));
+                String artifactId = info.interpolate(childText(dependency, "artifactId"));
+                if (artifactId == null) {
+                    continue;
+                }
+                String version = info.interpolate(childText(dependency, "version"));
+                if (version == null && groupId != null) {
+                    version = info.managedVersions.get(groupId + ":" + artifactId);
+                }
+                String scope = childText(dependency, "scope");
+                String optional = childText(dependency, "optional");
+                info.dependencies.add(new String[]{
+                        groupId, artifactId, version, scope == null ? "compile" : scope,
+                        String.valueOf("true".equals(optional))
+                });
+            }
+        }
+
+        // profiles 里声明的 modules 也一并收集
+        NodeList moduleNodes = doc.getElementsByTagName("module");
+        for (int i = 0; i < moduleNodes.getLength(); i++) {
+            String rel = moduleNodes.item(i).getTextContent().trim();
+            if (!rel.isEmpty()) {
+                info.modules.add(rel);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * pom 中 parent 的 {groupId, artifactId, version}，没有 parent 时返回 null
+     */
+    static String[] readParentCoordinates(File pom) {
+        Document doc = parseXml(pom);
+        Element parent = doc == null ? null : child(doc.getDocumentElement(), "parent");
+        if (parent == null) {
+            return null;
+        }
+        String groupId = childText(parent, "groupId");
+        String artifactId = childText(parent, "artifactId");
+        String version = childText(parent, "version");
+        if (groupId == null || artifactId == null || version == null) {
+            return null;
+        }
+        return new String[]{groupId, artifactId, version};
+    }
+
+    private static Document parseXml(File file) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            factory.setExpandEntityReferences(false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(file);
+        } catch (Exception e) {
+            System.err.println("警告: 解析 pom.xml 失败: " + file.getAbsolutePath() + ", 原因: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Element child(Element parent, String tag) {
+        List<Element> list = children(parent, tag);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    private static List<Element> children(Element parent, String tag) {
+        List<Element> result = new ArrayList<Element>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element && tag.equals(((Element) node).getTagName())) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+    private static String childText(Element parent, String tag) {
+        Element child = child(parent, tag);
+        return child == null ? null : child.getTextContent().trim();
+    }
+
+    // ===== Gradle =====
+
+    private static File gradleSettings(File dir) {
+        for (String name : new String[]{"settings.gradle", "settings.gradle.kts"}) {
+            File f = new File(dir, name);
+            if (f.isFile()) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private static void collectGradleModules(File repoRoot, Map<File, Module> byDir) {
+        Module root = new Module();
+        root.name = ":";
+        root.dir = repoRoot;
+        readGradleDependencies(root);
+        byDir.put(repoRoot, root);
+
+        String settings = readText(gradleSettings(repoRoot));
+        Matcher includes = GRADLE_INCLUDE.matcher(settings);
+        while (includes.find()) {
+            Matcher quoted = QUOTED.matcher(includes.group(1));
+            while (quoted.find()) {
+                String path = quoted.group(1);
+                String name = path.startsWith(":") ? path : ":" + path;
+                File dir = canonical(new File(repoRoot, name.substring(1).replace(':', File.separatorChar)));
+                Module module = new Module();
+                module.name = name;
+                module.dir = dir;
+                readGradleDependencies(module);
+                byDir.put(dir, module);
+            }
+        }
+    }
+
+    private static void readGradleDependencies(Module module) {
+        for (String name : new String[]{"build.gradle", "build.gradle.kts"}) {
+            File buildFile = new File(module.dir, name);
+            if (!buildFile.isFile()) {
+                continue;
+            }
+            Matcher m = GRADLE_PROJECT_DEP.matcher(readText(buildFile));
+            while (m.find()) {
+                module.dependsOn.add(m.group(1));
+            }
+        }
+    }
+
+    // ===== 源码目录 =====
+
+    private static List<File> findSourceRoots(File moduleDir, boolean includeTests, boolean includeGenerated) {
+        List<File> roots = new ArrayList<File>();
+        addIfDir(roots, new File(moduleDir, "src/main/java"));
+        if (includeTests) {
+            addIfDir(roots, new File(moduleDir, "src/test/java"));
+            addIfDir(roots, new File(moduleDir, "src/jmh/java"));
+        }
+        if (includeGenerated) {
+            // Maven: target/generated-sources/<plugin>
+            File[] mavenGenerated = new File(moduleDir, "target/generated-sources").listFiles();
+            if (mavenGenerated != null) {
+                Arrays.sort(mavenGenerated);
+                for (File dir : mavenGenerated) {
+                    addIfDir(roots, dir);
+                }
+            }
+            // Gradle: build/generated/sources/<task>/java/main
+            File[] gradleGenerated = new File(moduleDir, "build/generated/sources").listFiles();
+            if (gradleGenerated != null) {
+                Arrays.sort(gradleGenerated);
+                for (File dir : gradleGenerated) {
+                    addIfDir(roots, new File(dir, "java/main"));
+                }
+            }
+        }
+        return roots;
+    }
+
+    private static void addIfDir(List<File> roots, File dir) {
+        if (dir.isDirectory()) {
+            roots.add(canonical(dir));
+        }
+    }
+
+    private static File canonical(File f) {
+        try {
+            return f.getCanonicalFile();
+        } catch (IOException e) {
+            return f.getAbsoluteFile();
+        }
+    }
+
+    private static String readText(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * pom 中与依赖解析相关的信息
+     */
+    static class PomInfo {
+        String groupId;
+        String artifactId;
+        String version;
+        Map<String, String> properties = new HashMap<String, String>();
+        /** groupId:artifactId -> version（含调用方给出的 parent 中的） */
+        Map<String, String> managedVersions = new HashMap<String, String>();
+        /** dependencyManagement 中 import 的 BOM：{groupId, artifactId, version} */
+        List<String[]> importedBoms = new ArrayList<String[]>();
+        /** 调用方给出的 parent（仓库内的父 pom，或本地仓库中的 parent pom），没有时为 null */
+        PomInfo parent;
+        /** pom 中声明的 parent：{groupId, artifactId, version}，没有时为 null */
+        String[] parentCoordinates;
+        /** {groupId, artifactId, version（可能为 null）, scope, optional} */
+        List<String[]> dependencies = new ArrayList<String[]>();
+        List<String> modules = new ArrayList<String>();
+
+        /**
+         * 替换 ${xxx} 属性；仍有无法替换的占位符时返回 null
+         */
+        String interpolate(String value) {
+            if (value == null) {
+                return null;
+            }
+            String result = value;
+            for (int guard = 0; guard < 10 && result.contains("${"); guard++) {
+                int start = result.indexOf("${");
+                int end = result.indexOf('}', start);
+                if (end < 0) {
+                    return null;
+                }
+                String replacement = properties.get(result.substring(start + 2, end));
+                if (replacement == null) {
+                    return null;
+                }
+                result = result.substring(0, start) + replacement + result.substring(end + 1);
+            }
+            return result.contains("${") ? null : result;
+        }
+    }
+
+    /**
+     * 单个模块：名字（Maven 为 artifactId，Gradle 为 :a:b 形式的工程路径）、目录、源码目录与依赖的模块名
+     */
+    static class Module {
+        String name;
+        File dir;
+        List<File> sourceRoots = new ArrayList<File>();
+        Set<String> dependsOn = new LinkedHashSet<String>();
+        /** Maven 模块的 pom 信息，Gradle / 单目录工程为 null */
+        PomInfo pom;
+    }
+}
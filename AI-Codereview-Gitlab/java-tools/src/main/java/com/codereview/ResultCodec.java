@@ -0,0 +1,259 @@
+package com.codereview;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 结果的二进制编码（--output-format cbor / cbor-gzip），Python 侧由 biz/utils/context_codec.py 按需解码
+ *
+ * 流格式：魔数 CXR1，之后是若干帧，每帧 = 类型（1 字节）+ 标志（1 字节，bit0 = gzip）+ 负载长度（4 字节大端）+ 负载
+ * - S 帧：字符串表（CBOR 数组）。出现两次及以上的字符串（字段名、方法 key、文件路径等）在结果中写作 tag 25(下标)
+ * - B 帧：文件内容，负载 = 32 字节 SHA-256 + CBOR 文本（gzip 时只压缩文本部分）。
+ *   fullContent / source 字段写作 tag 49374(SHA-256)，相同内容只写一次
+ * - R 帧：结果本身（CBOR）
+ * 帧顺序为 S、B...、R；cbor-gzip 逐帧压缩，解码方只需解压实际读取的帧。
+ */
+final class ResultCodec {
+
+    private static final byte[] MAGIC = "CXR1".getBytes(StandardCharsets.US_ASCII);
+    private static final int TAG_STRING_REF = 25;
+    private static final int TAG_BLOB_REF = 49374;
+    /** 按内容寻址、单独成帧的字段 */
+    private static final Set<String> BLOB_FIELDS = new HashSet<String>(Arrays.asList("fullContent", "source"));
+    /** 短字符串直接内联，引用本身要 2~3 字节 */
+    private static final int MIN_SHARED_LENGTH = 3;
+
+    private final Gson gson = new Gson();
+    /** 字符串 -> 出现次数（按首次出现排序） */
+    private final Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+    /** 文件内容 -> SHA-256（按首次出现排序） */
+    private final Map<String, byte[]> blobs = new LinkedHashMap<String, byte[]>();
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+    private ResultCodec() {
+    }
+
+    /**
+     * 写出二进制结果
+     *
+     * @param gzip 逐帧 gzip 压缩（cbor-gzip）
+     */
+    static void write(Object result, boolean gzip, OutputStream out) throws IOException {
+        new ResultCodec().encode(result, gzip, out);
+        out.flush();
+    }
+
+    private void encode(Object result, boolean gzip, OutputStream out) throws IOException {
+        JsonElement tree = gson.toJsonTree(result);
+        collect(tree);
+
+        List<String> table = new ArrayList<String>();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() >= 2 && e.getKey().length() >= MIN_SHARED_LENGTH) {
+                stringIndex.put(e.getKey(), table.size());
+                table.add(e.getKey());
+            }
+        }
+
+        out.write(MAGIC);
+        CborWriter strings = new CborWriter();
+        strings.head(4, table.size());
+        for (String s : table) {
+            strings.text(s);
+        }
+        writeFrame(out, 'S', null, strings.toByteArray(), gzip);
+
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            CborWriter body = new CborWriter();
+            body.text(blob.getKey());
+            writeFrame(out, 'B', blob.getValue(), body.toByteArray(), gzip);
+        }
+
+        CborWriter body = new CborWriter();
+        writeElement(body, tree);
+        writeFrame(out, 'R', null, body.toByteArray(), gzip);
+    }
+
+    /**
+     * 统计字符串出现次数，收集文件内容
+     */
+    private void collect(JsonElement element) {
+        if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                count(member.getKey());
+                JsonElement value = member.getValue();
+                if (BLOB_FIELDS.contains(member.getKey()) && isString(value)) {
+                    String content = value.getAsString();
+                    if (!blobs.containsKey(content)) {
+                        blobs.put(content, sha256(content));
+                    }
+                } else {
+                    collect(value);
+                }
+            }
+        } else if (element.isJsonArray()) {
+            for (JsonElement item : element.getAsJsonArray()) {
+                collect(item);
+            }
+        } else if (isString(element)) {
+            count(element.getAsString());
+        }
+    }
+
+    private void count(String s) {
+        Integer n = counts.get(s);
+        counts.put(s, n == null ? 1 : n + 1);
+    }
+
+    private void writeElement(CborWriter w, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            w.raw(0xf6);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            w.head(5, object.size());
+            for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+                writeString(w, member.getKey());
+                JsonElement value = member.getValue();
+                if (BLOB_FIELDS.contains(member.getKey()) && isString(value)) {
+                    w.head(6, TAG_BLOB_REF);
+                    byte[] hash = blobs.get(value.getAsString());
+                    w.head(2, hash.length);
+                    w.bytes(hash);
+                } else {
+                    writeElement(w, value);
+                }
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            w.head(4, array.size());
+            for (JsonElement item : array) {
+                writeElement(w, item);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                w.raw(primitive.getAsBoolean() ? 0xf5 : 0xf4);
+            } else if (primitive.isNumber()) {
+                w.number(primitive.getAsNumber());
+            } else {
+                writeString(w, primitive.getAsString());
+            }
+        }
+    }
+
+    private void writeString(CborWriter w, String s) {
+        Integer index = stringIndex.get(s);
+        if (index != null) {
+            w.head(6, TAG_STRING_REF);
+            w.head(0, index);
+        } else {
+            w.text(s);
+        }
+    }
+
+    private static void writeFrame(OutputStream out, char type, byte[] prefix, byte[] body, boolean gzip)
+            throws IOException {
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 32);
+            try (GZIPOutputStream gz = new GZIPOutputStream(compressed)) {
+                gz.write(body);
+            }
+            body = compressed.toByteArray();
+        }
+        int length = body.length + (prefix == null ? 0 : prefix.length);
+        out.write(type);
+        out.write(gzip ? 1 : 0);
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        if (prefix != null) {
+            out.write(prefix);
+        }
+        out.write(body);
+    }
+
+    private static boolean isString(JsonElement element) {
+        return element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
+    private static byte[] sha256(String content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * CBOR（RFC 8949）写入，只用到确定长度的编码
+     */
+    private static final class CborWriter extends ByteArrayOutputStream {
+
+        void head(int major, long value) {
+            int m = major << 5;
+            if (value < 24) {
+                write(m | (int) value);
+            } else if (value < 0x100) {
+                write(m | 24);
+                write((int) value);
+            } else if (value < 0x10000) {
+                write(m | 25);
+                writeBigEndian(value, 2);
+            } else if (value < 0x100000000L) {
+                write(m | 26);
+                writeBigEndian(value, 4);
+            } else {
+                write(m | 27);
+                writeBigEndian(value, 8);
+            }
+        }
+
+        void raw(int b) {
+            write(b);
+        }
+
+        void bytes(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        void text(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            head(3, utf8.length);
+            bytes(utf8);
+        }
+
+        void number(Number n) {
+            String s = n.toString();
+            if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+                long v = Long.parseLong(s);
+                if (v >= 0) {
+                    head(0, v);
+                } else {
+                    head(1, -1 - v);
+                }
+            } else {
+                write(0xfb);
+                writeBigEndian(Double.doubleToLongBits(n.doubleValue()), 8);
+            }
+        }
+
+        private void writeBigEndian(long value, int size) {
+            for (int i = size - 1; i >= 0; i--) {
+                write((int) (value >>> (i * 8)));
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.codereview;
+
+import com.codereview.ContextExtractor.Finding;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.stmt.DoStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.WhileStmt;
+
+import java.util.*;
+
+/**
+ * 规则引擎：在送给 LLM 之前，对修改文件做确定性的 AST 检查（循环查询、循环内字符串拼接等）
+ * 每个文件只遍历一次 AST，遍历时维护所在方法与循环的上下文，把每个节点依次交给所有规则；
+ * 规则只需实现 Rule，无状态、可被多个请求线程共用。每条规则的累计耗时单独统计。
+ */
+final class RuleEngine {
+
+    /** 视为“对每个元素执行一次”的方法：作为其参数的 lambda 等同于循环体 */
+    private static final Set<String> ITERATING_CALLS = new HashSet<String>(Arrays.asList(
+            "forEach", "forEachOrdered", "map", "flatMap", "filter", "peek", "mapToObj", "mapToInt",
+            "mapToLong", "mapToDouble", "anyMatch", "allMatch", "noneMatch", "removeIf", "replaceAll"));
+
+    /**
+     * 单条规则
+     */
+    interface Rule {
+        /** 规则 id，出现在输出的 finding.rule 与耗时统计中 */
+        String id();
+
+        /** 每个 AST 节点调用一次（先序） */
+        void visit(Node node, Scope scope);
+    }
+
+    private final List<Rule> rules;
+
+    RuleEngine(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * 按配置启用规则：all（默认）启用全部内置规则，none 关闭，也可以用逗号分隔的规则 id 指定
+     */
+    static RuleEngine of(String spec) {
+        List<Rule> enabled = new ArrayList<Rule>();
+        if ("none".equalsIgnoreCase(spec)) {
+            return new RuleEngine(enabled);
+        }
+        Set<String> ids = new HashSet<String>();
+        for (String id : spec.split(",")) {
+            if (!id.trim().isEmpty()) {
+                ids.add(id.trim());
+            }
+        }
+        for (Rule rule : PerformanceRules.all()) {
+            if (ids.contains("all") || ids.contains(rule.id())) {
+                enabled.add(rule);
+            }
+        }
+        return new RuleEngine(enabled);
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * 对单个文件执行全部规则
+     *
+     * @param targetMethods 只保留这些方法（方法名或擦除签名）内的结果，为 null 时保留全部
+     * @param graph         方法级调用图，供跨方法的规则使用；不可用时为 null，这类规则不生效
+     * @param nanosByRule   累加各规则耗时（纳秒）
+     */
+    List<Finding> run(CompilationUnit cu, String file, Set<String> targetMethods, CallGraph graph,
+                      Map<String, Long> nanosByRule) {
+        String packageName = cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+        Scope scope = new Scope(file, packageName, targetMethods, graph);
+        long[] nanos = new long[rules.size()];
+        walk(cu, scope, nanos);
+        for (int i = 0; i < rules.size(); i++) {
+            nanosByRule.merge(rules.get(i).id(), nanos[i], Long::sum);
+        }
+        return scope.findings;
+    }
+
+    private void walk(Node node, Scope scope, long[] nanos) {
+        boolean method = node instanceof MethodDeclaration;
+        if (method) {
+            scope.enterMethod((MethodDeclaration) node);
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            long start = System.nanoTime();
+            rules.get(i).visit(node, scope);
+            nanos[i] += System.nanoTime() - start;
+        }
+        for (Node child : node.getChildNodes()) {
+            boolean loop = isLoopPart(node, child);
+            if (loop) {
+                scope.loops.push(node);
+            }
+            walk(child, scope, nanos);
+            if (loop) {
+                scope.loops.pop();
+            }
+        }
+        if (method) {
+            scope.methods.pop();
+        }
+    }
+
+    /**
+     * child 是否会随 parent 所代表的循环反复执行（for-each 的集合表达式、for 的初始化只执行一次）
+     */
+    static boolean isLoopPart(Node parent, Node child) {
+        if (parent instanceof ForEachStmt) {
+            return child == ((ForEachStmt) parent).getBody();
+        }
+        if (parent instanceof ForStmt) {
+            ForStmt loop = (ForStmt) parent;
+            return child == loop.getBody() || child == loop.getCompare().orElse(null)
+                    || contains(loop.getUpdate(), child);
+        }
+        if (parent instanceof WhileStmt || parent instanceof DoStmt) {
+            return true;
+        }
+        if (parent instanceof MethodCallExpr && ITERATING_CALLS.contains(((MethodCallExpr) parent).getNameAsString())) {
+            return (child instanceof LambdaExpr || child instanceof MethodReferenceExpr)
+                    && contains(((MethodCallExpr) parent).getArguments(), child);
+        }
+        return false;
+    }
+
+    private static boolean contains(NodeList<?> nodes, Node node) {
+        for (Node n : nodes) {
+            if (n == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 遍历上下文：当前文件、所在方法、所在循环，以及规则报告的结果
+     */
+    static final class Scope {
+        final String file;
+        /** 方法级调用图，可能为 null */
+        final CallGraph graph;
+        private final String packageName;
+        private final Set<String> targetMethods;
+        /** 由外到内的循环节点（栈顶为最内层） */
+        private final Deque<Node> loops = new ArrayDeque<Node>();
+        private final Deque<MethodFrame> methods = new ArrayDeque<MethodFrame>();
+        private final List<Finding> findings = new ArrayList<Finding>();
+
+        Scope(String file, String packageName, Set<String> targetMethods, CallGraph graph) {
+            this.file = file;
+            this.packageName = packageName;
+            this.targetMethods = targetMethods;
+            this.graph = graph;
+        }
+
+        boolean inLoop() {
+            return !loops.isEmpty();
+        }
+
+        /** 最内层循环，不在循环内时为 null */
+        Node innermostLoop() {
+            return loops.peek();
+        }
+
+        /** 所在方法，不在方法内（字段初始化、初始化块）时为 null */
+        MethodDeclaration method() {
+            MethodFrame frame = methods.peek();
+            return frame == null ? null : frame.method;
+        }
+
+        /** 所在方法在调用图中的 key，不在具名类的方法内时为 null */
+        String methodKey() {
+            MethodFrame frame = methods.peek();
+            return frame == null ? null : frame.key;
+        }
+
+        void report(Rule rule, Node node, String severity, String message) {
+            MethodFrame frame = methods.peek();
+            if (targetMethods != null && !targetMethods.isEmpty() && (frame == null || !frame.changed)) {
+                return;
+            }
+            Finding finding = new Finding();
+            finding.rule = rule.id();
+            finding.severity = severity;
+            finding.file = file;
+            finding.method = frame == null ? null : frame.method.getNameAsString();
+            finding.startLine = node.getBegin().map(p -> p.line).orElse(0);
+            finding.endLine = node.getEnd().map(p -> p.line).orElse(finding.startLine);
+            finding.message = message;
+            findings.add(finding);
+        }
+
+        private void enterMethod(MethodDeclaration method) {
+            String signature = MethodKeys.erasedSignature(method);
+            boolean changed = MethodKeys.matchesChangedMethod(targetMethods, method.getNameAsString(), signature);
+            String key = null;
+            if (method.getParentNode().orElse(null) instanceof ClassOrInterfaceDeclaration) {
+                key = MethodKeys.build(MethodKeys.classFqn(
+                        (ClassOrInterfaceDeclaration) method.getParentNode().get(), packageName), signature);
+            }
+            methods.push(new MethodFrame(method, key, changed));
+        }
+    }
+
+    private static final class MethodFrame {
+        final MethodDeclaration method;
+        final String key;
+        /** 是否为被改方法 */
+        final boolean changed;
+
+        MethodFrame(MethodDeclaration method, String key, boolean changed) {
+            this.method = method;
+            this.key = key;
+            this.changed = changed;
+        }
+    }
+}